@@ -119,8 +119,10 @@ public class NodeTestUtils {
                 .put("discovery.zen.multicast.enabled", true)
                 .put("discovery.zen.multicast.ping_timeout", "5s")
                 .put("http.enabled", true)
+                .put("http.compression", true)
                 .put("threadpool.bulk.size", Runtime.getRuntime().availableProcessors())
                 .put("threadpool.bulk.queue_size", 16 * Runtime.getRuntime().availableProcessors()) // default is 50, too low
+                .put("threadpool.ingest.queue_size", 16 * Runtime.getRuntime().availableProcessors())
                 .put("index.number_of_replicas", 0)
                 .put("path.home", getHome())
                 .build();
@@ -0,0 +1,112 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BulkRetryTest extends StubClientTestUtils {
+
+    @Test
+    public void testRejectedItemIsRetriedAndMerged() throws Exception {
+        // the first attempt rejects document 1, the retry succeeds
+        StubClient client = client(new RejectingResponder(1));
+        BulkResponse response = execute(client, new BulkRetryPolicy(3, TimeValue.timeValueMillis(1)));
+        List<BulkRequest> requests = client.requests(BulkRequest.class);
+        assertEquals(2, requests.size());
+        BulkRequest retried = requests.get(1);
+        assertEquals(1, retried.numberOfActions());
+        assertEquals("1", ((IndexRequest) retried.requests().get(0)).id());
+        assertFalse(response.hasFailures());
+        assertEquals(3, response.getItems().length);
+        for (int i = 0; i < 3; i++) {
+            BulkItemResponse item = response.getItems()[i];
+            assertEquals(i, item.getItemId());
+            assertEquals(Integer.toString(i), item.getId());
+        }
+    }
+
+    @Test
+    public void testRejectedItemIsNotRetriedWithoutPolicy() throws Exception {
+        StubClient client = client(new RejectingResponder(1));
+        BulkResponse response = execute(client, null);
+        assertEquals(1, client.requests(BulkRequest.class).size());
+        assertTrue(response.hasFailures());
+        assertTrue(response.getItems()[1].isFailed());
+        assertTrue(BulkFailures.isRejected(response.getItems()[1]));
+    }
+
+    private static BulkResponse execute(StubClient client, BulkRetryPolicy retryPolicy) throws InterruptedException {
+        final AtomicReference<BulkResponse> result = new AtomicReference<>();
+        BulkProcessor processor = BulkProcessor.builder(client, new BulkProcessor.Listener() {
+            @Override
+            public void beforeBulk(long executionId, BulkRequest request) {
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+                result.set(response);
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            }
+        })
+                .setBulkActions(10)
+                .setConcurrentRequests(1)
+                .setRetryPolicy(retryPolicy)
+                .build();
+        for (int i = 0; i < 3; i++) {
+            processor.add(Requests.indexRequest("test").type("test").id(Integer.toString(i)).source("{}"));
+        }
+        processor.flush();
+        assertTrue(processor.awaitClose(10, TimeUnit.SECONDS));
+        assertNotNull(result.get());
+        return result.get();
+    }
+
+    /**
+     * Rejects the item at a position in the first bulk request, and indexes all other items.
+     */
+    private static class RejectingResponder implements Responder {
+
+        private final int rejected;
+
+        RejectingResponder(int rejected) {
+            this.rejected = rejected;
+        }
+
+        @Override
+        public ActionResponse respond(int n, ActionRequest<?> request) {
+            BulkRequest bulkRequest = (BulkRequest) request;
+            BulkItemResponse[] items = new BulkItemResponse[bulkRequest.numberOfActions()];
+            for (int i = 0; i < items.length; i++) {
+                IndexRequest indexRequest = (IndexRequest) bulkRequest.requests().get(i);
+                if (n == 0 && i == rejected) {
+                    items[i] = new BulkItemResponse(i, "index", new BulkItemResponse.Failure(indexRequest.index(),
+                            indexRequest.type(), indexRequest.id(), new EsRejectedExecutionException("rejected execution")));
+                } else {
+                    items[i] = new BulkItemResponse(i, "index", new IndexResponse(indexRequest.index(),
+                            indexRequest.type(), indexRequest.id(), 1L, true));
+                }
+            }
+            return new BulkResponse(items, 1L);
+        }
+    }
+}
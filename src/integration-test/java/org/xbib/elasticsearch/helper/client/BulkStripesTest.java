@@ -0,0 +1,100 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.Requests;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BulkStripesTest extends StubClientTestUtils {
+
+    @Test
+    public void testNoActionIsLostAtClose() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            StubClient client = client(new IndexResponder());
+            final BulkProcessor processor = BulkProcessor.builder(client, new NoopListener())
+                    .setBulkActions(100)
+                    .setConcurrentRequests(4)
+                    .setStripes(4)
+                    .build();
+            final AtomicLong added = new AtomicLong();
+            final CountDownLatch started = new CountDownLatch(4);
+            List<Thread> producers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread thread = new Thread() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+                        try {
+                            while (true) {
+                                processor.add(Requests.indexRequest("test").type("test").source("{}"));
+                                added.incrementAndGet();
+                            }
+                        } catch (IllegalStateException e) {
+                            // closed
+                        }
+                    }
+                };
+                thread.start();
+                producers.add(thread);
+            }
+            started.await();
+            Thread.sleep(1L);
+            assertTrue(processor.awaitClose(10, TimeUnit.SECONDS));
+            for (Thread thread : producers) {
+                thread.join();
+            }
+            long sent = 0L;
+            for (BulkRequest request : client.requests(BulkRequest.class)) {
+                sent += request.numberOfActions();
+            }
+            assertEquals(added.get(), sent);
+        }
+    }
+
+    /**
+     * Indexes all items.
+     */
+    private static class IndexResponder implements Responder {
+
+        @Override
+        public ActionResponse respond(int n, ActionRequest<?> request) {
+            BulkRequest bulkRequest = (BulkRequest) request;
+            BulkItemResponse[] items = new BulkItemResponse[bulkRequest.numberOfActions()];
+            for (int i = 0; i < items.length; i++) {
+                IndexRequest indexRequest = (IndexRequest) bulkRequest.requests().get(i);
+                items[i] = new BulkItemResponse(i, "index", new IndexResponse(indexRequest.index(),
+                        indexRequest.type(), indexRequest.id(), 1L, true));
+            }
+            return new BulkResponse(items, 1L);
+        }
+    }
+
+    private static class NoopListener implements BulkProcessor.Listener {
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimiterTest {
+
+    private static final long RTT = TimeValue.timeValueMillis(1).nanos();
+
+    @Test
+    public void testAimdIncrease() {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(10, 2, 12);
+        saturate(limiter);
+        limiter.release(RTT, false);
+        assertEquals(11, limiter.getLimit());
+        saturate(limiter);
+        limiter.release(RTT, false);
+        assertEquals(12, limiter.getLimit());
+        // clamped at the maximum
+        saturate(limiter);
+        limiter.release(RTT, false);
+        assertEquals(12, limiter.getLimit());
+    }
+
+    @Test
+    public void testAimdNoIncreaseIfUnused() {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(10, 2, 12);
+        assertTrue(limiter.tryAcquire());
+        limiter.release(RTT, false);
+        assertEquals(10, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testAimdDecrease() {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(10, 2, 12)
+                .backoffRatio(0.5d)
+                .timeout(TimeValue.timeValueSeconds(1));
+        assertTrue(limiter.tryAcquire());
+        limiter.release(RTT, true);
+        assertEquals(5, limiter.getLimit());
+        // a response beyond the timeout counts as a drop
+        assertTrue(limiter.tryAcquire());
+        limiter.release(TimeValue.timeValueSeconds(2).nanos(), false);
+        assertEquals(2, limiter.getLimit());
+        // clamped at the minimum
+        assertTrue(limiter.tryAcquire());
+        limiter.release(RTT, true);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testGradientIncrease() {
+        GradientConcurrencyLimiter limiter = new GradientConcurrencyLimiter(10, 2, 20);
+        int previous = limiter.getLimit();
+        for (int i = 0; i < 100; i++) {
+            saturate(limiter);
+            limiter.release(RTT, false);
+            assertTrue(limiter.getLimit() >= previous);
+            previous = limiter.getLimit();
+        }
+        // clamped at the maximum
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    public void testGradientDecreaseOnLatency() {
+        GradientConcurrencyLimiter limiter = new GradientConcurrencyLimiter(20, 2, 20);
+        saturate(limiter);
+        limiter.release(RTT, false);
+        assertEquals(20, limiter.getLimit());
+        // ten times the minimum round trip time is beyond the tolerance
+        saturate(limiter);
+        limiter.release(10 * RTT, false);
+        assertTrue(limiter.getLimit() < 20);
+    }
+
+    @Test
+    public void testGradientDecreaseOnDrop() {
+        GradientConcurrencyLimiter limiter = new GradientConcurrencyLimiter(16, 2, 20);
+        assertTrue(limiter.tryAcquire());
+        limiter.release(RTT, true);
+        assertEquals(8, limiter.getLimit());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(RTT, true);
+        }
+        // clamped at the minimum
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testFixed() {
+        FixedConcurrencyLimiter limiter = new FixedConcurrencyLimiter(3);
+        assertEquals(3, saturate(limiter));
+        assertFalse(limiter.tryAcquire());
+        limiter.release(RTT, false);
+        assertEquals(3, limiter.getLimit());
+        limiter.release(RTT, true);
+        assertEquals(3, limiter.getLimit());
+        limiter.release(TimeValue.timeValueSeconds(10).nanos(), false);
+        assertEquals(3, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    /**
+     * Acquire permits until the limit is reached.
+     *
+     * @return the number of acquired permits
+     */
+    private static int saturate(ConcurrencyLimiter limiter) {
+        int n = 0;
+        while (limiter.tryAcquire()) {
+            n++;
+        }
+        assertEquals(limiter.getLimit(), limiter.getInFlight());
+        return n;
+    }
+}
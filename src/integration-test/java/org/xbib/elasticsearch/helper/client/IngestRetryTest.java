@@ -0,0 +1,140 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.UnavailableShardsException;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Test;
+import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
+import org.xbib.elasticsearch.action.ingest.IngestRequest;
+import org.xbib.elasticsearch.action.ingest.IngestResponse;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IngestRetryTest extends StubClientTestUtils {
+
+    private final static ShardId SHARD0 = new ShardId("test", 0);
+
+    private final static ShardId SHARD1 = new ShardId("test", 1);
+
+    @Test
+    public void testMergeDropsRetriedShardFailure() {
+        IngestResponse response = new IngestResponse().setNumberOfItems(3);
+        response.setItemFailed(0, null);
+        response.setItemFailed(1, null);
+        response.addFailure(new IngestActionFailure(1L, SHARD0, -1, null,
+                new UnavailableShardsException(SHARD0, "primary not active")).positions(new int[]{0, 1}));
+        response.setItemVersion(2, 1L);
+        // the retry of actions 0 and 1, action 1 fails again with a failure of its own
+        IngestResponse retryResponse = new IngestResponse().setNumberOfItems(2);
+        retryResponse.setItemVersion(0, 1L);
+        retryResponse.setItemFailed(1, new IngestActionFailure(1L, SHARD0, 1, "1",
+                new IllegalArgumentException("bad document")));
+        response.merge(retryResponse, new int[]{0, 1});
+        assertEquals(1, response.getFailures().size());
+        IngestActionFailure failure = response.getFailures().get(0);
+        assertEquals(1, failure.position());
+        assertFalse(response.isItemFailed(0));
+        assertTrue(response.isItemFailed(1));
+        assertEquals(1L, response.getItemVersion(0));
+    }
+
+    @Test
+    public void testMergeKeepsShardFailureOfOtherActions() {
+        IngestResponse response = new IngestResponse().setNumberOfItems(3);
+        for (int i = 0; i < 3; i++) {
+            response.setItemFailed(i, null);
+        }
+        response.addFailure(new IngestActionFailure(1L, SHARD0, -1, null,
+                new UnavailableShardsException(SHARD0, "primary not active")).positions(new int[]{0, 1, 2}));
+        IngestResponse retryResponse = new IngestResponse().setNumberOfItems(1);
+        retryResponse.setItemVersion(0, 1L);
+        response.merge(retryResponse, new int[]{1});
+        assertEquals(1, response.getFailures().size());
+        assertArrayEquals(new int[]{0, 2}, response.getFailures().get(0).positions());
+        assertEquals(2, response.getFailedItems().cardinality());
+    }
+
+    @Test
+    public void testRetryOnlyRetryableShard() throws Exception {
+        // shard 0 is unavailable for actions 0 and 1, shard 1 fails action 2 for good, action 3 succeeds
+        IngestResponse first = new IngestResponse().setNumberOfItems(4).setSuccessSize(1);
+        for (int i = 0; i < 3; i++) {
+            first.setItemFailed(i, null);
+        }
+        first.setItemVersion(3, 1L);
+        first.addFailure(new IngestActionFailure(1L, SHARD0, -1, null,
+                new UnavailableShardsException(SHARD0, "primary not active")).positions(new int[]{0, 1}));
+        first.addFailure(new IngestActionFailure(1L, SHARD1, -1, null,
+                new IllegalStateException("shard is corrupt")).positions(new int[]{2}));
+        IngestResponse second = new IngestResponse().setNumberOfItems(2).setSuccessSize(2);
+        second.setItemVersion(0, 1L);
+        second.setItemVersion(1, 1L);
+        StubClient client = client(new QueueResponder(first, second));
+        final AtomicReference<IngestResponse> result = new AtomicReference<>();
+        IngestProcessor processor = new IngestProcessor(client)
+                .maxActions(10)
+                .retryPolicy(new BulkRetryPolicy(3, TimeValue.timeValueMillis(1)))
+                .listener(new IngestProcessor.IngestListener() {
+                    @Override
+                    public void onRequest(int concurrency, IngestRequest request) {
+                    }
+
+                    @Override
+                    public void onResponse(int concurrency, IngestResponse response) {
+                        result.set(response);
+                    }
+
+                    @Override
+                    public void onFailure(int concurrency, long ingestId, Throwable failure) {
+                    }
+                });
+        for (int i = 0; i < 4; i++) {
+            processor.add(Requests.indexRequest("test").type("test").id(Integer.toString(i)).source("{}"));
+        }
+        processor.flush();
+        assertTrue(processor.waitForResponses(TimeValue.timeValueSeconds(10)));
+        processor.close();
+        List<IngestRequest> requests = client.requests(IngestRequest.class);
+        assertEquals(2, requests.size());
+        IngestRequest retried = requests.get(1);
+        assertEquals(2, retried.numberOfActions());
+        assertEquals("0", ((IndexRequest) retried.subRequests().get(0)).id());
+        assertEquals("1", ((IndexRequest) retried.subRequests().get(1)).id());
+        IngestResponse response = result.get();
+        assertEquals(1, response.getFailures().size());
+        assertEquals(SHARD1, response.getFailures().get(0).shardId());
+        assertEquals(1, response.getFailedItems().cardinality());
+        assertTrue(response.isItemFailed(2));
+        assertEquals(3, response.successSize());
+    }
+
+    /**
+     * Answers the ingest requests with the given responses in order.
+     */
+    private static class QueueResponder implements Responder {
+
+        private final Queue<IngestResponse> responses = new LinkedList<>();
+
+        QueueResponder(IngestResponse... responses) {
+            this.responses.addAll(Arrays.asList(responses));
+        }
+
+        @Override
+        public synchronized ActionResponse respond(int n, ActionRequest<?> request) {
+            return responses.poll().setIngestId(((IngestRequest) request).ingestId());
+        }
+    }
+}
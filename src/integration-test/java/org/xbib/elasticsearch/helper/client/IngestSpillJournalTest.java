@@ -0,0 +1,222 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Requests;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xbib.elasticsearch.action.ingest.IngestRequest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IngestSpillJournalTest {
+
+    // more than one 16k page of a stream output
+    private final static int ACTIONS = 200;
+
+    private final static int SEGMENT_SIZE = 1024 * 1024;
+
+    private Path path;
+
+    @Before
+    public void createPath() throws IOException {
+        path = Files.createTempDirectory("spill");
+    }
+
+    @After
+    public void deletePath() throws IOException {
+        for (Path file : files()) {
+            Files.delete(file);
+        }
+        Files.delete(path);
+    }
+
+    @Test
+    public void testAppendAndPollLargeRequests() throws IOException {
+        try (IngestSpillJournal journal = new IngestSpillJournal(path, SEGMENT_SIZE)) {
+            for (int i = 0; i < 3; i++) {
+                journal.append(request(i));
+            }
+            assertEquals(3, journal.size());
+            for (int i = 0; i < 3; i++) {
+                IngestSpillJournal.Entry entry = journal.poll();
+                assertNotNull(entry);
+                assertRequest(i, entry.request());
+                journal.ack(entry);
+            }
+            assertNull(journal.poll());
+            assertTrue(journal.isEmpty());
+        }
+    }
+
+    @Test
+    public void testReplayAfterRestart() throws IOException {
+        try (IngestSpillJournal journal = new IngestSpillJournal(path, SEGMENT_SIZE)) {
+            for (int i = 0; i < 4; i++) {
+                journal.append(request(i));
+            }
+            journal.ack(journal.poll());
+            // taken but not acknowledged
+            journal.poll();
+        }
+        try (IngestSpillJournal journal = new IngestSpillJournal(path, SEGMENT_SIZE)) {
+            assertEquals(3, journal.size());
+            for (int i = 1; i < 4; i++) {
+                IngestSpillJournal.Entry entry = journal.poll();
+                assertRequest(i, entry.request());
+                journal.ack(entry);
+            }
+            assertTrue(journal.isEmpty());
+        }
+    }
+
+    @Test
+    public void testOutOfOrderAck() throws IOException {
+        try (IngestSpillJournal journal = new IngestSpillJournal(path, SEGMENT_SIZE)) {
+            for (int i = 0; i < 3; i++) {
+                journal.append(request(i));
+            }
+            IngestSpillJournal.Entry first = journal.poll();
+            IngestSpillJournal.Entry second = journal.poll();
+            journal.ack(second);
+            // the second request stays in the journal until the first is acknowledged
+            assertEquals(3, journal.size());
+            journal.ack(first);
+            assertEquals(1, journal.size());
+        }
+        try (IngestSpillJournal journal = new IngestSpillJournal(path, SEGMENT_SIZE)) {
+            assertEquals(1, journal.size());
+            assertRequest(2, journal.poll().request());
+        }
+    }
+
+    @Test
+    public void testSegmentsAreDeleted() throws IOException {
+        // small segments, each request gets its own segment
+        try (IngestSpillJournal journal = new IngestSpillJournal(path, 4096)) {
+            for (int i = 0; i < 3; i++) {
+                journal.append(request(i));
+            }
+            assertEquals(3, files().size());
+            for (int i = 0; i < 3; i++) {
+                IngestSpillJournal.Entry entry = journal.poll();
+                assertRequest(i, entry.request());
+                journal.ack(entry);
+            }
+            assertEquals(1, files().size());
+        }
+    }
+
+    @Test
+    public void testCorruptRecord() throws IOException {
+        try (IngestSpillJournal journal = new IngestSpillJournal(path, SEGMENT_SIZE)) {
+            for (int i = 0; i < 3; i++) {
+                journal.append(request(i));
+            }
+        }
+        // flip a byte in the data of the last record
+        Path file = files().get(0);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long pos = 8;
+            for (int i = 0; i < 2; i++) {
+                pos += 8 + readInt(channel, pos);
+            }
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, pos + 100);
+            b.put(0, (byte) ~b.get(0));
+            b.rewind();
+            channel.write(b, pos + 100);
+        }
+        try (IngestSpillJournal journal = new IngestSpillJournal(path, SEGMENT_SIZE)) {
+            assertEquals(2, journal.size());
+            assertRequest(0, journal.poll().request());
+            assertRequest(1, journal.poll().request());
+            assertNull(journal.poll());
+            // appending overwrites the corrupt record
+            journal.append(request(3));
+            assertRequest(3, journal.poll().request());
+        }
+    }
+
+    @Test
+    public void testTornRecord() throws IOException {
+        try (IngestSpillJournal journal = new IngestSpillJournal(path, SEGMENT_SIZE)) {
+            for (int i = 0; i < 2; i++) {
+                journal.append(request(i));
+            }
+        }
+        // a length without the data, as left by a crash while appending
+        Path file = files().get(0);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long pos = 8;
+            for (int i = 0; i < 2; i++) {
+                pos += 8 + readInt(channel, pos);
+            }
+            ByteBuffer b = ByteBuffer.allocate(4);
+            b.putInt(0, 50000);
+            channel.write(b, pos);
+        }
+        try (IngestSpillJournal journal = new IngestSpillJournal(path, SEGMENT_SIZE)) {
+            assertEquals(2, journal.size());
+            assertRequest(0, journal.poll().request());
+            assertRequest(1, journal.poll().request());
+            assertNull(journal.poll());
+        }
+    }
+
+    private static IngestRequest request(int n) {
+        IngestRequest request = new IngestRequest().ingestId(n);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append((char) ('a' + (n + i) % 26));
+        }
+        for (int i = 0; i < ACTIONS; i++) {
+            request.add(Requests.indexRequest("test").type("test").id(n + "-" + i)
+                    .source("{\"name\":\"" + sb + "\"}"));
+        }
+        return request;
+    }
+
+    private static void assertRequest(int n, IngestRequest request) {
+        IngestRequest expected = request(n);
+        assertEquals(expected.ingestId(), request.ingestId());
+        assertEquals(expected.numberOfActions(), request.numberOfActions());
+        for (int i = 0; i < expected.numberOfActions(); i++) {
+            IndexRequest e = (IndexRequest) expected.subRequests().get(i);
+            IndexRequest r = (IndexRequest) request.subRequests().get(i);
+            assertEquals(e.id(), r.id());
+            assertEquals(e.source().toUtf8(), r.source().toUtf8());
+        }
+    }
+
+    private static int readInt(FileChannel channel, long pos) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(4);
+        channel.read(b, pos);
+        return b.getInt(0);
+    }
+
+    private List<Path> files() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+}
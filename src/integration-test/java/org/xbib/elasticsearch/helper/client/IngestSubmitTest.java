@@ -0,0 +1,84 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.junit.Test;
+import org.xbib.elasticsearch.action.ingest.IngestRequest;
+import org.xbib.elasticsearch.action.ingest.IngestResponse;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class IngestSubmitTest extends StubClientTestUtils {
+
+    @Test
+    public void testSubmitSplitsByVolume() {
+        // the client never answers, so the permits of the sent requests are kept
+        StubClient client = client(null);
+        IngestProcessor processor = new IngestProcessor(client)
+                .maxActions(100)
+                .maxConcurrentRequests(10)
+                .maxVolumePerRequest(new ByteSizeValue(2, ByteSizeUnit.KB));
+        // 10 actions of about 550 bytes each, 3 actions per request
+        long[] ids = processor.submit(request(10, 500), new NoopListener());
+        assertEquals(4, ids.length);
+        List<IngestRequest> requests = client.requests(IngestRequest.class);
+        assertEquals(4, requests.size());
+        assertEquals(3, requests.get(0).numberOfActions());
+        assertEquals(1, requests.get(3).numberOfActions());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], requests.get(i).ingestId());
+        }
+    }
+
+    @Test
+    public void testSubmitRejectsWithoutPermits() {
+        // the client never answers, so the permits of the sent requests are kept
+        StubClient client = client(null);
+        IngestProcessor processor = new IngestProcessor(client)
+                .maxActions(2)
+                .maxConcurrentRequests(2);
+        processor.submit(request(2, 10), new NoopListener());
+        try {
+            // two parts, but only one permit is left
+            processor.submit(request(4, 10), new NoopListener());
+            fail("expected rejection");
+        } catch (EsRejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(1, client.requests(IngestRequest.class).size());
+        assertEquals(1, processor.getConcurrency());
+    }
+
+    private static IngestRequest request(int n, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append('a');
+        }
+        IngestRequest request = new IngestRequest();
+        for (int i = 0; i < n; i++) {
+            request.add(Requests.indexRequest("test").type("test").id(Integer.toString(i))
+                    .source("{\"s\":\"" + sb + "\"}"));
+        }
+        return request;
+    }
+
+    private static class NoopListener implements IngestProcessor.IngestListener {
+
+        @Override
+        public void onRequest(int concurrency, IngestRequest request) {
+        }
+
+        @Override
+        public void onResponse(int concurrency, IngestResponse response) {
+        }
+
+        @Override
+        public void onFailure(int concurrency, long ingestId, Throwable failure) {
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.client.support.AbstractClient;
+import org.elasticsearch.client.support.Headers;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs client tests against a {@link StubClient}, which answers requests without a cluster.
+ */
+public class StubClientTestUtils {
+
+    protected ThreadPool threadPool;
+
+    @Before
+    public void startThreadPool() {
+        threadPool = new ThreadPool("test");
+    }
+
+    @After
+    public void stopThreadPool() {
+        ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Create a stub client answering with the given responder.
+     *
+     * @param responder the responder, or null for a client which never answers
+     * @return the client
+     */
+    protected StubClient client(Responder responder) {
+        return new StubClient(threadPool, responder);
+    }
+
+    /**
+     * Answers the requests sent to a {@link StubClient}.
+     */
+    public interface Responder {
+
+        /**
+         * Answer a request.
+         *
+         * @param n the number of the request, starting with 0
+         * @param request the request
+         * @return the response, or null for not answering the request
+         */
+        ActionResponse respond(int n, ActionRequest<?> request);
+    }
+
+    /**
+     * A client which records the requests sent to it and answers them synchronously with a {@link Responder}.
+     */
+    public static class StubClient extends AbstractClient {
+
+        private final List<ActionRequest<?>> requests = new ArrayList<>();
+
+        private final Responder responder;
+
+        StubClient(ThreadPool threadPool, Responder responder) {
+            super(Settings.EMPTY, threadPool, Headers.EMPTY);
+            this.responder = responder;
+        }
+
+        /**
+         * @param type the request type
+         * @param <T> the request type
+         * @return a copy of the requests sent so far
+         */
+        @SuppressWarnings("unchecked")
+        public synchronized <T extends ActionRequest<?>> List<T> requests(Class<T> type) {
+            List<T> list = new ArrayList<>(requests.size());
+            for (ActionRequest<?> request : requests) {
+                list.add(type.cast(request));
+            }
+            return list;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected <Request extends ActionRequest, Response extends ActionResponse,
+                RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>> void doExecute(
+                Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+            int n;
+            synchronized (this) {
+                n = requests.size();
+                requests.add((ActionRequest<?>) request);
+            }
+            ActionResponse response = responder != null ? responder.respond(n, (ActionRequest<?>) request) : null;
+            if (response != null) {
+                listener.onResponse((Response) response);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Test;
+import org.xbib.elasticsearch.action.ingest.IngestResponse;
+import org.xbib.elasticsearch.action.ingest.IngestShardResult;
+import org.xbib.metrics.MetricName;
+import org.xbib.metrics.MetricRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TaggedIngestMetricTest {
+
+    @Test
+    public void testSeriesWithinBound() {
+        MetricRegistry registry = new MetricRegistry();
+        TaggedIngestMetric metric = new TaggedIngestMetric(registry, 10);
+        metric.record(response(result("a", 0, 3), result("a", 1, 2)));
+        assertEquals(5L, metric.index("a").getSucceeded().getCount());
+        assertEquals(3L, metric.shard("a", 0).getSucceeded().getCount());
+        assertEquals(2L, metric.shard("a", 1).getSucceeded().getCount());
+        Map<String, Long> succeeded = succeeded(registry);
+        assertEquals(Long.valueOf(0L), succeeded.get("_other/null"));
+        assertEquals(Long.valueOf(0L), succeeded.get("_other/_other"));
+    }
+
+    @Test
+    public void testSeriesBeyondBound() {
+        MetricRegistry registry = new MetricRegistry();
+        // index a and its shard 0 take the two series
+        TaggedIngestMetric metric = new TaggedIngestMetric(registry, 2);
+        metric.record(response(result("a", 0, 1)));
+        // shard 1 of a is beyond the bound, and so are index b and its shard
+        metric.record(response(result("a", 1, 2), result("b", 0, 4)));
+        assertEquals(3L, metric.index("a").getSucceeded().getCount());
+        assertEquals(1L, metric.shard("a", 0).getSucceeded().getCount());
+        TaggedIngestMetric.Series otherIndex = metric.index("b");
+        TaggedIngestMetric.Series otherShard = metric.shard("b", 0);
+        assertNotSame(otherIndex, otherShard);
+        assertSame(otherShard, metric.shard("a", 1));
+        // index b once at the index level
+        assertEquals(4L, otherIndex.getSucceeded().getCount());
+        // shard 1 of a and shard 0 of b once at the shard level
+        assertEquals(6L, otherShard.getSucceeded().getCount());
+        Map<String, Long> succeeded = succeeded(registry);
+        assertEquals(Long.valueOf(4L), succeeded.get("_other/null"));
+        assertEquals(Long.valueOf(6L), succeeded.get("_other/_other"));
+        assertEquals(Long.valueOf(3L), succeeded.get("a/null"));
+        assertEquals(Long.valueOf(1L), succeeded.get("a/0"));
+        assertEquals(4, succeeded.size());
+    }
+
+    private static Map<String, Long> succeeded(MetricRegistry registry) {
+        Map<String, Long> map = new HashMap<>();
+        for (MetricName name : registry.getCounters().keySet()) {
+            if (name.getKey().equals("ingest.succeeded")) {
+                map.put(name.getTags().get("index") + "/" + name.getTags().get("shard"),
+                        registry.getCounters().get(name).getCount());
+            }
+        }
+        return map;
+    }
+
+    private static IngestResponse response(IngestShardResult... results) {
+        IngestResponse response = new IngestResponse();
+        for (IngestShardResult result : results) {
+            response.addShardResult(result);
+        }
+        return response;
+    }
+
+    private static IngestShardResult result(String index, int shard, int succeeded) {
+        return new IngestShardResult(new ShardId(index, shard), succeeded, succeeded, 100L, 1L);
+    }
+}
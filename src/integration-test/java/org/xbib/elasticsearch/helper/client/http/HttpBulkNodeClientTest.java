@@ -22,6 +22,7 @@ import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class HttpBulkNodeClientTest extends NodeTestUtils {
 
@@ -115,6 +116,102 @@ public class HttpBulkNodeClientTest extends NodeTestUtils {
         }
     }
 
+    @Test
+    public void testKeepAliveConnections() throws Exception {
+        long numactions = NUM_ACTIONS;
+        final HttpBulkNodeClient client = ClientBuilder.builder()
+                .setMetric(new LongAdderIngestMetric())
+                .put("host", "127.0.0.1")
+                .put("port", 9200)
+                .put("http.client.maxconnections", 2)
+                .put(ClientBuilder.MAX_ACTIONS_PER_REQUEST, 10)
+                .put(ClientBuilder.FLUSH_INTERVAL, TimeValue.timeValueSeconds(60))
+                .toHttpBulkNodeClient();
+        try {
+            client.newIndex("test");
+            for (int i = 0; i < NUM_ACTIONS; i++) {
+                client.index("test", "test", null, "{ \"name\" : \"" + randomString(32) + "\"}");
+            }
+            client.flushIngest();
+            client.waitForResponses(TimeValue.timeValueSeconds(30));
+            HttpChannelPool channelPool = ((HttpElasticsearchClient) client.client()).getEndpoints().get(0).getChannelPool();
+            logger.info("connections = {}", channelPool.getConnections());
+            assertTrue(channelPool.getConnections() > 0);
+            assertTrue(channelPool.getConnections() <= 2);
+        } catch (NoNodeAvailableException e) {
+            logger.warn("skipping, no node available");
+        } finally {
+            assertEquals(numactions, client.getMetric().getSucceeded().getCount());
+            if (client.hasThrowable()) {
+                logger.error("error", client.getThrowable());
+            }
+            assertFalse(client.hasThrowable());
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailover() throws Exception {
+        long numactions = NUM_ACTIONS;
+        final HttpBulkNodeClient client = ClientBuilder.builder()
+                .setMetric(new LongAdderIngestMetric())
+                .put("url", "http://127.0.0.1:9299,http://127.0.0.1:9200")
+                .put(ClientBuilder.MAX_ACTIONS_PER_REQUEST, MAX_ACTIONS)
+                .put(ClientBuilder.FLUSH_INTERVAL, TimeValue.timeValueSeconds(60))
+                .toHttpBulkNodeClient();
+        try {
+            client.newIndex("test");
+            for (int i = 0; i < NUM_ACTIONS; i++) {
+                client.index("test", "test", null, "{ \"name\" : \"" + randomString(32) + "\"}");
+            }
+            client.flushIngest();
+            client.waitForResponses(TimeValue.timeValueSeconds(30));
+            HttpEndpoint endpoint = ((HttpElasticsearchClient) client.client()).getEndpoints().get(0);
+            assertFalse(endpoint.isAvailable(System.currentTimeMillis()));
+        } catch (NoNodeAvailableException e) {
+            logger.warn("skipping, no node available");
+        } finally {
+            assertEquals(numactions, client.getMetric().getSucceeded().getCount());
+            if (client.hasThrowable()) {
+                logger.error("error", client.getThrowable());
+            }
+            assertFalse(client.hasThrowable());
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testCompressedRandomDocs() throws Exception {
+        for (String compression : new String[]{HttpRequestCompressor.GZIP, HttpRequestCompressor.DEFLATE}) {
+            final HttpBulkNodeClient client = ClientBuilder.builder()
+                    .setMetric(new LongAdderIngestMetric())
+                    .put("host", "127.0.0.1")
+                    .put("port", 9200)
+                    .put("http.client.compression", compression)
+                    .put("http.client.compression.threshold", "1kb")
+                    .put(ClientBuilder.MAX_ACTIONS_PER_REQUEST, MAX_ACTIONS)
+                    .put(ClientBuilder.FLUSH_INTERVAL, TimeValue.timeValueSeconds(60))
+                    .toHttpBulkNodeClient();
+            try {
+                client.newIndex("test-" + compression);
+                for (int i = 0; i < NUM_ACTIONS; i++) {
+                    client.index("test-" + compression, "test", null, "{ \"name\" : \"" + randomString(32) + "\"}");
+                }
+                client.flushIngest();
+                client.waitForResponses(TimeValue.timeValueSeconds(30));
+            } catch (NoNodeAvailableException e) {
+                logger.warn("skipping, no node available");
+            } finally {
+                assertEquals(NUM_ACTIONS.longValue(), client.getMetric().getSucceeded().getCount());
+                if (client.hasThrowable()) {
+                    logger.error("error", client.getThrowable());
+                }
+                assertFalse(client.hasThrowable());
+                client.shutdown();
+            }
+        }
+    }
+
     @Test
     public void testThreadedRandomDocs() throws Exception {
         int maxthreads = Runtime.getRuntime().availableProcessors();
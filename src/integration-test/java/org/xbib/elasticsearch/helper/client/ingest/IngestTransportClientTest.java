@@ -15,6 +15,7 @@ import org.elasticsearch.common.logging.ESLoggerFactory;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -112,6 +113,47 @@ public class IngestTransportClientTest extends NodeTestUtils {
         }
     }
 
+    @Test
+    public void testSpilledRandomDocsIngestClient() throws Exception {
+        long numactions = NUM_ACTIONS;
+        Settings settings = Settings.settingsBuilder()
+                .put("index.number_of_shards", 2)
+                .put("index.number_of_replicas", 1)
+                .build();
+        final IngestTransportClient ingest = ClientBuilder.builder()
+                .put(getSettings())
+                .put(ClientBuilder.MAX_ACTIONS_PER_REQUEST, MAX_ACTIONS)
+                .put(ClientBuilder.MAX_CONCURRENT_REQUESTS, 1)
+                .put(ClientBuilder.FLUSH_INTERVAL, TimeValue.timeValueSeconds(60))
+                .put(ClientBuilder.SPILL_PATH, Files.createTempDirectory("spill").toString())
+                .put(ClientBuilder.SPILL_DEADLINE, TimeValue.timeValueMillis(1))
+                .setMetric(new LongAdderIngestMetric())
+                .toIngestTransportClient();
+        try {
+            // requests of more than 16k, more than one page of a stream output
+            ingest.newIndex("test", settings, null)
+                    .startBulk("test", -1, 1000);
+            for (int i = 0; i < NUM_ACTIONS; i++) {
+                ingest.index("test", "test", null, "{ \"name\" : \"" + randomString(256) + "\"}");
+            }
+            ingest.flushIngest();
+            ingest.waitForResponses(TimeValue.timeValueSeconds(30));
+        } catch (NoNodeAvailableException e) {
+            logger.warn("skipping, no node available");
+        } catch (InterruptedException e) {
+            // ignore
+        } finally {
+            ingest.stopBulk("test");
+            logger.info("succeeded = {}", ingest.getMetric().getSucceeded().getCount());
+            assertEquals(numactions, ingest.getMetric().getSucceeded().getCount());
+            if (ingest.hasThrowable()) {
+                logger.error("error", ingest.getThrowable());
+            }
+            assertFalse(ingest.hasThrowable());
+            ingest.shutdown();
+        }
+    }
+
     @Test
     public void testThreadedRandomDocsIngestClient() throws Exception {
         int maxthreads = Runtime.getRuntime().availableProcessors();
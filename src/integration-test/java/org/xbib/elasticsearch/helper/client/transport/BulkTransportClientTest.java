@@ -195,4 +195,55 @@ public class BulkTransportClientTest extends NodeTestUtils {
         }
     }
 
+    @Test
+    public void testThreadedStripedBulkClient() throws Exception {
+        int maxthreads = Runtime.getRuntime().availableProcessors();
+        final long maxloop = NUM_ACTIONS;
+        final BulkTransportClient client = ClientBuilder.builder()
+                .put(getSettings())
+                .put(ClientBuilder.MAX_ACTIONS_PER_REQUEST, MAX_ACTIONS)
+                .put(ClientBuilder.ACCUMULATION_STRIPES, maxthreads)
+                .put(ClientBuilder.FLUSH_INTERVAL, TimeValue.timeValueSeconds(60)) // = disable autoflush for this test
+                .setMetric(new LongAdderIngestMetric())
+                .toBulkTransportClient();
+        try {
+            client.newIndex("test")
+                    .startBulk("test", -1, 1000);
+            ThreadPoolExecutor pool =
+                    EsExecutors.newFixed("bulkclient-test", maxthreads, 30, EsExecutors.daemonThreadFactory("bulkclient-test"));
+            final CountDownLatch latch = new CountDownLatch(maxthreads);
+            for (int i = 0; i < maxthreads; i++) {
+                pool.execute(new Runnable() {
+                    public void run() {
+                        for (int i = 0; i < maxloop; i++) {
+                            client.index("test", "test", null, "{ \"name\" : \"" + randomString(32) + "\"}");
+                        }
+                        latch.countDown();
+                    }
+                });
+            }
+            latch.await(30, TimeUnit.SECONDS);
+            client.flushIngest();
+            client.waitForResponses(TimeValue.timeValueSeconds(30));
+            pool.shutdown();
+        } catch (NoNodeAvailableException e) {
+            logger.warn("skipping, no node available");
+        } finally {
+            client.stopBulk("test");
+            assertEquals(maxthreads * maxloop, client.getMetric().getSucceeded().getCount());
+            if (client.hasThrowable()) {
+                logger.error("error", client.getThrowable());
+            }
+            assertFalse(client.hasThrowable());
+            client.refreshIndex("test");
+            SearchRequestBuilder searchRequestBuilder = new SearchRequestBuilder(client.client(), SearchAction.INSTANCE)
+                    .setIndices("_all") // to avoid NPE at org.elasticsearch.action.search.SearchRequest.writeTo(SearchRequest.java:580)
+                    .setQuery(QueryBuilders.matchAllQuery())
+                    .setSize(0);
+            assertEquals(maxthreads * maxloop,
+                    searchRequestBuilder.execute().actionGet().getHits().getTotalHits());
+            client.shutdown();
+        }
+    }
+
 }
@@ -0,0 +1,61 @@
+package org.xbib.elasticsearch.rest.action.ingest;
+
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class IngestResultTableTest {
+
+    @Test
+    public void testLifecycle() {
+        IngestResultTable table = new IngestResultTable(10, TimeValue.timeValueMinutes(1));
+        table.onSubmit(1L, 10);
+        table.onSubmit(2L, 5);
+        assertEquals("pending", table.get(1L).status());
+        table.onResponse(1L, 10, 0, 3L);
+        table.onFailure(2L, "failed");
+        assertEquals("completed", table.get(1L).status());
+        assertEquals("failed", table.get(2L).status());
+        assertNull(table.get(3L));
+    }
+
+    @Test
+    public void testUnknownIdIsNotCreated() {
+        IngestResultTable table = new IngestResultTable(10, TimeValue.timeValueMinutes(1));
+        table.onResponse(1L, 10, 0, 3L);
+        table.onFailure(2L, "failed");
+        assertNull(table.get(1L));
+        assertNull(table.get(2L));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testExpiredResultIsAbsent() throws InterruptedException {
+        IngestResultTable table = new IngestResultTable(10, TimeValue.timeValueMillis(50));
+        table.onSubmit(1L, 10);
+        assertNotNull(table.get(1L));
+        // no insert follows, so only the lookup can notice the expiry
+        Thread.sleep(100L);
+        assertNull(table.get(1L));
+        table.onResponse(1L, 10, 0, 3L);
+        assertNull(table.get(1L));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testEvictedResultIsNotRecreated() {
+        IngestResultTable table = new IngestResultTable(2, TimeValue.timeValueMinutes(1));
+        table.onSubmit(1L, 10);
+        table.onSubmit(2L, 10);
+        table.onSubmit(3L, 10);
+        assertNull(table.get(1L));
+        table.onResponse(1L, 10, 0, 3L);
+        table.onFailure(1L, "failed");
+        assertNull(table.get(1L));
+        assertEquals(2, table.size());
+        assertEquals("pending", table.get(3L).status());
+    }
+}
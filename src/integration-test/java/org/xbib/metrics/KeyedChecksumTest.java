@@ -0,0 +1,106 @@
+package org.xbib.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class KeyedChecksumTest {
+
+    @Test
+    public void testOrderIndependence() {
+        List<String> ids = ids(1000);
+        KeyedChecksum forward = new KeyedChecksum();
+        for (String id : ids) {
+            forward.update("index", "type", id);
+        }
+        Collections.shuffle(ids, new Random(42L));
+        KeyedChecksum shuffled = new KeyedChecksum();
+        for (String id : ids) {
+            shuffled.update("index", "type", id);
+        }
+        assertEquals(forward.getValue("index", "type"), shuffled.getValue("index", "type"));
+        assertNotEquals(0L, forward.getValue("index", "type"));
+    }
+
+    @Test
+    public void testKeys() {
+        KeyedChecksum checksum = new KeyedChecksum();
+        checksum.update("a", "t", "1");
+        checksum.update("b", "t", "1");
+        checksum.update(null, null, "1");
+        checksum.update("a", "t", null);
+        assertEquals(checksum.getValue("a", "t"), checksum.getValue("b", "t"));
+        assertEquals(checksum.getValue("a", "t"), checksum.getValue(null, null));
+        assertEquals(0L, checksum.getValue("a", "u"));
+        assertEquals(0L, checksum.getValue("c", "t"));
+        // a different id gives a different checksum
+        KeyedChecksum other = new KeyedChecksum();
+        other.update("a", "t", "2");
+        assertNotEquals(checksum.getValue("a", "t"), other.getValue("a", "t"));
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws InterruptedException {
+        final List<String> ids = ids(20000);
+        KeyedChecksum sequential = new KeyedChecksum();
+        for (int i = 0; i < ids.size(); i++) {
+            sequential.update("index" + (i % 4), "type", ids.get(i));
+        }
+        for (int round = 0; round < 20; round++) {
+            final KeyedChecksum concurrent = new KeyedChecksum();
+            final int threads = 8;
+            List<Thread> list = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int offset = t;
+                Thread thread = new Thread() {
+                    @Override
+                    public void run() {
+                        // each thread updates its own part of the ids, and all threads race for the new keys
+                        for (int i = offset; i < ids.size(); i += threads) {
+                            concurrent.update("index" + (i % 4), "type", ids.get(i));
+                        }
+                    }
+                };
+                thread.start();
+                list.add(thread);
+            }
+            for (Thread thread : list) {
+                thread.join();
+            }
+            for (int i = 0; i < 4; i++) {
+                assertEquals(sequential.getValue("index" + i, "type"), concurrent.getValue("index" + i, "type"));
+            }
+        }
+    }
+
+    @Test
+    public void testIncAndDecChecksumsMatch() {
+        List<String> ids = ids(500);
+        CountMetric metric = new CountMetric();
+        for (String id : ids) {
+            metric.inc("index", "type", id);
+        }
+        Collections.shuffle(ids, new Random(7L));
+        for (String id : ids) {
+            metric.dec("index", "type", id);
+        }
+        assertEquals(metric.getIncChecksum("index", "type"), metric.getDecChecksum("index", "type"));
+        // one missing acknowledgement is detected
+        metric.inc("index", "type", "missing");
+        assertNotEquals(metric.getIncChecksum("index", "type"), metric.getDecChecksum("index", "type"));
+    }
+
+    private static List<String> ids(int n) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            ids.add(Integer.toString(i));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,134 @@
+package org.xbib.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogBucketReservoirTest {
+
+    @Test
+    public void testRoundTripAtBoundaries() {
+        for (int precision : new int[]{1, 3, 5, 10}) {
+            long sub = 1L << precision;
+            long[] values = {0L, 1L, sub - 1, sub, sub + 1, 2 * sub - 1, 2 * sub, 2 * sub + 1,
+                    1L << 32, (1L << 62) - 1, 1L << 62, Long.MAX_VALUE - 1, Long.MAX_VALUE};
+            LogBucketReservoir reservoir = new LogBucketReservoir(precision, 1);
+            for (long value : values) {
+                reservoir.update(value);
+                // an interval snapshot does not know the exact bounds, so it reports the bucket value
+                long bucketValue = (long) reservoir.getIntervalSnapshot().getValue(0.5);
+                if (value < 2 * sub) {
+                    assertEquals("precision " + precision, value, bucketValue);
+                } else {
+                    assertTrue("precision " + precision + " value " + value + " bucket " + bucketValue,
+                            withinError(value, bucketValue, precision));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNegativeValuesAreZero() {
+        LogBucketReservoir reservoir = new LogBucketReservoir(5, 1);
+        reservoir.update(-5L);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(1, snapshot.size());
+        assertEquals(0L, snapshot.getMin());
+        assertEquals(0.0, snapshot.getValue(1.0), 0.0);
+    }
+
+    @Test
+    public void testQuantileError() {
+        Random random = new Random(42L);
+        for (int precision : new int[]{3, 5, 7}) {
+            LogBucketReservoir reservoir = new LogBucketReservoir(precision, 4);
+            long[] values = new long[10000];
+            for (int i = 0; i < values.length; i++) {
+                // spread over many orders of magnitude
+                values[i] = (long) Math.pow(2.0, random.nextDouble() * 40.0);
+                reservoir.update(values[i]);
+            }
+            Arrays.sort(values);
+            Snapshot snapshot = reservoir.getSnapshot();
+            assertEquals(values.length, snapshot.size());
+            assertEquals(values[0], snapshot.getMin());
+            assertEquals(values[values.length - 1], snapshot.getMax());
+            for (double quantile : new double[]{0.0, 0.01, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999, 1.0}) {
+                long rank = Math.max(1L, (long) Math.ceil(quantile * values.length));
+                long exact = values[(int) rank - 1];
+                long estimate = (long) snapshot.getValue(quantile);
+                assertTrue("precision " + precision + " quantile " + quantile + " exact " + exact
+                        + " estimate " + estimate, withinError(exact, estimate, precision));
+            }
+        }
+    }
+
+    @Test
+    public void testIntervalSnapshotsReset() {
+        LogBucketReservoir reservoir = new LogBucketReservoir(5, 1);
+        for (int i = 1; i <= 10; i++) {
+            reservoir.update(i);
+        }
+        Snapshot first = reservoir.getIntervalSnapshot();
+        assertEquals(10, first.size());
+        assertEquals(5.5, first.getMean(), 0.0);
+        for (int i = 0; i < 5; i++) {
+            reservoir.update(1000L);
+        }
+        Snapshot second = reservoir.getIntervalSnapshot();
+        assertEquals(5, second.size());
+        assertEquals(1000L, second.getMin());
+        assertEquals(1000L, second.getMax());
+        Snapshot third = reservoir.getIntervalSnapshot();
+        assertEquals(0, third.size());
+        assertEquals(0.0, third.getValue(0.5), 0.0);
+        // the full snapshot is not reset
+        assertEquals(15, reservoir.getSnapshot().size());
+        assertEquals(15, reservoir.size());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws InterruptedException {
+        final LogBucketReservoir reservoir = new LogBucketReservoir(5, 4);
+        final int threads = 8;
+        final int updates = 20000;
+        List<Thread> list = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < updates; i++) {
+                        reservoir.update(i % 1000);
+                    }
+                }
+            };
+            thread.start();
+            list.add(thread);
+        }
+        // interval snapshots taken while recording must add up to all values
+        long seen = 0L;
+        for (Thread thread : list) {
+            seen += reservoir.getIntervalSnapshot().size();
+            thread.join();
+        }
+        seen += reservoir.getIntervalSnapshot().size();
+        long count = (long) threads * updates;
+        assertEquals(count, seen);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(count, snapshot.size());
+        assertEquals(0L, snapshot.getMin());
+        assertEquals(999L, snapshot.getMax());
+        // each thread records 20 times the values 0 to 999
+        assertEquals(499.5, snapshot.getMean(), 0.0);
+    }
+
+    private static boolean withinError(long exact, long estimate, int precision) {
+        return Math.abs((double) estimate - (double) exact) <= Math.scalb((double) exact, -precision);
+    }
+}
@@ -0,0 +1,38 @@
+package org.xbib.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+
+public class MeterTickerTest {
+
+    @Test
+    public void testRegistryCloseUnregistersMeters() {
+        MeterTicker ticker = new MeterTicker();
+        MetricRegistry registry = new MetricRegistry(new ConcurrentHashMap<MetricName, Metric>(), ticker) {
+        };
+        registry.meter("a");
+        registry.meter("b");
+        assertEquals(2, ticker.size());
+        registry.close();
+        assertEquals(0, ticker.size());
+        assertEquals(0, registry.getMeters().size());
+    }
+
+    @Test
+    public void testUnreferencedMeterIsCollected() throws InterruptedException {
+        MeterTicker ticker = new MeterTicker();
+        new Meter().spawn(ticker);
+        Meter meter = new Meter();
+        meter.spawn(ticker);
+        for (int i = 0; i < 50 && ticker.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10L);
+        }
+        assertEquals(1, ticker.size());
+        meter.stop();
+        assertEquals(0, ticker.size());
+    }
+}
@@ -0,0 +1,45 @@
+package org.xbib.metrics;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OpenMetricsWriterTest {
+
+    @Test
+    public void testCounterTypes() throws IOException {
+        MetricRegistry registry = new MetricRegistry();
+        registry.register("ingest.succeeded", new MonotonicCountMetric()).inc(3);
+        registry.counter("queue").inc(2);
+        String s = write(registry);
+        assertTrue(s, s.contains("# TYPE ingest_succeeded counter\ningest_succeeded_total 3\n"));
+        assertTrue(s, s.contains("# TYPE queue gauge\nqueue 2\n"));
+        assertFalse(s, s.contains("queue_total"));
+        registry.close();
+    }
+
+    @Test
+    public void testSummarySum() throws IOException {
+        MetricRegistry registry = new MetricRegistry();
+        Histogram histogram = registry.histogram("latency");
+        histogram.inc(10);
+        histogram.inc(20);
+        registry.timer("took").update(1500, TimeUnit.MILLISECONDS);
+        String s = write(registry);
+        assertTrue(s, s.contains("latency_sum 30\nlatency_count 2\n"));
+        assertTrue(s, s.contains("took_sum 1.5\ntook_count 1\n"));
+        assertTrue(s, s.endsWith("# EOF\n"));
+        registry.close();
+    }
+
+    private static String write(MetricRegistry registry) throws IOException {
+        StringWriter writer = new StringWriter();
+        new OpenMetricsWriter(writer).write(registry);
+        return writer.toString();
+    }
+}
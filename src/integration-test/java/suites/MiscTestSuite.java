@@ -7,6 +7,18 @@ import org.xbib.elasticsearch.helper.IngestRequestTest;
 import org.xbib.elasticsearch.helper.SearchTest;
 import org.xbib.elasticsearch.helper.SimpleTest;
 import org.xbib.elasticsearch.helper.WildcardTest;
+import org.xbib.elasticsearch.helper.client.BulkRetryTest;
+import org.xbib.elasticsearch.helper.client.BulkStripesTest;
+import org.xbib.elasticsearch.helper.client.ConcurrencyLimiterTest;
+import org.xbib.elasticsearch.helper.client.IngestRetryTest;
+import org.xbib.elasticsearch.helper.client.IngestSpillJournalTest;
+import org.xbib.elasticsearch.helper.client.IngestSubmitTest;
+import org.xbib.elasticsearch.helper.client.TaggedIngestMetricTest;
+import org.xbib.elasticsearch.rest.action.ingest.IngestResultTableTest;
+import org.xbib.metrics.KeyedChecksumTest;
+import org.xbib.metrics.LogBucketReservoirTest;
+import org.xbib.metrics.MeterTickerTest;
+import org.xbib.metrics.OpenMetricsWriterTest;
 
 @RunWith(ListenerSuite.class)
 @Suite.SuiteClasses({
@@ -14,7 +26,19 @@ import org.xbib.elasticsearch.helper.WildcardTest;
         AliasTest.class,
         IngestRequestTest.class,
         SearchTest.class,
-        WildcardTest.class
+        WildcardTest.class,
+        IngestSpillJournalTest.class,
+        IngestRetryTest.class,
+        BulkRetryTest.class,
+        BulkStripesTest.class,
+        ConcurrencyLimiterTest.class,
+        IngestSubmitTest.class,
+        TaggedIngestMetricTest.class,
+        IngestResultTableTest.class,
+        KeyedChecksumTest.class,
+        LogBucketReservoirTest.class,
+        MeterTickerTest.class,
+        OpenMetricsWriterTest.class
 })
 public class MiscTestSuite {
 }
@@ -11,8 +11,12 @@ import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.bytes.ChannelBufferBytesReference;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.json.JsonXContent;
 import org.elasticsearch.rest.RestStatus;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.HttpMethod;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.xbib.elasticsearch.helper.client.http.HttpAction;
@@ -20,9 +24,9 @@ import org.xbib.elasticsearch.helper.client.http.HttpContext;
 
 import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 public class HttpBulkAction extends HttpAction<BulkRequest, BulkResponse> {
 
@@ -30,156 +34,272 @@ public class HttpBulkAction extends HttpAction<BulkRequest, BulkResponse> {
         super(settings, BulkAction.NAME);
     }
 
+    /**
+     * Create the bulk request. Action metadata lines are written into small buffers, and the sources are wrapped
+     * into a composite buffer, so the source bytes are neither copied nor transcoded.
+     */
     @Override
     protected HttpRequest createHttpRequest(URL base, BulkRequest request) {
-        StringBuilder bulkContent = new StringBuilder();
+        List<ChannelBuffer> buffers = new ArrayList<>(request.requests().size() * 2);
         for (ActionRequest actionRequest : request.requests()) {
             if (actionRequest instanceof IndexRequest) {
                 IndexRequest indexRequest = (IndexRequest) actionRequest;
-                bulkContent.append("{\"").append(indexRequest.opType().lowercase()).append("\":{");
-                bulkContent.append("\"_index\":\"").append(indexRequest.index()).append("\"");
-                bulkContent.append(",\"_type\":\"").append(indexRequest.type()).append("\"");
+                ChannelBuffer metadata = ChannelBuffers.dynamicBuffer(128);
+                writeAscii(metadata, "{\"");
+                writeAscii(metadata, indexRequest.opType().lowercase());
+                writeAscii(metadata, "\":{");
+                writeField(metadata, INDEX, indexRequest.index(), false);
+                writeField(metadata, TYPE, indexRequest.type(), true);
                 if (indexRequest.id() != null) {
-                    bulkContent.append(",\"_id\":\"").append(indexRequest.id()).append("\"");
+                    writeField(metadata, ID, indexRequest.id(), true);
                 }
                 if (indexRequest.routing() != null) {
-                    bulkContent.append(",\"_routing\":\"").append(indexRequest.routing()).append("\""); // _routing
+                    writeField(metadata, ROUTING, indexRequest.routing(), true);
                 }
                 if (indexRequest.parent() != null) {
-                    bulkContent.append(",\"_parent\":\"").append(indexRequest.parent()).append("\"");
+                    writeField(metadata, PARENT, indexRequest.parent(), true);
                 }
                 if (indexRequest.timestamp() != null) {
-                    bulkContent.append(",\"_timestamp\":\"").append(indexRequest.timestamp()).append("\"");
+                    writeField(metadata, TIMESTAMP, indexRequest.timestamp(), true);
                 }
                 // avoid _ttl <= 0 at all cost!
                 if (indexRequest.ttl() != null && indexRequest.ttl().seconds() > 0) {
-                    bulkContent.append(",\"_ttl\":\"").append(indexRequest.ttl()).append("\"");
+                    writeField(metadata, TTL, indexRequest.ttl().toString(), true);
                 }
                 if (indexRequest.version() > 0) {
-                    bulkContent.append(",\"_version\":\"").append(indexRequest.version()).append("\"");
+                    writeField(metadata, VERSION, Long.toString(indexRequest.version()), true);
                     if (indexRequest.versionType() != null) {
-                        bulkContent.append(",\"_version_type\":\"").append(indexRequest.versionType().name()).append("\"");
+                        writeField(metadata, VERSION_TYPE, indexRequest.versionType().name(), true);
                     }
                 }
-                bulkContent.append("}}\n");
-                bulkContent.append(indexRequest.source().toUtf8());
-                bulkContent.append("\n");
+                writeAscii(metadata, "}}\n");
+                buffers.add(metadata);
+                buffers.add(indexRequest.source().toChannelBuffer());
+                buffers.add(ChannelBuffers.wrappedBuffer(NEWLINE));
             } else if (actionRequest instanceof DeleteRequest) {
                 DeleteRequest deleteRequest = (DeleteRequest) actionRequest;
-                bulkContent.append("{\"delete\":{");
-                bulkContent.append("\"_index\":\"").append(deleteRequest.index()).append("\"");
-                bulkContent.append(",\"_type\":\"").append(deleteRequest.type()).append("\"");
-                bulkContent.append(",\"_id\":\"").append(deleteRequest.id()).append("\"");
+                ChannelBuffer metadata = ChannelBuffers.dynamicBuffer(128);
+                writeAscii(metadata, "{\"delete\":{");
+                writeField(metadata, INDEX, deleteRequest.index(), false);
+                writeField(metadata, TYPE, deleteRequest.type(), true);
+                writeField(metadata, ID, deleteRequest.id(), true);
                 if (deleteRequest.routing() != null) {
-                    bulkContent.append(",\"_routing\":\"").append(deleteRequest.routing()).append("\""); // _routing
+                    writeField(metadata, ROUTING, deleteRequest.routing(), true);
                 }
-                bulkContent.append("}}\n");
+                writeAscii(metadata, "}}\n");
+                buffers.add(metadata);
             }
         }
-        return newPostRequest(base, "/_bulk", bulkContent);
+        return newRequest(HttpMethod.POST, base, "/_bulk",
+                ChannelBuffers.wrappedBuffer(buffers.toArray(new ChannelBuffer[buffers.size()])));
     }
 
+    private static void writeField(ChannelBuffer buffer, String name, String value, boolean comma) {
+        if (comma) {
+            buffer.writeByte(',');
+        }
+        buffer.writeByte('"');
+        writeAscii(buffer, name);
+        writeAscii(buffer, "\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.writeByte('\\');
+                buffer.writeByte(c);
+            } else if (c < 0x20) {
+                writeAscii(buffer, String.format("\\u%04x", (int) c));
+            } else if (c < 0x80) {
+                buffer.writeByte(c);
+            } else {
+                // rare, encode the rest of the value at once
+                writeUtf8(buffer, value.substring(i));
+                break;
+            }
+        }
+        buffer.writeByte('"');
+    }
+
+    private static void writeUtf8(ChannelBuffer buffer, String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        buffer.writeBytes(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeAscii(ChannelBuffer buffer, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            buffer.writeByte(value.charAt(i));
+        }
+    }
+
+    /**
+     * Create the bulk response by pulling tokens from the response content, without building maps. Each item is
+     * scanned for its status and version, so created and found flags and versions are reported as by the cluster,
+     * also if the response reports no errors.
+     */
     @Override
-    @SuppressWarnings("unchecked")
     protected BulkResponse createResponse(HttpContext<BulkRequest,BulkResponse> httpContext) {
         if (httpContext == null) {
             throw new IllegalStateException("no http context");
         }
         HttpResponse httpResponse = httpContext.getHttpResponse();
-        try {
-            BytesReference ref = new ChannelBufferBytesReference(httpResponse.getContent());
-            Map<String,Object> map = JsonXContent.jsonXContent.createParser(ref).map();
-            long tookInMillis = map.containsKey("took") ? (Integer)map.get("took") : -1L;
-            BulkItemResponse[] responses = parseItems((List<Map<String,?>>)map.get("items"));
-            return new BulkResponse(responses, tookInMillis);
+        BytesReference ref = new ChannelBufferBytesReference(httpResponse.getContent());
+        try (XContentParser parser = JsonXContent.jsonXContent.createParser(ref)) {
+            long tookInMillis = -1L;
+            BulkItemResponse[] responses = null;
+            String currentFieldName = null;
+            XContentParser.Token token = parser.nextToken();
+            if (token != XContentParser.Token.START_OBJECT) {
+                return null;
+            }
+            while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT && token != null) {
+                if (token == XContentParser.Token.FIELD_NAME) {
+                    currentFieldName = parser.currentName();
+                } else if (token == XContentParser.Token.START_ARRAY && ITEMS.equals(currentFieldName)) {
+                    responses = parseItems(parser, httpContext.getRequest().numberOfActions());
+                } else if (token.isValue()) {
+                    if (TOOK.equals(currentFieldName)) {
+                        tookInMillis = parser.longValue();
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return responses != null ? new BulkResponse(responses, tookInMillis) : null;
         } catch (IOException e) {
             //
         }
         return null;
     }
 
-    @SuppressWarnings("unchecked")
-    private BulkItemResponse[] parseItems(List<Map<String,?>> items) {
-        List<BulkItemResponse> list = new ArrayList<>();
-        int i = 0;
-        for (Map<String,?> item: items) {
-            if (item.containsKey(UPDATE_OP)) {
-                item = (Map<String,?>)item.get(UPDATE_OP);
-                String index = (String) item.get(INDEX);
-                String type = (String) item.get(TYPE);
-                String id = (String) item.get(ID);
-                if (item.containsKey(ERROR)) {
-                    ElasticsearchException e = new ElasticsearchException(item.get(ERROR).toString());
-                    BulkItemResponse.Failure failure = new BulkItemResponse.Failure(index, type, id, e);
-                    list.add(new BulkItemResponse(i++, UPDATE_OP, failure));
-                } else {
-                    UpdateResponse updateResponse = new UpdateResponse(index, type, id,
-                            item.containsKey(VERSION) ? (Integer) item.get(VERSION) : -1L,
-                            false);
-                    list.add(new BulkItemResponse(i++, UPDATE_OP, updateResponse));
-                }
-            } else if (item.containsKey(INDEX_OP)) {
-                item = (Map<String,?>)item.get(INDEX_OP);
-                String index = (String) item.get(INDEX);
-                String type = (String) item.get(TYPE);
-                String id = (String) item.get(ID);
-                if (item.containsKey(ERROR)) {
-                    ElasticsearchException e = new ElasticsearchException(item.get(ERROR).toString());
-                    BulkItemResponse.Failure failure = new BulkItemResponse.Failure(index, type, id, e);
-                    list.add(new BulkItemResponse(i++, INDEX_OP, failure));
-                } else {
-                    int status = (Integer) item.get(STATUS);
-                    IndexResponse indexResponse = new IndexResponse(index, type, id,
-                            item.containsKey(VERSION) ? (Integer) item.get(VERSION) : -1L,
-                            status == RestStatus.CREATED.getStatus());
-                    list.add(new BulkItemResponse(i++, INDEX_OP, indexResponse));
-                }
-            } else if (item.containsKey(CREATE_OP)) {
-                item = (Map<String,?>)item.get(CREATE_OP);
-                String index = (String) item.get(INDEX);
-                String type = (String) item.get(TYPE);
-                String id = (String) item.get(ID);
-                if (item.containsKey(ERROR)) {
-                    ElasticsearchException e = new ElasticsearchException(item.get(ERROR).toString());
-                    BulkItemResponse.Failure failure = new BulkItemResponse.Failure(index, type, id, e);
-                    list.add(new BulkItemResponse(i++, CREATE_OP, failure));
-                } else {
-                    int status = (Integer) item.get(STATUS);
-                    IndexResponse indexResponse = new IndexResponse(index, type, id,
-                            item.containsKey(VERSION) ? (Integer) item.get(VERSION) : -1L,
-                            status == RestStatus.CREATED.getStatus());
-                    list.add(new BulkItemResponse(i++, CREATE_OP, indexResponse));
+    private static BulkItemResponse[] parseItems(XContentParser parser, int size) throws IOException {
+        List<BulkItemResponse> list = new ArrayList<>(size);
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY && token != null) {
+            if (token != XContentParser.Token.START_OBJECT) {
+                continue;
+            }
+            while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT && token != null) {
+                if (token == XContentParser.Token.FIELD_NAME) {
+                    String op = parser.currentName();
+                    parser.nextToken();
+                    BulkItemResponse response = parseItem(parser, list.size(), op);
+                    if (response != null) {
+                        list.add(response);
+                    }
                 }
-            } else if (item.containsKey(DELETE_OP)) {
-                item = (Map<String,?>)item.get(DELETE_OP);
-                String index = (String) item.get(INDEX);
-                String type = (String) item.get(TYPE);
-                String id = (String) item.get(ID);
-                if (item.containsKey(ERROR)) {
-                    ElasticsearchException e = new ElasticsearchException(item.get(ERROR).toString());
-                    BulkItemResponse.Failure failure = new BulkItemResponse.Failure(index, type, id, e);
-                    list.add(new BulkItemResponse(i++, DELETE_OP, failure));
+            }
+        }
+        return list.toArray(new BulkItemResponse[list.size()]);
+    }
+
+    private static BulkItemResponse parseItem(XContentParser parser, int i, String op) throws IOException {
+        String index = null;
+        String type = null;
+        String id = null;
+        long version = -1L;
+        int status = -1;
+        String error = null;
+        String currentFieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT && token != null) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                if (ERROR.equals(currentFieldName)) {
+                    // only failed items pay for a map
+                    error = parser.map().toString();
                 } else {
-                    int status = (Integer) item.get(STATUS);
-                    DeleteResponse deleteResponse = new DeleteResponse(index, type, id,
-                            item.containsKey(VERSION) ? (Integer) item.get(VERSION) : -1L,
-                            status != RestStatus.NOT_FOUND.getStatus());
-                    list.add(new BulkItemResponse(i++, DELETE_OP, deleteResponse));
+                    parser.skipChildren();
                 }
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                parser.skipChildren();
+            } else if (INDEX.equals(currentFieldName)) {
+                index = parser.text();
+            } else if (TYPE.equals(currentFieldName)) {
+                type = parser.text();
+            } else if (ID.equals(currentFieldName)) {
+                id = parser.text();
+            } else if (VERSION.equals(currentFieldName)) {
+                version = parser.longValue();
+            } else if (STATUS.equals(currentFieldName)) {
+                status = parser.intValue();
+            } else if (ERROR.equals(currentFieldName)) {
+                error = parser.text();
             }
         }
-        return list.toArray(new BulkItemResponse[list.size()]);
+        if (error != null) {
+            BulkItemResponse.Failure failure = new BulkItemResponse.Failure(index, type, id,
+                    new HttpBulkItemException(error, status(status)));
+            return new BulkItemResponse(i, op, failure);
+        }
+        switch (op) {
+            case UPDATE_OP:
+                return new BulkItemResponse(i, op, new UpdateResponse(index, type, id, version, false));
+            case INDEX_OP:
+            case CREATE_OP:
+                return new BulkItemResponse(i, op, new IndexResponse(index, type, id, version,
+                        status == RestStatus.CREATED.getStatus()));
+            case DELETE_OP:
+                return new BulkItemResponse(i, op, new DeleteResponse(index, type, id, version,
+                        status != RestStatus.NOT_FOUND.getStatus()));
+            default:
+                return null;
+        }
+    }
+
+    private static RestStatus status(int status) {
+        for (RestStatus restStatus : RestStatus.values()) {
+            if (restStatus.getStatus() == status) {
+                return restStatus;
+            }
+        }
+        return RestStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    /**
+     * The error of a bulk item, with the status reported by the cluster, so rejections can be told apart.
+     */
+    static class HttpBulkItemException extends ElasticsearchException {
+
+        private final RestStatus status;
+
+        HttpBulkItemException(String msg, RestStatus status) {
+            super(msg);
+            this.status = status;
+        }
+
+        @Override
+        public RestStatus status() {
+            return status;
+        }
     }
 
     private final static String INDEX = "_index";
     private final static String TYPE = "_type";
     private final static String ID = "_id";
     private final static String VERSION = "_version";
+    private final static String VERSION_TYPE = "_version_type";
+    private final static String ROUTING = "_routing";
+    private final static String PARENT = "_parent";
+    private final static String TIMESTAMP = "_timestamp";
+    private final static String TTL = "_ttl";
+    private final static byte[] NEWLINE = new byte[]{'\n'};
     private final static String INDEX_OP = "index";
     private final static String CREATE_OP = "create";
     private final static String DELETE_OP = "delete";
     private final static String UPDATE_OP = "update";
     private final static String ERROR = "error";
     private final static String STATUS = "status";
+    private final static String TOOK = "took";
+    private final static String ITEMS = "items";
 
 }
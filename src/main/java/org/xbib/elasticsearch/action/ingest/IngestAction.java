@@ -15,6 +15,11 @@ public class IngestAction extends Action<IngestRequest, IngestResponse, IngestRe
 
     public static final String NAME = "indices:data/write/xbib/ingest";
 
+    /**
+     * The name of the thread pool for the leader and replica shard operations.
+     */
+    public static final String EXECUTOR = "ingest";
+
     public IngestAction() {
         super(NAME);
     }
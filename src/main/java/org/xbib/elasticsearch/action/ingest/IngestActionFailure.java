@@ -1,5 +1,6 @@
 package org.xbib.elasticsearch.action.ingest;
 
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
@@ -9,12 +10,22 @@ import java.io.IOException;
 
 public class IngestActionFailure implements Streamable {
 
+    private final static int[] EMPTY = new int[0];
+
     private long ingestId;
 
     private ShardId shardId;
 
+    private int position = -1;
+
+    private String id;
+
+    private String type;
+
     private String message;
 
+    private int[] positions = EMPTY;
+
     IngestActionFailure() {
     }
 
@@ -24,6 +35,24 @@ public class IngestActionFailure implements Streamable {
         this.message = message;
     }
 
+    /**
+     * Create a failure of a single action, or of a shard if the position is -1.
+     *
+     * @param ingestId the ingest ID
+     * @param shardId the shard ID
+     * @param position the position of the action in its request, or -1
+     * @param id the document ID of the action, or null
+     * @param t the cause
+     */
+    public IngestActionFailure(long ingestId, ShardId shardId, int position, String id, Throwable t) {
+        this.ingestId = ingestId;
+        this.shardId = shardId;
+        this.position = position;
+        this.id = id;
+        this.type = ExceptionsHelper.unwrapCause(t).getClass().getSimpleName();
+        this.message = ExceptionsHelper.detailedMessage(t);
+    }
+
     public static IngestActionFailure from(StreamInput in) throws IOException {
         IngestActionFailure itemFailure = new IngestActionFailure();
         itemFailure.readFrom(in);
@@ -38,6 +67,58 @@ public class IngestActionFailure implements Streamable {
         return shardId;
     }
 
+    /**
+     * @return the position of the failed action in its request, or -1 if the failure is not about a single action
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * Copy this failure for the position of the action in another request.
+     *
+     * @param position the position
+     * @return the copied failure
+     */
+    public IngestActionFailure position(int position) {
+        IngestActionFailure failure = new IngestActionFailure(ingestId, shardId, message);
+        failure.position = position;
+        failure.id = id;
+        failure.type = type;
+        return failure;
+    }
+
+    /**
+     * @return the positions of the actions failed by this shard failure, empty if not known or if this is
+     * the failure of a single action
+     */
+    public int[] positions() {
+        return positions;
+    }
+
+    /**
+     * Copy this failure of a shard for the positions of the actions it failed.
+     *
+     * @param positions the positions
+     * @return the copied failure
+     */
+    public IngestActionFailure positions(int[] positions) {
+        IngestActionFailure failure = position(position);
+        failure.positions = positions;
+        return failure;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    /**
+     * @return the simple class name of the cause, or null if unknown
+     */
+    public String type() {
+        return type;
+    }
+
     public String message() {
         return message;
     }
@@ -48,7 +129,14 @@ public class IngestActionFailure implements Streamable {
         if (in.readBoolean()) {
             shardId = ShardId.readShardId(in);
         }
+        position = in.readVInt() - 1;
+        id = in.readOptionalString();
+        type = in.readOptionalString();
         message = in.readString();
+        positions = new int[in.readVInt()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = in.readVInt();
+        }
     }
 
     @Override
@@ -60,10 +148,18 @@ public class IngestActionFailure implements Streamable {
         } else {
             out.writeBoolean(false);
         }
+        out.writeVInt(position + 1);
+        out.writeOptionalString(id);
+        out.writeOptionalString(type);
         out.writeString(message);
+        out.writeVInt(positions.length);
+        for (int position : positions) {
+            out.writeVInt(position);
+        }
     }
 
     public String toString() {
-        return "[ingestId=" + ingestId + ",shardId=" + shardId + ",message=" + message + "]";
+        return "[ingestId=" + ingestId + ",shardId=" + shardId + ",position=" + position + ",id=" + id
+                + ",type=" + type + ",message=" + message + "]";
     }
 }
@@ -333,6 +333,42 @@ public class IngestRequest extends ActionRequest<IngestRequest> implements Compo
         return request;
     }
 
+    /**
+     * Take a number of requests from the bulk request queue, but not more than the given volume.
+     * At least one request is taken if the queue is not empty.
+     * This method is thread safe.
+     *
+     * @param numRequests maximum number of requests
+     * @param maxVolume maximum estimated size in bytes of the taken requests
+     * @return a partial bulk request
+     */
+    public IngestRequest take(int numRequests, long maxVolume) {
+        IngestRequest request = new IngestRequest();
+        long volume = 0L;
+        for (int i = 0; i < numRequests; i++) {
+            ActionRequest<?> actionRequest = requests.peek();
+            if (actionRequest == null) {
+                break;
+            }
+            long length;
+            if (actionRequest instanceof IndexRequest) {
+                IndexRequest indexRequest = (IndexRequest) actionRequest;
+                length = indexRequest.source() != null ? indexRequest.source().length() + REQUEST_OVERHEAD : REQUEST_OVERHEAD;
+            } else if (actionRequest instanceof DeleteRequest) {
+                length = REQUEST_OVERHEAD;
+            } else {
+                throw new IllegalStateException("action request not supported: " + actionRequest.getClass().getName());
+            }
+            if (i > 0 && volume + length > maxVolume) {
+                break;
+            }
+            volume += length;
+            request.add(requests.poll());
+            sizeInBytes.addAndGet(-length);
+        }
+        return request;
+    }
+
     @Override
     public ActionRequestValidationException validate() {
         ActionRequestValidationException validationException = null;
@@ -366,10 +402,12 @@ public class IngestRequest extends ActionRequest<IngestRequest> implements Compo
                 IndexRequest request = new IndexRequest();
                 request.readFrom(in);
                 requests.add(request);
+                sizeInBytes.addAndGet(request.source().length() + REQUEST_OVERHEAD);
             } else if (type == 1) {
                 DeleteRequest request = new DeleteRequest();
                 request.readFrom(in);
                 requests.add(request);
+                sizeInBytes.addAndGet(REQUEST_OVERHEAD);
             }
         }
     }
@@ -7,10 +7,14 @@ import org.xbib.elasticsearch.action.ingest.leader.IngestLeaderShardResponse;
 import org.xbib.elasticsearch.action.ingest.replica.IngestReplicaShardResponse;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 
 public class IngestResponse extends ActionResponse implements Iterable<IngestReplicaShardResponse> {
 
@@ -26,6 +30,12 @@ public class IngestResponse extends ActionResponse implements Iterable<IngestRep
 
     protected long tookInMillis;
 
+    protected long[] versions = new long[0];
+
+    protected BitSet failedItems = new BitSet();
+
+    protected List<IngestShardResult> shardResults = Collections.synchronizedList(new ArrayList<IngestShardResult>());
+
     public IngestResponse() {
     }
 
@@ -65,11 +75,159 @@ public class IngestResponse extends ActionResponse implements Iterable<IngestRep
         return replicaResponses;
     }
 
-    public IngestResponse addFailure(IngestActionFailure failure) {
+    public synchronized IngestResponse addFailure(IngestActionFailure failure) {
         this.failures.add(failure);
         return this;
     }
 
+    /**
+     * Set the number of actions in the request, for reporting a result per action.
+     *
+     * @param numberOfItems the number of actions
+     * @return this response
+     */
+    public IngestResponse setNumberOfItems(int numberOfItems) {
+        this.versions = new long[numberOfItems];
+        this.failedItems = new BitSet(numberOfItems);
+        return this;
+    }
+
+    public int numberOfItems() {
+        return versions.length;
+    }
+
+    public synchronized IngestResponse setItemVersion(int position, long version) {
+        versions[position] = version;
+        return this;
+    }
+
+    /**
+     * The version of an action after it was executed.
+     *
+     * @param position the position of the action in the request
+     * @return the version, or 0 if the action failed or the version is unknown
+     */
+    public synchronized long getItemVersion(int position) {
+        return versions[position];
+    }
+
+    /**
+     * Mark an action as failed.
+     *
+     * @param position the position of the action in the request
+     * @param failure the failure of the action, or null if the failure is reported for the whole shard
+     *                with the positions of its actions
+     * @return this response
+     */
+    public synchronized IngestResponse setItemFailed(int position, IngestActionFailure failure) {
+        failedItems.set(position);
+        if (failure != null) {
+            failures.add(failure);
+        }
+        return this;
+    }
+
+    public synchronized boolean isItemFailed(int position) {
+        return failedItems.get(position);
+    }
+
+    public synchronized boolean hasFailedItems() {
+        return !failedItems.isEmpty();
+    }
+
+    /**
+     * @return the positions of the failed actions in the request
+     */
+    public synchronized BitSet getFailedItems() {
+        return (BitSet) failedItems.clone();
+    }
+
+    /**
+     * Merge the response to a request with a part of the actions of this response's request,
+     * e.g. the part sent to one node, or the retried actions.
+     * The results of the part replace the results of the actions at the given positions, including the
+     * failures of their shards, which are dropped when none of their actions is left failed by them.
+     *
+     * @param response the response to the part
+     * @param positions the positions of the actions of the part in this response's request
+     * @return this response
+     */
+    public synchronized IngestResponse merge(IngestResponse response, int[] positions) {
+        BitSet part = new BitSet(versions.length);
+        int n = Math.min(positions.length, response.numberOfItems());
+        for (int i = 0; i < n; i++) {
+            int position = positions[i];
+            part.set(position);
+            if (response.isItemFailed(i)) {
+                failedItems.set(position);
+                versions[position] = 0L;
+            } else {
+                failedItems.clear(position);
+                versions[position] = response.getItemVersion(i);
+            }
+        }
+        synchronized (failures) {
+            ListIterator<IngestActionFailure> it = failures.listIterator();
+            while (it.hasNext()) {
+                IngestActionFailure failure = it.next();
+                int position = failure.position();
+                if (position >= 0) {
+                    if (part.get(position)) {
+                        it.remove();
+                    }
+                } else if (failure.positions().length > 0) {
+                    // a shard failure is kept only for the actions which are not replaced
+                    int[] remaining = new int[failure.positions().length];
+                    int k = 0;
+                    for (int p : failure.positions()) {
+                        if (!part.get(p)) {
+                            remaining[k++] = p;
+                        }
+                    }
+                    if (k == 0) {
+                        it.remove();
+                    } else if (k < remaining.length) {
+                        it.set(failure.positions(Arrays.copyOf(remaining, k)));
+                    }
+                }
+            }
+        }
+        for (IngestActionFailure failure : response.getFailures()) {
+            int position = failure.position();
+            if (position >= 0) {
+                failures.add(position < positions.length ? failure.position(positions[position]) : failure);
+            } else if (failure.positions().length > 0) {
+                int[] mapped = new int[failure.positions().length];
+                int k = 0;
+                for (int p : failure.positions()) {
+                    if (p < positions.length) {
+                        mapped[k++] = positions[p];
+                    }
+                }
+                failures.add(failure.positions(Arrays.copyOf(mapped, k)));
+            } else {
+                failures.add(failure);
+            }
+        }
+        successSize += response.successSize();
+        leaderResponse = response.leaderShardResponse();
+        replicaResponses.addAll(response.replicaShardResponses());
+        shardResults.addAll(response.getShardResults());
+        return this;
+    }
+
+    public IngestResponse addShardResult(IngestShardResult shardResult) {
+        this.shardResults.add(shardResult);
+        return this;
+    }
+
+    /**
+     * @return the outcome of the actions per leader shard
+     */
+    public List<IngestShardResult> getShardResults() {
+        return shardResults;
+    }
+
     public List<IngestActionFailure> getFailures() {
         return failures;
     }
@@ -103,6 +261,20 @@ public class IngestResponse extends ActionResponse implements Iterable<IngestRep
             r.readFrom(in);
             replicaResponses.add(r);
         }
+        versions = new long[in.readVInt()];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = in.readVLong();
+        }
+        long[] words = new long[in.readVInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        failedItems = BitSet.valueOf(words);
+        size = in.readVInt();
+        shardResults = Collections.synchronizedList(new ArrayList<IngestShardResult>(size));
+        for (int i = 0; i < size; i++) {
+            shardResults.add(IngestShardResult.from(in));
+        }
     }
 
     @Override
@@ -120,6 +292,22 @@ public class IngestResponse extends ActionResponse implements Iterable<IngestRep
         for (IngestReplicaShardResponse r : replicaResponses) {
             r.writeTo(out);
         }
+        out.writeVInt(versions.length);
+        for (long version : versions) {
+            out.writeVLong(Math.max(version, 0L));
+        }
+        // failed actions as a bit set, the failures with a position are the sparse error table
+        long[] words = failedItems.toLongArray();
+        out.writeVInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+        synchronized (shardResults) {
+            out.writeVInt(shardResults.size());
+            for (IngestShardResult shardResult : shardResults) {
+                shardResult.writeTo(out);
+            }
+        }
     }
 
     @Override
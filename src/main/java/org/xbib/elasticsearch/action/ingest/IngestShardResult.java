@@ -0,0 +1,88 @@
+package org.xbib.elasticsearch.action.ingest;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+
+/**
+ * The outcome of the actions of an ingest request on one leader shard, for per-shard metrics.
+ */
+public class IngestShardResult implements Streamable {
+
+    private ShardId shardId;
+
+    private int numberOfActions;
+
+    private int successCount;
+
+    private long sizeInBytes;
+
+    private long tookInMillis;
+
+    IngestShardResult() {
+    }
+
+    public IngestShardResult(ShardId shardId, int numberOfActions, int successCount, long sizeInBytes, long tookInMillis) {
+        this.shardId = shardId;
+        this.numberOfActions = numberOfActions;
+        this.successCount = successCount;
+        this.sizeInBytes = sizeInBytes;
+        this.tookInMillis = tookInMillis;
+    }
+
+    public static IngestShardResult from(StreamInput in) throws IOException {
+        IngestShardResult result = new IngestShardResult();
+        result.readFrom(in);
+        return result;
+    }
+
+    public ShardId shardId() {
+        return shardId;
+    }
+
+    public int numberOfActions() {
+        return numberOfActions;
+    }
+
+    public int successCount() {
+        return successCount;
+    }
+
+    public int failureCount() {
+        return numberOfActions - successCount;
+    }
+
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public long tookInMillis() {
+        return tookInMillis;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        shardId = ShardId.readShardId(in);
+        numberOfActions = in.readVInt();
+        successCount = in.readVInt();
+        sizeInBytes = in.readVLong();
+        tookInMillis = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        shardId.writeTo(out);
+        out.writeVInt(numberOfActions);
+        out.writeVInt(successCount);
+        out.writeVLong(sizeInBytes);
+        out.writeVLong(Math.max(tookInMillis, 0L));
+    }
+
+    @Override
+    public String toString() {
+        return "[" + shardId + "][actions=" + numberOfActions + "][succeeded=" + successCount + "][took=" + tookInMillis + "ms]";
+    }
+}
@@ -1,5 +1,6 @@
 package org.xbib.elasticsearch.action.ingest;
 
+import com.carrotsearch.hppc.IntArrayList;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
@@ -16,8 +17,10 @@ import org.elasticsearch.cluster.block.ClusterBlockLevel;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportService;
@@ -27,16 +30,30 @@ import org.xbib.elasticsearch.action.ingest.leader.TransportLeaderShardIngestAct
 import org.xbib.elasticsearch.action.ingest.replica.IngestReplicaShardRequest;
 import org.xbib.elasticsearch.action.ingest.replica.TransportReplicaShardIngestAction;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class TransportIngestAction extends HandledTransportAction<IngestRequest, IngestResponse> {
 
+    private static final int MIN_ROUTING_RANGE = 1024;
+
     private final boolean allowIdGeneration;
 
+    private final int parallelRoutingThreshold;
+
+    private final int parallelRouting;
+
+    private final int replicationChunkSize;
+
+    private final int replicationWindow;
+
     private final ClusterService clusterService;
 
     private final TransportLeaderShardIngestAction leaderShardIngestAction;
@@ -55,6 +72,11 @@ public class TransportIngestAction extends HandledTransportAction<IngestRequest,
         this.leaderShardIngestAction = leaderShardIngestAction;
         this.replicaShardIngestAction = replicaShardIngestAction;
         this.allowIdGeneration = this.settings.getAsBoolean("action.allow_id_generation", true);
+        this.parallelRoutingThreshold = this.settings.getAsInt("action.ingest.routing.parallel_threshold", 8192);
+        this.parallelRouting = this.settings.getAsInt("action.ingest.routing.parallelism",
+                Runtime.getRuntime().availableProcessors());
+        this.replicationChunkSize = this.settings.getAsInt("action.ingest.replication.chunk_size", 0);
+        this.replicationWindow = Math.max(1, this.settings.getAsInt("action.ingest.replication.window", 2));
     }
 
     @Override
@@ -69,59 +91,78 @@ public class TransportIngestAction extends HandledTransportAction<IngestRequest,
             listener.onFailure(e);
             return;
         }
-        final ConcreteIndices concreteIndices = new ConcreteIndices(clusterState, indexNameExpressionResolver);
-        MetaData metaData = clusterState.metaData();
-        final List<ActionRequest<?>> requests = new LinkedList<>();
-        for (ActionRequest<?> request : ingestRequest.requests()) {
-            String concreteIndex = concreteIndices.resolveIfAbsent((DocumentRequest)request);
-            if (request instanceof IndexRequest) {
-                try {
-                    IndexRequest indexRequest = (IndexRequest) request;
-                    indexRequest.routing(metaData.resolveIndexRouting(indexRequest.routing(), concreteIndex));
-                    indexRequest.index(concreteIndex);
-                    MappingMetaData mappingMd = null;
-                    if (metaData.hasIndex(concreteIndex)) {
-                        mappingMd = metaData.index(concreteIndex).mappingOrDefault(indexRequest.type());
+        // first, resolve, process and route all requests in a single pass, in parallel for large requests
+        Queue<ActionRequest<?>> queue = ingestRequest.requests();
+        final ActionRequest<?>[] requests = queue.toArray(new ActionRequest<?>[queue.size()]);
+        ingestResponse.setNumberOfItems(requests.length);
+        final ShardId[] shardIds = new ShardId[requests.length];
+        final RoutingStage routingStage = new RoutingStage(clusterState, ingestResponse);
+        if (parallelRoutingThreshold > 0 && requests.length >= parallelRoutingThreshold && parallelRouting > 1) {
+            // the ranges are routed on the ingest thread pool and on this thread, the last range done executes
+            int parts = Math.min(parallelRouting, (requests.length + MIN_ROUTING_RANGE - 1) / MIN_ROUTING_RANGE);
+            final int step = (requests.length + parts - 1) / parts;
+            final AtomicInteger pendingParts = new AtomicInteger((requests.length + step - 1) / step);
+            for (int from = step; from < requests.length; from += step) {
+                final int start = from;
+                final int end = Math.min(requests.length, from + step);
+                threadPool.executor(IngestAction.EXECUTOR).execute(new AbstractRunnable() {
+                    @Override
+                    protected void doRun() throws Exception {
+                        routingStage.route(requests, shardIds, start, end);
                     }
-                    indexRequest.process(metaData, mappingMd, allowIdGeneration, concreteIndex);
-                    requests.add(indexRequest);
-                } catch (Throwable e) {
-                    logger.error(e.getMessage(), e);
-                    ingestResponse.addFailure(new IngestActionFailure(-1L, null, ExceptionsHelper.detailedMessage(e)));
-                }
-            } else if (request instanceof DeleteRequest) {
-                DeleteRequest deleteRequest = (DeleteRequest) request;
-                deleteRequest.routing(metaData.resolveIndexRouting(deleteRequest.routing(), concreteIndex));
-                deleteRequest.index(concreteIndex);
-                requests.add(deleteRequest);
-            } else {
-                throw new ElasticsearchException("action request not known: " + request.getClass().getName());
+
+                    @Override
+                    public void onRejection(Throwable t) {
+                        // the pool is busy, route on the calling thread
+                        routingStage.route(requests, shardIds, start, end);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        logger.error(t.getMessage(), t);
+                        for (int i = start; i < end; i++) {
+                            shardIds[i] = null;
+                            ingestResponse.setItemFailed(i, new IngestActionFailure(-1L, null, i, null, t));
+                        }
+                    }
+
+                    @Override
+                    public void onAfter() {
+                        if (pendingParts.decrementAndGet() == 0) {
+                            execute(ingestRequest, ingestResponse, requests, shardIds, startTime, listener);
+                        }
+                    }
+                });
             }
+            routingStage.route(requests, shardIds, 0, Math.min(step, requests.length));
+            if (pendingParts.decrementAndGet() == 0) {
+                execute(ingestRequest, ingestResponse, requests, shardIds, startTime, listener);
+            }
+        } else {
+            routingStage.route(requests, shardIds, 0, requests.length);
+            execute(ingestRequest, ingestResponse, requests, shardIds, startTime, listener);
         }
-        // second, go over all the requests and create a shard request map
+    }
+
+    private void execute(IngestRequest ingestRequest, IngestResponse ingestResponse,
+                         ActionRequest<?>[] requests, ShardId[] shardIds, long startTime,
+                         ActionListener<IngestResponse> listener) {
+        // second, group the routed requests by shard, keeping their order
         Map<ShardId, List<ActionRequest<?>>> requestsByShard = new HashMap<>();
-        for (ActionRequest<?> request : requests) {
-            if (request instanceof IndexRequest) {
-                IndexRequest indexRequest = (IndexRequest) request;
-                String concreteIndex = concreteIndices.getConcreteIndex(indexRequest.index());
-                ShardId shardId = clusterService.operationRouting().indexShards(clusterState, concreteIndex, indexRequest.type(), indexRequest.id(), indexRequest.routing()).shardId();
-                List<ActionRequest<?>> list = requestsByShard.get(shardId);
-                if (list == null) {
-                    list = new LinkedList<>();
-                    requestsByShard.put(shardId, list);
-                }
-                list.add(request);
-            } else if (request instanceof DeleteRequest) {
-                DeleteRequest deleteRequest = (DeleteRequest) request;
-                String concreteIndex = concreteIndices.getConcreteIndex(deleteRequest.index());
-                ShardId shardId = clusterService.operationRouting().indexShards(clusterState, concreteIndex, deleteRequest.type(), deleteRequest.id(), deleteRequest.routing()).shardId();
-                List<ActionRequest<?>> list = requestsByShard.get(shardId);
-                if (list == null) {
-                    list = new LinkedList<>();
-                    requestsByShard.put(shardId, list);
-                }
-                list.add(deleteRequest);
+        Map<ShardId, IntArrayList> positionsByShard = new HashMap<>();
+        for (int i = 0; i < requests.length; i++) {
+            ShardId shardId = shardIds[i];
+            if (shardId == null) {
+                continue;
+            }
+            List<ActionRequest<?>> list = requestsByShard.get(shardId);
+            if (list == null) {
+                list = new ArrayList<>();
+                requestsByShard.put(shardId, list);
+                positionsByShard.put(shardId, new IntArrayList());
             }
+            list.add(requests[i]);
+            positionsByShard.get(shardId).add(i);
         }
         if (requestsByShard.isEmpty()) {
             logger.error("no shards to execute ingest");
@@ -135,99 +176,302 @@ public class TransportIngestAction extends HandledTransportAction<IngestRequest,
         final AtomicInteger successCount = new AtomicInteger(0);
         final AtomicInteger responseCounter = new AtomicInteger(requestsByShard.size());
         for (Map.Entry<ShardId, List<ActionRequest<?>>> entry : requestsByShard.entrySet()) {
-            final ShardId shardId = entry.getKey();
-            final List<ActionRequest<?>> actionRequests = entry.getValue();
+            ShardId shardId = entry.getKey();
+            new ShardPipeline(ingestRequest, ingestResponse, shardId, entry.getValue(),
+                    positionsByShard.get(shardId).toArray(), successCount, responseCounter, startTime, listener).advance();
+        }
+    }
+
+    /**
+     * Executes the actions of one shard on the leader and the replicas. With a chunk size, the actions are sent
+     * to the leader in chunks, and each chunk is forwarded to the replicas as soon as the leader has executed it,
+     * while the leader executes the next chunk. The leader may run ahead of the replicas by the window size.
+     * The chunks are sent to the replicas one at a time, in the order of the leader, because the replica
+     * operations do not check versions, so a document in two chunks must not be written out of order.
+     * The quorum of each chunk is checked by the leader.
+     */
+    private class ShardPipeline {
+
+        private final IngestRequest ingestRequest;
+
+        private final IngestResponse ingestResponse;
+
+        private final ShardId shardId;
+
+        private final List<ActionRequest<?>> actionRequests;
+
+        private final int[] positions;
+
+        private final AtomicInteger successCount;
+
+        private final AtomicInteger responseCounter;
+
+        private final long startTime;
+
+        private final ActionListener<IngestResponse> listener;
+
+        private final int chunkSize;
+
+        private int next;
+
+        private boolean leaderInFlight;
+
+        // chunks executed on the leader but not yet on the replicas, bounded by the window
+        private final LinkedList<List<ActionRequest<?>>> replicaChunks = new LinkedList<>();
+
+        private int replicasInFlight;
+
+        private boolean replicaChunkInFlight;
+
+        private boolean done;
+
+        ShardPipeline(IngestRequest ingestRequest, IngestResponse ingestResponse, ShardId shardId,
+                      List<ActionRequest<?>> actionRequests, int[] positions,
+                      AtomicInteger successCount, AtomicInteger responseCounter, long startTime,
+                      ActionListener<IngestResponse> listener) {
+            this.ingestRequest = ingestRequest;
+            this.ingestResponse = ingestResponse;
+            this.shardId = shardId;
+            this.actionRequests = actionRequests;
+            this.positions = positions;
+            this.successCount = successCount;
+            this.responseCounter = responseCounter;
+            this.startTime = startTime;
+            this.listener = listener;
+            this.chunkSize = replicationChunkSize > 0 ? replicationChunkSize : actionRequests.size();
+        }
+
+        /**
+         * Send the next chunk to the leader if possible, or complete the shard if all chunks are done.
+         */
+        void advance() {
+            int from;
+            int to;
+            synchronized (this) {
+                if (!leaderInFlight && next < actionRequests.size() && replicasInFlight < replicationWindow) {
+                    from = next;
+                    to = Math.min(actionRequests.size(), from + chunkSize);
+                    next = to;
+                    leaderInFlight = true;
+                } else {
+                    if (done || leaderInFlight || replicasInFlight > 0 || next < actionRequests.size()) {
+                        return;
+                    }
+                    done = true;
+                    from = -1;
+                    to = -1;
+                }
+            }
+            if (from < 0) {
+                if (responseCounter.decrementAndGet() == 0) {
+                    ingestResponse.setSuccessSize(successCount.get())
+                            .setTookInMillis(Math.max(1, System.currentTimeMillis() - startTime));
+                    listener.onResponse(ingestResponse);
+                }
+                return;
+            }
+            List<ActionRequest<?>> chunk = from == 0 && to == actionRequests.size() ?
+                    actionRequests : new ArrayList<>(actionRequests.subList(from, to));
+            executeOnLeader(chunk, from);
+        }
+
+        private void executeOnLeader(final List<ActionRequest<?>> chunk, final int offset) {
+            final long t0 = System.currentTimeMillis();
+            final long sizeInBytes = sizeInBytes(chunk);
             final IngestLeaderShardRequest ingestLeaderShardRequest = new IngestLeaderShardRequest()
                     .setIngestId(ingestRequest.ingestId())
                     .setShardId(shardId)
-                    .setActionRequests(actionRequests)
+                    .setActionRequests(chunk)
                     .timeout(ingestRequest.timeout())
                     .requiredConsistency(ingestRequest.requiredConsistency());
             leaderShardIngestAction.execute(ingestLeaderShardRequest, new ActionListener<IngestLeaderShardResponse>() {
                 @Override
                 public void onResponse(IngestLeaderShardResponse ingestLeaderShardResponse) {
-                    long millis = System.currentTimeMillis() - startTime;
-                    ingestResponse.setIngestId(ingestRequest.ingestId());
                     ingestResponse.setLeaderResponse(ingestLeaderShardResponse);
+                    ingestResponse.addShardResult(new IngestShardResult(shardId, chunk.size(),
+                            ingestLeaderShardResponse.getSuccessCount(), sizeInBytes,
+                            ingestLeaderShardResponse.getTookInMillis()));
                     successCount.addAndGet(ingestLeaderShardResponse.getSuccessCount());
+                    long[] versions = ingestLeaderShardResponse.getVersions();
+                    for (int i = 0; i < versions.length && offset + i < positions.length; i++) {
+                        ingestResponse.setItemVersion(positions[offset + i], versions[i]);
+                    }
+                    for (IngestActionFailure failure : ingestLeaderShardResponse.getFailures()) {
+                        int position = failure.position() >= 0 ? offset + failure.position() : -1;
+                        if (position >= 0 && position < positions.length) {
+                            ingestResponse.setItemFailed(positions[position], failure.position(positions[position]));
+                        } else {
+                            ingestResponse.addFailure(failure);
+                        }
+                    }
                     int quorumShards = ingestLeaderShardResponse.getQuorumShards();
                     if (quorumShards < 0) {
                         ingestResponse.addFailure(new IngestActionFailure(ingestRequest.ingestId(), shardId, "quorum not reached for shard " + shardId));
                     } else if (quorumShards > 0) {
-                        responseCounter.incrementAndGet();
-                        final IngestReplicaShardRequest ingestReplicaShardRequest =
-                                new IngestReplicaShardRequest(ingestLeaderShardRequest.getIngestId(),
-                                        ingestLeaderShardRequest.getShardId(),
-                                        ingestLeaderShardRequest.getActionRequests());
-                        ingestReplicaShardRequest.timeout(ingestRequest.timeout());
-                        replicaShardIngestAction.execute(ingestReplicaShardRequest, new ActionListener<TransportReplicaShardIngestAction.ReplicaOperationResponse>() {
-                            @Override
-                            public void onResponse(TransportReplicaShardIngestAction.ReplicaOperationResponse response) {
-                                long millis = Math.max(1, System.currentTimeMillis() - startTime);
-                                ingestResponse.addReplicaResponses(response.responses());
-                                if (responseCounter.decrementAndGet() == 0) {
-                                    ingestResponse.setSuccessSize(successCount.get())
-                                            .setTookInMillis(millis);
-                                    listener.onResponse(ingestResponse);
-                                }
-                            }
-
-                            @Override
-                            public void onFailure(Throwable e) {
-                                long millis = Math.max(1, System.currentTimeMillis() - startTime);
-                                logger.error(e.getMessage(), e);
-                                ingestResponse.addFailure(new IngestActionFailure(ingestRequest.ingestId(), shardId, ExceptionsHelper.detailedMessage(e)));
-                                if (responseCounter.decrementAndGet() == 0) {
-                                    ingestResponse.setSuccessSize(successCount.get())
-                                            .setTookInMillis(millis);
-                                    listener.onResponse(ingestResponse);
-                                }
-                            }
-                        });
+                        synchronized (ShardPipeline.this) {
+                            replicasInFlight++;
+                            replicaChunks.add(ingestLeaderShardRequest.getActionRequests());
+                        }
+                        nextReplicaChunk();
                     }
-                    if (responseCounter.decrementAndGet() == 0) {
-                        ingestResponse.setSuccessSize(successCount.get()).setTookInMillis(millis);
-                        listener.onResponse(ingestResponse);
+                    synchronized (ShardPipeline.this) {
+                        leaderInFlight = false;
                     }
+                    advance();
                 }
 
                 @Override
                 public void onFailure(Throwable e) {
-                    long millis = System.currentTimeMillis() - startTime;
                     logger.error(e.getMessage(), e);
-                    ingestResponse.addFailure(new IngestActionFailure(-1L, shardId, ExceptionsHelper.detailedMessage(e)));
-                    if (responseCounter.decrementAndGet() == 0) {
-                        ingestResponse.setSuccessSize(successCount.get()).setTookInMillis(millis);
-                        listener.onResponse(ingestResponse);
+                    // the leader is not available, give up the remaining chunks of the shard
+                    int end;
+                    synchronized (ShardPipeline.this) {
+                        end = actionRequests.size();
+                        next = end;
+                        leaderInFlight = false;
                     }
+                    ingestResponse.addFailure(new IngestActionFailure(-1L, shardId, -1, null, e)
+                            .positions(Arrays.copyOfRange(positions, offset, end)));
+                    ingestResponse.addShardResult(new IngestShardResult(shardId, end - offset, 0,
+                            sizeInBytes(actionRequests.subList(offset, end)), System.currentTimeMillis() - t0));
+                    for (int i = offset; i < end; i++) {
+                        ingestResponse.setItemFailed(positions[i], null);
+                    }
+                    advance();
                 }
+            });
+        }
 
+        private long sizeInBytes(List<ActionRequest<?>> chunk) {
+            long sizeInBytes = 0L;
+            for (ActionRequest<?> actionRequest : chunk) {
+                if (actionRequest instanceof IndexRequest) {
+                    BytesReference source = ((IndexRequest) actionRequest).source();
+                    if (source != null) {
+                        sizeInBytes += source.length();
+                    }
+                }
+            }
+            return sizeInBytes;
+        }
+
+        private void nextReplicaChunk() {
+            List<ActionRequest<?>> chunk;
+            synchronized (this) {
+                if (replicaChunkInFlight || replicaChunks.isEmpty()) {
+                    return;
+                }
+                chunk = replicaChunks.removeFirst();
+                replicaChunkInFlight = true;
+            }
+            executeOnReplicas(chunk);
+        }
+
+        private void executeOnReplicas(List<ActionRequest<?>> chunk) {
+            IngestReplicaShardRequest ingestReplicaShardRequest =
+                    new IngestReplicaShardRequest(ingestRequest.ingestId(), shardId, chunk);
+            ingestReplicaShardRequest.timeout(ingestRequest.timeout());
+            replicaShardIngestAction.execute(ingestReplicaShardRequest, new ActionListener<TransportReplicaShardIngestAction.ReplicaOperationResponse>() {
+                @Override
+                public void onResponse(TransportReplicaShardIngestAction.ReplicaOperationResponse response) {
+                    ingestResponse.addReplicaResponses(response.responses());
+                    onReplicaDone();
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    logger.error(e.getMessage(), e);
+                    ingestResponse.addFailure(new IngestActionFailure(ingestRequest.ingestId(), shardId, ExceptionsHelper.detailedMessage(e)));
+                    onReplicaDone();
+                }
             });
         }
+
+        private void onReplicaDone() {
+            synchronized (this) {
+                replicasInFlight--;
+                replicaChunkInFlight = false;
+            }
+            nextReplicaChunk();
+            advance();
+        }
     }
 
-    private static class ConcreteIndices  {
-        private final ClusterState state;
-        private final IndexNameExpressionResolver indexNameExpressionResolver;
-        private final Map<String, String> indices = new HashMap<>();
+    /**
+     * Resolves the concrete index, processes and routes requests against one cluster state.
+     * Concrete indices and mappings are cached per ingest request, so a range of requests
+     * may be routed by several threads at once.
+     */
+    private class RoutingStage {
+
+        private final ClusterState clusterState;
 
-        ConcreteIndices(ClusterState state, IndexNameExpressionResolver indexNameExpressionResolver) {
-            this.state = state;
-            this.indexNameExpressionResolver = indexNameExpressionResolver;
+        private final MetaData metaData;
+
+        private final IngestResponse ingestResponse;
+
+        private final Map<String, String> concreteIndices = new ConcurrentHashMap<>();
+
+        private final Map<String, MappingMetaData> mappings = new ConcurrentHashMap<>();
+
+        RoutingStage(ClusterState clusterState, IngestResponse ingestResponse) {
+            this.clusterState = clusterState;
+            this.metaData = clusterState.metaData();
+            this.ingestResponse = ingestResponse;
         }
 
-        String getConcreteIndex(String indexOrAlias) {
-            return indices.get(indexOrAlias);
+        void route(ActionRequest<?>[] requests, ShardId[] shardIds, int from, int to) {
+            for (int i = from; i < to; i++) {
+                ActionRequest<?> request = requests[i];
+                try {
+                    if (request instanceof IndexRequest) {
+                        IndexRequest indexRequest = (IndexRequest) request;
+                        String concreteIndex = concreteIndex(indexRequest);
+                        indexRequest.routing(metaData.resolveIndexRouting(indexRequest.routing(), concreteIndex));
+                        indexRequest.index(concreteIndex);
+                        indexRequest.process(metaData, mapping(concreteIndex, indexRequest.type()), allowIdGeneration, concreteIndex);
+                        shardIds[i] = clusterService.operationRouting().indexShards(clusterState, concreteIndex,
+                                indexRequest.type(), indexRequest.id(), indexRequest.routing()).shardId();
+                    } else if (request instanceof DeleteRequest) {
+                        DeleteRequest deleteRequest = (DeleteRequest) request;
+                        String concreteIndex = concreteIndex(deleteRequest);
+                        deleteRequest.routing(metaData.resolveIndexRouting(deleteRequest.routing(), concreteIndex));
+                        deleteRequest.index(concreteIndex);
+                        shardIds[i] = clusterService.operationRouting().indexShards(clusterState, concreteIndex,
+                                deleteRequest.type(), deleteRequest.id(), deleteRequest.routing()).shardId();
+                    } else {
+                        throw new ElasticsearchException("action request not known: " + request.getClass().getName());
+                    }
+                } catch (Throwable e) {
+                    logger.error(e.getMessage(), e);
+                    String id = request instanceof DocumentRequest ? ((DocumentRequest<?>) request).id() : null;
+                    ingestResponse.setItemFailed(i, new IngestActionFailure(-1L, null, i, id, e));
+                }
+            }
         }
 
-        String resolveIfAbsent(DocumentRequest<?> request) {
-            String concreteIndex = indices.get(request.index());
+        private String concreteIndex(DocumentRequest<?> request) {
+            String concreteIndex = concreteIndices.get(request.index());
             if (concreteIndex == null) {
-                concreteIndex = indexNameExpressionResolver.concreteSingleIndex(state, request);
-                indices.put(request.index(), concreteIndex);
+                concreteIndex = indexNameExpressionResolver.concreteSingleIndex(clusterState, request);
+                concreteIndices.put(request.index(), concreteIndex);
             }
             return concreteIndex;
         }
-    }
 
+        private MappingMetaData mapping(String concreteIndex, String type) {
+            if (!metaData.hasIndex(concreteIndex)) {
+                return null;
+            }
+            String key = concreteIndex + '/' + type;
+            MappingMetaData mappingMetaData = mappings.get(key);
+            if (mappingMetaData == null) {
+                mappingMetaData = metaData.index(concreteIndex).mappingOrDefault(type);
+                if (mappingMetaData != null) {
+                    mappings.put(key, mappingMetaData);
+                }
+            }
+            return mappingMetaData;
+        }
+    }
 }
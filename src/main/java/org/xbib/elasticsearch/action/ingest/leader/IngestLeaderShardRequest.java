@@ -14,7 +14,7 @@ import org.elasticsearch.index.shard.ShardId;
 import org.xbib.elasticsearch.action.ingest.Consistency;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.elasticsearch.action.ValidateActions.addValidationError;
@@ -33,7 +33,7 @@ public class IngestLeaderShardRequest extends ActionRequest<IngestLeaderShardReq
 
     private ShardId shardId;
 
-    private List<ActionRequest<?>> actionRequests = new LinkedList<ActionRequest<?>>();
+    private List<ActionRequest<?>> actionRequests = new ArrayList<>();
 
     public IngestLeaderShardRequest() {
     }
@@ -160,7 +160,7 @@ public class IngestLeaderShardRequest extends ActionRequest<IngestLeaderShardReq
         ingestId = in.readLong();
         shardId = ShardId.readShardId(in);
         int size = in.readVInt();
-        actionRequests = new LinkedList<ActionRequest<?>>();
+        actionRequests = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
             boolean exists = in.readBoolean();
             if (exists) {
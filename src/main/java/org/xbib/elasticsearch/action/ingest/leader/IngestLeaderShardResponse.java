@@ -11,6 +11,7 @@ import org.elasticsearch.index.shard.ShardId;
 import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -27,10 +28,12 @@ public class IngestLeaderShardResponse extends ActionResponse {
 
     private long tookInMillis;
 
-    private List<ActionRequest<?>> actionRequests = new LinkedList<ActionRequest<?>>();
+    private List<ActionRequest<?>> actionRequests = new ArrayList<>();
 
     private List<IngestActionFailure> failures = Collections.synchronizedList(new LinkedList<IngestActionFailure>());
 
+    private long[] versions = new long[0];
+
     public IngestLeaderShardResponse() {
         super();
     }
@@ -98,6 +101,18 @@ public class IngestLeaderShardResponse extends ActionResponse {
         return this;
     }
 
+    /**
+     * @return the versions of the actions by position in the shard request, 0 for failed actions
+     */
+    public long[] getVersions() {
+        return versions;
+    }
+
+    public IngestLeaderShardResponse setVersions(long[] versions) {
+        this.versions = versions;
+        return this;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
@@ -108,8 +123,8 @@ public class IngestLeaderShardResponse extends ActionResponse {
         }
         successCount = in.readVInt();
         quorumShards = in.readVInt();
-        actionRequests = new LinkedList<>();
         int size = in.readVInt();
+        actionRequests = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
             boolean exists = in.readBoolean();
             if (exists) {
@@ -127,11 +142,15 @@ public class IngestLeaderShardResponse extends ActionResponse {
                 actionRequests.add(null);
             }
         }
-        failures = new LinkedList<>();
         size = in.readVInt();
+        failures = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
             failures.add(IngestActionFailure.from(in));
         }
+        versions = new long[in.readVInt()];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = in.readVLong();
+        }
     }
 
     @Override
@@ -167,6 +186,10 @@ public class IngestLeaderShardResponse extends ActionResponse {
         for (IngestActionFailure f : failures) {
             f.writeTo(out);
         }
+        out.writeVInt(versions.length);
+        for (long version : versions) {
+            out.writeVLong(Math.max(version, 0L));
+        }
     }
 
     public String toString() {
@@ -1,9 +1,9 @@
 package org.xbib.elasticsearch.action.ingest.leader;
 
 import org.elasticsearch.ElasticsearchException;
-import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.DocumentRequest;
 import org.elasticsearch.action.UnavailableShardsException;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
@@ -29,10 +29,11 @@ import org.elasticsearch.common.logging.ESLoggerFactory;
 import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
-import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.mapper.SourceToParse;
 import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.node.NodeClosedException;
 import org.elasticsearch.rest.RestStatus;
@@ -49,8 +50,11 @@ import org.xbib.elasticsearch.action.ingest.IngestAction;
 import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class TransportLeaderShardIngestAction
@@ -63,6 +67,7 @@ public class TransportLeaderShardIngestAction
     private final ClusterService clusterService;
     private final IndicesService indicesService;
     private final TransportRequestOptions transportOptions;
+    private volatile QuorumTable quorumTable;
 
     @Inject
     public TransportLeaderShardIngestAction(Settings settings, TransportService transportService, ClusterService clusterService,
@@ -77,11 +82,11 @@ public class TransportLeaderShardIngestAction
         this.transportOptions = transportOptions();
         this.executor = executor();
         transportService.registerRequestHandler(transportAction, IngestLeaderShardRequest.class,
-                ThreadPool.Names.SAME, new LeaderOperationTransportHandler());
+                executor, new LeaderOperationTransportHandler());
     }
 
     protected String executor() {
-        return ThreadPool.Names.BULK;
+        return IngestAction.EXECUTOR;
     }
 
     protected TransportRequestOptions transportOptions() {
@@ -115,95 +120,41 @@ public class TransportLeaderShardIngestAction
     protected IngestLeaderShardResponse shardOperationOnLeader(ClusterState clusterState, int replicaLevel, LeaderOperationRequest shardRequest) {
         final long t0 = shardRequest.startTime();
         final IngestLeaderShardRequest request = shardRequest.request();
-        int successCount = 0;
-        List<IngestActionFailure> failures = new LinkedList<>();
-        int size = request.getActionRequests().size();
-        long[] versions = new long[size];
-        IndexService indexService = indicesService.indexServiceSafe(request.index());
-        for (int i = 0; i < size; i++) {
-            ActionRequest<?> actionRequest = request.getActionRequests().get(i);
-            if (actionRequest instanceof IndexRequest) {
-                try {
-                    IndexRequest indexRequest = (IndexRequest) actionRequest;
-                    long version = indexOperationOnLeader(indexRequest, request);
-                    versions[i] = indexRequest.version();
-                    indexRequest.version(indexRequest.version() == Versions.MATCH_ANY ? Versions.MATCH_ANY : version);
-                    successCount++;
-                } catch (Throwable e) {
-                    if (retryLeaderException(e)) {
-                        for (int j = 0; j < i; j++) {
-                            ((IndexRequest) request.getActionRequests().get(j)).version(versions[j]);
-                        }
-                        logger.error(e.getMessage(), e);
-                        throw new ElasticsearchException(e.getMessage(), e);
-                    }
-                    logger.error("[{}][{}] failed to execute ingest (index) {}", e, request.index(), shardRequest.shardId(), actionRequest);
-                    failures.add(new IngestActionFailure(request.getIngestId(), request.getShardId(), ExceptionsHelper.detailedMessage(e)));
-                    request.getActionRequests().set(i, null);
-                }
-            } else if (actionRequest instanceof DeleteRequest) {
-                try {
-                    IndexShard indexShard = indexService.shardSafe(shardRequest.shardId());
-                    DeleteRequest deleteRequest = (DeleteRequest) actionRequest;
-                    Engine.Delete delete = indexShard.prepareDeleteOnPrimary(deleteRequest.type(), deleteRequest.id(), deleteRequest.version(), deleteRequest.versionType());
-                    indexShard.delete(delete);
-                    deleteRequest.version(deleteRequest.version() == Versions.MATCH_ANY ? Versions.MATCH_ANY : delete.version());
-                    successCount++;
-                } catch (Throwable e) {
-                    if (retryLeaderException(e)) {
-                        for (int j = 0; j < i; j++) {
-                            ((DeleteRequest) request.getActionRequests().get(j)).version(versions[j]);
-                        }
-                        logger.error(e.getMessage(), e);
-                        throw new ElasticsearchException(e.getMessage(), e);
-                    }
-                    logger.error("[{}][{}] failed to execute ingest (delete) {}", e, request.index(), shardRequest.shardId(), actionRequest);
-                    failures.add(new IngestActionFailure(request.getIngestId(), request.getShardId(), ExceptionsHelper.detailedMessage(e)));
-                    request.getActionRequests().set(i, null);
-                }
-            }
-        }
-        int quorumShards = findQuorum(clusterState, shards(clusterState, request), request);
+        IndexShard indexShard = indicesService.indexServiceSafe(request.index()).shardSafe(shardRequest.shardId());
+        LeaderShardBatch batch = new LeaderShardBatch(indexShard, request);
+        batch.execute();
+        syncTranslog(indexShard, batch.location);
+        request.setActionRequests(Arrays.asList(batch.actions));
+        int quorumShards = findQuorum(clusterState, request);
         return new IngestLeaderShardResponse()
                 .setTookInMillis(System.currentTimeMillis() - t0)
                 .setIngestId(request.getIngestId())
                 .setShardId(request.getShardId())
-                .setSuccessCount(successCount)
+                .setSuccessCount(batch.successCount)
                 .setQuorumShards(quorumShards)
                 .setActionRequests(request.getActionRequests())
-                .setFailures(failures);
+                .setFailures(batch.failures)
+                .setVersions(batch.resultVersions);
     }
 
-    private long indexOperationOnLeader(IndexRequest indexRequest,
-                                        IngestLeaderShardRequest request) {
-        SourceToParse sourceToParse = SourceToParse.source(SourceToParse.Origin.PRIMARY, indexRequest.source())
-                .type(indexRequest.type())
-                .id(indexRequest.id())
-                .routing(indexRequest.routing())
-                .parent(indexRequest.parent())
-                .timestamp(indexRequest.timestamp())
-                .ttl(indexRequest.ttl());
-        IndexShard indexShard = indicesService.indexServiceSafe(request.index()).shardSafe(request.getShardId().id());
-        if (indexRequest.opType() == IndexRequest.OpType.INDEX) {
-            Engine.Index index = indexShard.prepareIndexOnPrimary(sourceToParse,
-                    indexRequest.version(),
-                    indexRequest.versionType(),
-                    false);
-            indexShard.index(index);
-            return index.version();
-        } else if (indexRequest.opType() == IndexRequest.OpType.CREATE) {
-            Engine.Create create = indexShard.prepareCreateOnPrimary(sourceToParse,
-                    indexRequest.version(),
-                    indexRequest.versionType(),
-                    false,
-                    indexRequest.autoGeneratedId());
-            indexShard.create(create);
-            return create.version();
-        } else {
-            logger.error("unknown op type " + indexRequest.opType());
-            return 0;
+    /**
+     * Sync the translog once for the whole shard batch, up to the last location written,
+     * if the index requires durability per request. This replaces a sync per document.
+     *
+     * @param indexShard the index shard
+     * @param location the highest translog location of the batch, or null if nothing was written
+     */
+    public static void syncTranslog(IndexShard indexShard, Translog.Location location) {
+        if (location != null && indexShard.getTranslogDurability() == Translog.Durabilty.REQUEST) {
+            indexShard.sync(location);
         }
+    }
 
+    public static Translog.Location locationToSync(Translog.Location current, Translog.Location next) {
+        if (next == null) {
+            return current;
+        }
+        return current == null || next.compareTo(current) > 0 ? next : current;
     }
 
     @Override
@@ -215,27 +166,60 @@ public class TransportLeaderShardIngestAction
         return TransportActions.isShardNotAvailableException(e);
     }
 
+    public int findQuorum(ClusterState clusterState, IngestLeaderShardRequest request) {
+        return findQuorum(clusterState, null, request);
+    }
+
+    /**
+     * Find the number of shard copies required for the consistency of the request. The result is cached per
+     * cluster state and shard for all consistency levels, so it is computed only once per cluster state change.
+     *
+     * @param clusterState the cluster state
+     * @param shardIt the shard iterator of the request, or null if it should be resolved from the cluster state
+     * @param request the request
+     * @return the quorum, 0 if the quorum need not be checked, or -1 if the quorum is not reached
+     */
     public int findQuorum(ClusterState clusterState, ShardIterator shardIt, IngestLeaderShardRequest request) {
         if (request.requiredConsistency() == Consistency.IGNORE) {
             return 0;
         }
-        int numberOfDataNodes = 0;
-        for (DiscoveryNode node : clusterState.getNodes()) {
-            if (node.isDataNode()) {
-                numberOfDataNodes++;
-            }
+        QuorumTable table = quorumTable;
+        if (table == null || !table.isFor(clusterState)) {
+            table = new QuorumTable(clusterState);
+            quorumTable = table;
         }
+        int[] quorums = table.quorums.get(request.getShardId());
+        if (quorums == null) {
+            quorums = computeQuorums(clusterState, table.numberOfDataNodes,
+                    shardIt != null ? shardIt : shards(clusterState, request), request);
+            table.quorums.putIfAbsent(request.getShardId(), quorums);
+        }
+        return quorums[request.requiredConsistency().ordinal()];
+    }
+
+    private int[] computeQuorums(ClusterState clusterState, int numberOfDataNodes, ShardIterator shardIt,
+                                 IngestLeaderShardRequest request) {
+        int[] quorums = new int[Consistency.values().length];
         // single node, do not care about replica
         if (numberOfDataNodes == 1) {
-            return 0;
+            return quorums;
         }
         int replicaLevelOfIndex = clusterState.metaData().index(request.index()).getNumberOfReplicas();
         // no replica defined, so nothing to check
         if (replicaLevelOfIndex == 0) {
-            return 0;
+            return quorums;
         }
         int replicaLevel = findReplicaLevel(shardIt) + 1;
-        switch (request.requiredConsistency()) {
+        for (Consistency consistency : Consistency.values()) {
+            quorums[consistency.ordinal()] = findQuorum(consistency, replicaLevelOfIndex, replicaLevel);
+        }
+        return quorums;
+    }
+
+    private static int findQuorum(Consistency consistency, int replicaLevelOfIndex, int replicaLevel) {
+        switch (consistency) {
+            case IGNORE:
+                return 0;
             case ONE:
                 if (replicaLevel >= 1 && replicaLevelOfIndex >= 1) {
                     return 1;
@@ -504,6 +488,144 @@ public class TransportLeaderShardIngestAction
         }
     }
 
+    /**
+     * The quorums of the shards for one cluster state, indexed by consistency.
+     */
+    private static class QuorumTable {
+
+        private final long version;
+
+        private final String stateUUID;
+
+        private final int numberOfDataNodes;
+
+        private final ConcurrentMap<ShardId, int[]> quorums = new ConcurrentHashMap<>();
+
+        QuorumTable(ClusterState clusterState) {
+            this.version = clusterState.version();
+            this.stateUUID = clusterState.stateUUID();
+            this.numberOfDataNodes = clusterState.nodes().dataNodes().size();
+        }
+
+        boolean isFor(ClusterState clusterState) {
+            return version == clusterState.version() && stateUUID.equals(clusterState.stateUUID());
+        }
+    }
+
+    /**
+     * Executes the actions of a leader shard request against a shard which is resolved once per batch.
+     * The actions are copied into an array, so positional access and clearing of failed actions is constant time,
+     * whatever list implementation the request was deserialized into.
+     */
+    private class LeaderShardBatch {
+
+        private final IndexShard indexShard;
+
+        private final IngestLeaderShardRequest request;
+
+        private final ActionRequest<?>[] actions;
+
+        private final long[] versions;
+
+        private final long[] resultVersions;
+
+        private final List<IngestActionFailure> failures;
+
+        private int successCount;
+
+        private Translog.Location location;
+
+        LeaderShardBatch(IndexShard indexShard, IngestLeaderShardRequest request) {
+            this.indexShard = indexShard;
+            this.request = request;
+            List<ActionRequest<?>> list = request.getActionRequests();
+            this.actions = list.toArray(new ActionRequest<?>[list.size()]);
+            this.versions = new long[actions.length];
+            this.resultVersions = new long[actions.length];
+            this.failures = new ArrayList<>();
+        }
+
+        void execute() {
+            for (int i = 0; i < actions.length; i++) {
+                ActionRequest<?> actionRequest = actions[i];
+                try {
+                    if (actionRequest instanceof IndexRequest) {
+                        IndexRequest indexRequest = (IndexRequest) actionRequest;
+                        versions[i] = indexRequest.version();
+                        Engine.IndexingOperation operation = index(indexRequest);
+                        if (operation != null) {
+                            resultVersions[i] = operation.version();
+                            indexRequest.version(versions[i] == Versions.MATCH_ANY ? Versions.MATCH_ANY : operation.version());
+                            location = locationToSync(location, operation.getTranslogLocation());
+                        }
+                        successCount++;
+                    } else if (actionRequest instanceof DeleteRequest) {
+                        DeleteRequest deleteRequest = (DeleteRequest) actionRequest;
+                        versions[i] = deleteRequest.version();
+                        Engine.Delete delete = indexShard.prepareDeleteOnPrimary(deleteRequest.type(), deleteRequest.id(),
+                                deleteRequest.version(), deleteRequest.versionType());
+                        indexShard.delete(delete);
+                        resultVersions[i] = delete.version();
+                        deleteRequest.version(versions[i] == Versions.MATCH_ANY ? Versions.MATCH_ANY : delete.version());
+                        location = locationToSync(location, delete.getTranslogLocation());
+                        successCount++;
+                    }
+                } catch (Throwable e) {
+                    if (retryLeaderException(e)) {
+                        restoreVersions(i);
+                        logger.error(e.getMessage(), e);
+                        throw new ElasticsearchException(e.getMessage(), e);
+                    }
+                    logger.error("[{}][{}] failed to execute ingest ({}) {}", e, request.index(), request.getShardId().id(),
+                            actionRequest instanceof DeleteRequest ? "delete" : "index", actionRequest);
+                    failures.add(new IngestActionFailure(request.getIngestId(), request.getShardId(), i,
+                            ((DocumentRequest<?>) actionRequest).id(), e));
+                    actions[i] = null;
+                }
+            }
+        }
+
+        private Engine.IndexingOperation index(IndexRequest indexRequest) {
+            SourceToParse sourceToParse = SourceToParse.source(SourceToParse.Origin.PRIMARY, indexRequest.source())
+                    .type(indexRequest.type())
+                    .id(indexRequest.id())
+                    .routing(indexRequest.routing())
+                    .parent(indexRequest.parent())
+                    .timestamp(indexRequest.timestamp())
+                    .ttl(indexRequest.ttl());
+            if (indexRequest.opType() == IndexRequest.OpType.INDEX) {
+                Engine.Index index = indexShard.prepareIndexOnPrimary(sourceToParse,
+                        indexRequest.version(),
+                        indexRequest.versionType(),
+                        false);
+                indexShard.index(index);
+                return index;
+            } else if (indexRequest.opType() == IndexRequest.OpType.CREATE) {
+                Engine.Create create = indexShard.prepareCreateOnPrimary(sourceToParse,
+                        indexRequest.version(),
+                        indexRequest.versionType(),
+                        false,
+                        indexRequest.autoGeneratedId());
+                indexShard.create(create);
+                return create;
+            } else {
+                logger.error("unknown op type " + indexRequest.opType());
+                return null;
+            }
+        }
+
+        private void restoreVersions(int end) {
+            for (int j = 0; j < end; j++) {
+                ActionRequest<?> actionRequest = actions[j];
+                if (actionRequest instanceof IndexRequest) {
+                    ((IndexRequest) actionRequest).version(versions[j]);
+                } else if (actionRequest instanceof DeleteRequest) {
+                    ((DeleteRequest) actionRequest).version(versions[j]);
+                }
+            }
+        }
+    }
+
     protected class LeaderOperationRequest implements Streamable {
 
         private long startTime;
@@ -548,6 +670,8 @@ public class TransportLeaderShardIngestAction
 
         @Override
         public void messageReceived(final IngestLeaderShardRequest request, final TransportChannel channel) throws Exception {
+            // already running on the ingest executor, no need to fork again for a local leader shard
+            request.operationThreaded(false);
             execute(request, new ActionListener<IngestLeaderShardResponse>() {
                 @Override
                 public void onResponse(IngestLeaderShardResponse result) {
@@ -12,7 +12,7 @@ import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.shard.ShardId;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -32,7 +32,7 @@ public class IngestReplicaShardRequest extends ActionRequest<IngestReplicaShardR
 
     private ShardId shardId;
 
-    private List<ActionRequest<?>> actionRequests = new LinkedList<>();
+    private List<ActionRequest<?>> actionRequests = new ArrayList<>();
 
     public IngestReplicaShardRequest() {
     }
@@ -136,7 +136,7 @@ public class IngestReplicaShardRequest extends ActionRequest<IngestReplicaShardR
         ingestId = in.readLong();
         shardId = ShardId.readShardId(in);
         int size = in.readVInt();
-        actionRequests = new LinkedList<>();
+        actionRequests = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
             boolean exists = in.readBoolean();
             if (exists) {
@@ -36,6 +36,7 @@ import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.elasticsearch.index.mapper.SourceToParse;
 import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.node.NodeClosedException;
 import org.elasticsearch.threadpool.ThreadPool;
@@ -47,6 +48,7 @@ import org.elasticsearch.transport.TransportRequestOptions;
 import org.elasticsearch.transport.TransportService;
 import org.xbib.elasticsearch.action.ingest.IngestAction;
 import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
+import org.xbib.elasticsearch.action.ingest.leader.TransportLeaderShardIngestAction;
 
 import java.io.IOException;
 import java.util.LinkedList;
@@ -86,11 +88,11 @@ public class TransportReplicaShardIngestAction
         this.transportOptions = transportOptions();
         this.executor = executor();
         transportService.registerRequestHandler(transportAction, ReplicaOperationRequest.class,
-                ThreadPool.Names.SAME, new ReplicaOperationTransportHandler());
+                executor, new ReplicaOperationTransportHandler());
     }
 
     protected String executor() {
-        return ThreadPool.Names.BULK;
+        return IngestAction.EXECUTOR;
     }
 
     protected TransportRequestOptions transportOptions() {
@@ -128,6 +130,7 @@ public class TransportReplicaShardIngestAction
         int successCount = 0;
         List<IngestActionFailure> failure = new LinkedList<>();
         int size = request.actionRequests().size();
+        Translog.Location location = null;
         for (int i = 0; i < size; i++) {
             ActionRequest<?> actionRequest = request.actionRequests().get(i);
             if (actionRequest == null) {
@@ -136,7 +139,8 @@ public class TransportReplicaShardIngestAction
             if (actionRequest instanceof IndexRequest) {
                 IndexRequest indexRequest = (IndexRequest) actionRequest;
                 try {
-                    indexOperationOnReplica(indexShard, indexRequest);
+                    Engine.IndexingOperation operation = indexOperationOnReplica(indexShard, indexRequest);
+                    location = TransportLeaderShardIngestAction.locationToSync(location, operation.getTranslogLocation());
                     successCount++;
                 } catch (Throwable e) {
                     failure.add(new IngestActionFailure(request.ingestId(), request.shardId(), ExceptionsHelper.detailedMessage(e)));
@@ -149,17 +153,19 @@ public class TransportReplicaShardIngestAction
                             deleteRequest.version(),
                             deleteRequest.versionType());
                     indexShard.delete(delete);
+                    location = TransportLeaderShardIngestAction.locationToSync(location, delete.getTranslogLocation());
                     successCount++;
                 } catch (Throwable e) {
                     failure.add(new IngestActionFailure(request.ingestId(), request.shardId(), ExceptionsHelper.detailedMessage(e)));
                 }
             }
         }
+        TransportLeaderShardIngestAction.syncTranslog(indexShard, location);
         return new IngestReplicaShardResponse(request.ingestId(), request.shardId(), shardRequest.replicaId(),
                 successCount, System.currentTimeMillis() - t0, failure);
     }
 
-    private void indexOperationOnReplica(IndexShard indexShard, IndexRequest indexRequest) {
+    private Engine.IndexingOperation indexOperationOnReplica(IndexShard indexShard, IndexRequest indexRequest) {
         SourceToParse sourceToParse = SourceToParse.source(SourceToParse.Origin.REPLICA, indexRequest.source())
                 .type(indexRequest.type())
                 .id(indexRequest.id())
@@ -173,6 +179,7 @@ public class TransportReplicaShardIngestAction
                     indexRequest.versionType(),
                     false);
             indexShard.index(index);
+            return index;
         } else {
             Engine.Create create = indexShard.prepareCreateOnReplica(sourceToParse,
                     indexRequest.version(),
@@ -180,6 +187,7 @@ public class TransportReplicaShardIngestAction
                     false,
                     indexRequest.autoGeneratedId());
             indexShard.create(create);
+            return create;
         }
     }
 
@@ -2,24 +2,20 @@ package org.xbib.elasticsearch.common.metrics;
 
 import com.twitter.jsr166e.LongAdder;
 import org.xbib.metrics.Count;
-
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.zip.CRC32;
+import org.xbib.metrics.KeyedChecksum;
 
 public class ElasticsearchCounterMetric implements Count {
 
     private final LongAdder count;
 
-    private final Map<String,CRC32> checksumIn;
+    private final KeyedChecksum checksumIn;
 
-    private final Map<String,CRC32> checksumOut;
+    private final KeyedChecksum checksumOut;
 
     ElasticsearchCounterMetric() {
         this.count = new LongAdder();
-        this.checksumIn = new HashMap<>();
-        this.checksumOut = new HashMap<>();
+        this.checksumIn = new KeyedChecksum();
+        this.checksumOut = new KeyedChecksum();
     }
 
     @Override
@@ -34,14 +30,7 @@ public class ElasticsearchCounterMetric implements Count {
 
     @Override
     public void inc(String index, String type, String id) {
-        CRC32 crc32 = checksumIn.get(index + "/" + type);
-        if (crc32 == null) {
-            crc32 = new CRC32();
-            checksumIn.put(index + "/" + type, crc32);
-        }
-        if (id != null) {
-            crc32.update(id.getBytes(StandardCharsets.UTF_8));
-        }
+        checksumIn.update(index, type, id);
     }
 
     @Override
@@ -56,14 +45,7 @@ public class ElasticsearchCounterMetric implements Count {
 
     @Override
     public void dec(String index, String type, String id) {
-        CRC32 crc32 = checksumOut.get(index + "/" + type);
-        if (crc32 == null) {
-            crc32 = new CRC32();
-            checksumOut.put(index + "/" + type, crc32);
-        }
-        if (id != null) {
-            crc32.update(id.getBytes(StandardCharsets.UTF_8));
-        }
+        checksumOut.update(index, type, id);
     }
 
     @Override
@@ -73,13 +55,11 @@ public class ElasticsearchCounterMetric implements Count {
 
     @Override
     public String getIncChecksum(String index, String type) {
-        return Long.toHexString(checksumIn.containsKey(index + "/" + type) ?
-                checksumIn.get(index + "/" + type).getValue() : 0L);
+        return Long.toHexString(checksumIn.getValue(index, type));
     }
 
     @Override
     public String getDecChecksum(String index, String type) {
-        return Long.toHexString(checksumOut.containsKey(index + "/" + type) ?
-                checksumOut.get(index + "/" + type).getValue() : 0L);
+        return Long.toHexString(checksumOut.getValue(index, type));
     }
 }
@@ -1,7 +1,9 @@
 package org.xbib.elasticsearch.common.metrics;
 
 import org.xbib.elasticsearch.helper.client.IngestMetric;
+import org.xbib.elasticsearch.helper.client.TaggedIngestMetric;
 import org.xbib.metrics.Count;
+import org.xbib.metrics.Gauge;
 import org.xbib.metrics.Metered;
 
 import java.util.HashMap;
@@ -21,6 +23,12 @@ public class ElasticsearchIngestMetric implements IngestMetric {
     private final Count submitted = new ElasticsearchCounterMetric();
     private final Count succeeded = new ElasticsearchCounterMetric();
     private final Count failed = new ElasticsearchCounterMetric();
+    private final Count retried = new ElasticsearchCounterMetric();
+    private final Count retriesExhausted = new ElasticsearchCounterMetric();
+    private final TaggedIngestMetric tagged = new TaggedIngestMetric();
+    private volatile int maxActionsPerRequest;
+    private volatile long maxVolumePerRequest;
+    private volatile Gauge<Integer> concurrencyLimit;
     private Long started;
     private Long stopped;
 
@@ -59,6 +67,49 @@ public class ElasticsearchIngestMetric implements IngestMetric {
         return failed;
     }
 
+    @Override
+    public Count getRetried() {
+        return retried;
+    }
+
+    @Override
+    public Count getRetriesExhausted() {
+        return retriesExhausted;
+    }
+
+    @Override
+    public TaggedIngestMetric getTagged() {
+        return tagged;
+    }
+
+    @Override
+    public ElasticsearchIngestMetric setBatchSize(int maxActionsPerRequest, long maxVolumePerRequest) {
+        this.maxActionsPerRequest = maxActionsPerRequest;
+        this.maxVolumePerRequest = maxVolumePerRequest;
+        return this;
+    }
+
+    @Override
+    public int getMaxActionsPerRequest() {
+        return maxActionsPerRequest;
+    }
+
+    @Override
+    public long getMaxVolumePerRequest() {
+        return maxVolumePerRequest;
+    }
+
+    @Override
+    public ElasticsearchIngestMetric setConcurrencyLimit(Gauge<Integer> concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+        return this;
+    }
+
+    @Override
+    public Gauge<Integer> getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
     @Override
     public ElasticsearchIngestMetric start() {
         this.started = System.nanoTime();
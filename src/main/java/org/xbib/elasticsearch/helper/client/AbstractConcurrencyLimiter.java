@@ -0,0 +1,166 @@
+package org.xbib.elasticsearch.helper.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Base class for concurrency limiters. Subclasses compute a new limit from each sample.
+ */
+public abstract class AbstractConcurrencyLimiter implements ConcurrencyLimiter {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition permitAvailable = lock.newCondition();
+
+    private final Condition idle = lock.newCondition();
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private volatile int limit;
+
+    private volatile int inFlight;
+
+    protected AbstractConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    /**
+     * Compute the new limit after a response. Permits are not tied to requests, so the number of requests in
+     * flight is the one at the arrival of the response, and it includes the request of the response.
+     *
+     * @param limit the current limit
+     * @param inFlight the number of requests in flight when the response arrived, including this request
+     * @param rttNanos the round trip time in nanoseconds
+     * @param dropped true if the cluster signaled overload
+     * @return the new limit
+     */
+    protected abstract int update(int limit, int inFlight, long rttNanos, boolean dropped);
+
+    @Override
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= limit) {
+                permitAvailable.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= limit) {
+                if (nanos <= 0L) {
+                    return false;
+                }
+                nanos = permitAvailable.awaitNanos(nanos);
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight >= limit) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void release(long rttNanos, boolean dropped) {
+        lock.lock();
+        try {
+            int newLimit = update(limit, inFlight, rttNanos, dropped);
+            limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+            doRelease();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void release() {
+        lock.lock();
+        try {
+            doRelease();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void doRelease() {
+        if (inFlight > 0) {
+            inFlight--;
+        }
+        if (inFlight == 0) {
+            idle.signalAll();
+        }
+        // the limit may have grown by more than one
+        permitAvailable.signalAll();
+    }
+
+    protected int getMinLimit() {
+        return minLimit;
+    }
+
+    protected int getMaxLimit() {
+        return maxLimit;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public Integer getValue() {
+        return limit;
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    @Override
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (inFlight > 0) {
+                if (nanos <= 0L) {
+                    return false;
+                }
+                nanos = idle.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[limit=" + limit + ",inFlight=" + inFlight + "]";
+    }
+}
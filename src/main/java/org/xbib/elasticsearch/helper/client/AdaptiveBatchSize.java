@@ -0,0 +1,160 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.unit.TimeValue;
+
+/**
+ * Controls the number of actions and the volume per request at runtime.
+ *
+ * The controller aims for a target latency band. If requests take longer than the upper bound of the band,
+ * or the ratio of failed actions is too high, the batch size is decreased. If requests are faster than the lower
+ * bound, the batch size is increased. Between the bounds, the batch size is kept.
+ * The current decision is reported to an {@link IngestMetric}, if set.
+ */
+public class AdaptiveBatchSize {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(AdaptiveBatchSize.class.getName());
+
+    private final static double INCREASE = 1.25d;
+
+    private final static double DECREASE = 0.75d;
+
+    private final static double BACKOFF = 0.5d;
+
+    private int minActions;
+
+    private int maxActions;
+
+    private long minVolume;
+
+    private long maxVolume;
+
+    private long lowLatency = 250L;
+
+    private long highLatency = 1000L;
+
+    private double maxFailureRate = 0.01d;
+
+    private IngestMetric metric;
+
+    private volatile int actions;
+
+    private volatile long volume;
+
+    /**
+     * Create a controller which starts with the given number of actions and volume per request.
+     * By default, the values may range from a tenth to ten times the start values.
+     *
+     * @param actions the number of actions per request to start with
+     * @param volume the volume per request in bytes to start with
+     */
+    public AdaptiveBatchSize(int actions, long volume) {
+        this.actions = actions;
+        this.volume = volume;
+        this.minActions = Math.max(actions / 10, 1);
+        this.maxActions = actions > Integer.MAX_VALUE / 10 ? Integer.MAX_VALUE : actions * 10;
+        this.minVolume = Math.max(volume / 10, 1024L);
+        this.maxVolume = volume > Long.MAX_VALUE / 10 ? Long.MAX_VALUE : volume * 10;
+    }
+
+    public AdaptiveBatchSize actionsRange(int minActions, int maxActions) {
+        this.minActions = Math.max(minActions, 1);
+        this.maxActions = Math.max(maxActions, this.minActions);
+        this.actions = bound(actions, this.minActions, this.maxActions);
+        return this;
+    }
+
+    public AdaptiveBatchSize volumeRange(long minVolume, long maxVolume) {
+        this.minVolume = Math.max(minVolume, 1L);
+        this.maxVolume = Math.max(maxVolume, this.minVolume);
+        this.volume = bound(volume, this.minVolume, this.maxVolume);
+        return this;
+    }
+
+    /**
+     * Set the target latency band for requests.
+     *
+     * @param low requests faster than this let the batch size grow
+     * @param high requests slower than this let the batch size shrink
+     * @return this controller
+     */
+    public AdaptiveBatchSize targetLatency(TimeValue low, TimeValue high) {
+        this.lowLatency = low.millis();
+        this.highLatency = Math.max(high.millis(), lowLatency);
+        return this;
+    }
+
+    public AdaptiveBatchSize maxFailureRate(double maxFailureRate) {
+        this.maxFailureRate = maxFailureRate;
+        return this;
+    }
+
+    public AdaptiveBatchSize metric(IngestMetric metric) {
+        this.metric = metric;
+        if (metric != null) {
+            metric.setBatchSize(actions, volume);
+        }
+        return this;
+    }
+
+    public int getActions() {
+        return actions;
+    }
+
+    public long getVolume() {
+        return volume;
+    }
+
+    /**
+     * Adjust the batch size after a response.
+     *
+     * @param numberOfActions the number of actions in the request
+     * @param tookInMillis the time the request took
+     * @param failures the number of failed actions
+     */
+    public synchronized void onResponse(int numberOfActions, long tookInMillis, int failures) {
+        if (numberOfActions <= 0) {
+            return;
+        }
+        if (failures > 0 && (double) failures / numberOfActions > maxFailureRate) {
+            resize(BACKOFF);
+        } else if (tookInMillis > highLatency) {
+            resize(DECREASE);
+        } else if (tookInMillis < lowLatency && numberOfActions >= actions / 2) {
+            // only grow if the request was filled, flushed small requests are always fast
+            resize(INCREASE);
+        }
+    }
+
+    /**
+     * Adjust the batch size after a request failed as a whole.
+     */
+    public synchronized void onFailure() {
+        resize(BACKOFF);
+    }
+
+    private void resize(double factor) {
+        int n = (int) Math.min(actions * factor, Integer.MAX_VALUE);
+        int newActions = bound(factor > 1.0d && n == actions ? n + 1 : n, minActions, maxActions);
+        long newVolume = bound((long) Math.min(volume * factor, Long.MAX_VALUE), minVolume, maxVolume);
+        if (newActions == actions && newVolume == volume) {
+            return;
+        }
+        logger.debug("batch size changed from [actions={}] [bytes={}] to [actions={}] [bytes={}]",
+                actions, volume, newActions, newVolume);
+        this.actions = newActions;
+        this.volume = newVolume;
+        if (metric != null) {
+            metric.setBatchSize(newActions, newVolume);
+        }
+    }
+
+    private static int bound(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static long bound(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
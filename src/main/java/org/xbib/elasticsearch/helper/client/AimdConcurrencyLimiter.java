@@ -0,0 +1,42 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.common.unit.TimeValue;
+
+/**
+ * A concurrency limiter with additive increase and multiplicative decrease.
+ *
+ * The limit grows by one for each response that arrives while at least half of the limit is in flight, and
+ * shrinks by a backoff ratio if the cluster rejects executions or a response takes longer than a timeout.
+ */
+public class AimdConcurrencyLimiter extends AbstractConcurrencyLimiter {
+
+    private double backoffRatio = 0.9d;
+
+    private long timeoutNanos = TimeValue.timeValueSeconds(5).nanos();
+
+    public AimdConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        super(initialLimit, minLimit, maxLimit);
+    }
+
+    public AimdConcurrencyLimiter backoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+        return this;
+    }
+
+    public AimdConcurrencyLimiter timeout(TimeValue timeout) {
+        this.timeoutNanos = timeout.nanos();
+        return this;
+    }
+
+    @Override
+    protected int update(int limit, int inFlight, long rttNanos, boolean dropped) {
+        if (dropped || rttNanos > timeoutNanos) {
+            return Math.min(limit - 1, (int) (limit * backoffRatio));
+        }
+        // do not grow if the limit is not used at the arrival of the response
+        if (inFlight * 2 >= limit) {
+            return limit + 1;
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,129 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.NoShardAvailableActionException;
+import org.elasticsearch.action.UnavailableShardsException;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.support.TransportActions;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
+import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
+import org.xbib.elasticsearch.action.ingest.IngestResponse;
+
+/**
+ * Classification of bulk failures.
+ */
+public class BulkFailures {
+
+    private final static String REJECTED = EsRejectedExecutionException.class.getSimpleName();
+
+    private final static String UNAVAILABLE_SHARDS = UnavailableShardsException.class.getSimpleName();
+
+    private final static String NO_SHARD_AVAILABLE = NoShardAvailableActionException.class.getSimpleName();
+
+    private BulkFailures() {
+    }
+
+    /**
+     * Check if a throwable signals that the cluster rejected the execution because of overload.
+     *
+     * @param t the throwable
+     * @return true if the execution was rejected
+     */
+    public static boolean isRejected(Throwable t) {
+        if (t == null) {
+            return false;
+        }
+        Throwable cause = ExceptionsHelper.unwrapCause(t);
+        return cause instanceof EsRejectedExecutionException || ExceptionsHelper.status(cause) == RestStatus.TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * Check if a bulk item failed because the cluster rejected the execution.
+     *
+     * @param itemResponse the bulk item response
+     * @return true if the execution was rejected
+     */
+    public static boolean isRejected(BulkItemResponse itemResponse) {
+        if (!itemResponse.isFailed()) {
+            return false;
+        }
+        BulkItemResponse.Failure failure = itemResponse.getFailure();
+        return failure.getStatus() == RestStatus.TOO_MANY_REQUESTS || isRejected(failure.getCause())
+                || (failure.getMessage() != null && failure.getMessage().contains(REJECTED));
+    }
+
+    /**
+     * Check if any bulk item failed because the cluster rejected the execution.
+     *
+     * @param response the bulk response
+     * @return true if an execution was rejected
+     */
+    public static boolean hasRejections(BulkResponse response) {
+        if (!response.hasFailures()) {
+            return false;
+        }
+        for (BulkItemResponse itemResponse : response.getItems()) {
+            if (isRejected(itemResponse)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if a bulk item failed for a reason that may go away if the item is sent again,
+     * i.e. a rejected execution or an unavailable shard.
+     *
+     * @param itemResponse the bulk item response
+     * @return true if the item may be retried
+     */
+    public static boolean isRetryable(BulkItemResponse itemResponse) {
+        if (!itemResponse.isFailed()) {
+            return false;
+        }
+        if (isRejected(itemResponse)) {
+            return true;
+        }
+        BulkItemResponse.Failure failure = itemResponse.getFailure();
+        if (failure.getCause() != null
+                && TransportActions.isShardNotAvailableException(ExceptionsHelper.unwrapCause(failure.getCause()))) {
+            return true;
+        }
+        String message = failure.getMessage();
+        return message != null && (message.contains(UNAVAILABLE_SHARDS) || message.contains(NO_SHARD_AVAILABLE));
+    }
+
+    /**
+     * Check if an ingest action failed for a reason that may go away if the action is sent again,
+     * i.e. a rejected execution or an unavailable shard.
+     *
+     * @param failure the ingest action failure
+     * @return true if the action may be retried
+     */
+    public static boolean isRetryable(IngestActionFailure failure) {
+        String type = failure.type();
+        if (type != null) {
+            return REJECTED.equals(type) || UNAVAILABLE_SHARDS.equals(type) || NO_SHARD_AVAILABLE.equals(type);
+        }
+        String message = failure.message();
+        return message != null && (message.contains(REJECTED) || message.contains(UNAVAILABLE_SHARDS)
+                || message.contains(NO_SHARD_AVAILABLE));
+    }
+
+    /**
+     * Check if any shard of an ingest response failed because the cluster rejected the execution.
+     *
+     * @param response the ingest response
+     * @return true if an execution was rejected
+     */
+    public static boolean hasRejections(IngestResponse response) {
+        for (IngestActionFailure failure : response.getFailures()) {
+            if (failure.message() != null && failure.message().contains(REJECTED)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -25,7 +25,6 @@ import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequestBuilder;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingAction;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequestBuilder;
 import org.elasticsearch.action.bulk.BulkItemResponse;
-import org.elasticsearch.action.bulk.BulkProcessor;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
@@ -67,6 +66,8 @@ public class BulkNodeClient extends BaseClient implements Ingest {
 
     private BulkProcessor bulkProcessor;
 
+    private BulkRetryPolicy retryPolicy;
+
     private IngestMetric metric;
 
     private Throwable throwable;
@@ -100,6 +101,16 @@ public class BulkNodeClient extends BaseClient implements Ingest {
         return this;
     }
 
+    /**
+     * Set the policy for retrying rejected bulk items.
+     * @param retryPolicy the retry policy, or null for no retries
+     * @return this client
+     */
+    public BulkNodeClient retryPolicy(BulkRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
     @Override
     public BulkNodeClient init(ElasticsearchClient client, final IngestMetric metric) {
         this.client = client;
@@ -133,6 +144,7 @@ public class BulkNodeClient extends BaseClient implements Ingest {
                     metric.getCurrentIngest().dec();
                     l = metric.getCurrentIngest().getCount();
                     metric.getSucceeded().inc(response.getItems().length);
+                    metric.getTagged().record(request, response);
                 }
                 int n = 0;
                 for (BulkItemResponse itemResponse : response.getItems()) {
@@ -180,6 +192,9 @@ public class BulkNodeClient extends BaseClient implements Ingest {
         if (maxVolume != null) {
             builder.setBulkSize(maxVolume);
         }
+        if (retryPolicy != null) {
+            builder.setRetryPolicy(retryPolicy.metric(metric));
+        }
         this.bulkProcessor = builder.build();
         this.closed = false;
         return this;
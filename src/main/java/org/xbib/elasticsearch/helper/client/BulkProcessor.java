@@ -2,11 +2,14 @@ package org.xbib.elasticsearch.helper.client;
 
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionWriteResponse;
 import org.elasticsearch.action.bulk.BulkAction;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
@@ -17,12 +20,16 @@ import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.common.util.concurrent.FutureUtils;
 
 import java.io.Closeable;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A bulk processor is a thread safe bulk processing class, allowing to easily set when to "flush" a new bulk request
@@ -76,6 +83,10 @@ public class BulkProcessor implements Closeable {
         private int bulkActions = 1000;
         private ByteSizeValue bulkSize = new ByteSizeValue(5, ByteSizeUnit.MB);
         private TimeValue flushInterval = null;
+        private int stripes = 0;
+        private AdaptiveBatchSize adaptiveBatchSize = null;
+        private ConcurrencyLimiter concurrencyLimiter = null;
+        private BulkRetryPolicy retryPolicy = null;
 
         /**
          * Creates a builder of bulk processor with the client to use and the listener that will be used
@@ -144,12 +155,61 @@ public class BulkProcessor implements Closeable {
             return this;
         }
 
+        /**
+         * Sets the number of stripes for accumulating actions. With stripes, each adding thread appends to the
+         * buffer of its own stripe, and the stripes are merged into a single bulk request only when a limit is
+         * reached or on flush. This avoids serializing many producer threads on a single lock. The number is rounded
+         * up to a power of two. A value of <tt>0</tt> or <tt>1</tt> disables striping. Defaults to <tt>0</tt>.
+         * @param stripes the number of stripes
+         * @return this builder
+         */
+        public Builder setStripes(int stripes) {
+            this.stripes = stripes;
+            return this;
+        }
+
+        /**
+         * Sets a controller for adapting the number of actions and the size of bulk requests at runtime.
+         * The controller overrides the values of {@link #setBulkActions(int)} and
+         * {@link #setBulkSize(ByteSizeValue)}, except for a limit set to <tt>-1</tt>. Defaults to not set.
+         * @param adaptiveBatchSize the controller
+         * @return this builder
+         */
+        public Builder setAdaptiveBatchSize(AdaptiveBatchSize adaptiveBatchSize) {
+            this.adaptiveBatchSize = adaptiveBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets a limiter for the concurrent requests, overriding {@link #setConcurrentRequests(int)}.
+         * Defaults to a fixed limit of the number of concurrent requests.
+         * @param concurrencyLimiter the concurrency limiter
+         * @return this builder
+         */
+        public Builder setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+            this.concurrencyLimiter = concurrencyLimiter;
+            return this;
+        }
+
+        /**
+         * Sets a policy for retrying failed items which may succeed if sent again, such as items rejected by
+         * a full bulk queue. The listener receives a single response per bulk request with the final outcome of
+         * each item. Defaults to not set, i.e. failed items are not retried.
+         * @param retryPolicy the retry policy
+         * @return this builder
+         */
+        public Builder setRetryPolicy(BulkRetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
         /**
          * Builds a new bulk processor.
          * @return a bulk processor
          */
         public BulkProcessor build() {
-            return new BulkProcessor(client, listener, name, concurrentRequests, bulkActions, bulkSize, flushInterval);
+            return new BulkProcessor(client, listener, name, concurrentRequests, bulkActions, bulkSize, flushInterval,
+                    stripes, adaptiveBatchSize, concurrencyLimiter, retryPolicy);
         }
     }
 
@@ -162,25 +222,61 @@ public class BulkProcessor implements Closeable {
 
     private final int bulkActions;
     private final long bulkSize;
+    private final AdaptiveBatchSize adaptiveBatchSize;
 
     private final ScheduledThreadPoolExecutor scheduler;
     private final ScheduledFuture scheduledFuture;
 
+    private final BulkRetryPolicy retryPolicy;
+    private final ScheduledThreadPoolExecutor retryScheduler;
+
     private final AtomicLong executionIdGen = new AtomicLong();
 
     private BulkRequest bulkRequest;
     private final BulkRequestHandler bulkRequestHandler;
 
+    private final Stripe[] stripes;
+    private final AtomicInteger stripedActions = new AtomicInteger();
+    private final AtomicLong stripedBytes = new AtomicLong();
+    private final ReentrantLock drainLock = new ReentrantLock();
+
     private volatile boolean closed = false;
 
-    BulkProcessor(Client client, Listener listener, @Nullable String name, int concurrentRequests, int bulkActions, ByteSizeValue bulkSize, @Nullable TimeValue flushInterval) {
+    BulkProcessor(Client client, Listener listener, @Nullable String name, int concurrentRequests, int bulkActions,
+                  ByteSizeValue bulkSize, @Nullable TimeValue flushInterval, int stripes,
+                  @Nullable AdaptiveBatchSize adaptiveBatchSize, @Nullable ConcurrencyLimiter concurrencyLimiter,
+                  @Nullable BulkRetryPolicy retryPolicy) {
         this.bulkActions = bulkActions;
         this.bulkSize = bulkSize.bytes();
+        this.adaptiveBatchSize = adaptiveBatchSize;
+        if (adaptiveBatchSize != null) {
+            listener = new AdaptiveListener(listener, adaptiveBatchSize);
+        }
 
         this.bulkRequest = new BulkRequest();
-        this.bulkRequestHandler = concurrentRequests == 0 ?
-                new SyncBulkRequestHandler(client, listener) :
-                new AsyncBulkRequestHandler(client, listener, concurrentRequests);
+        if (stripes > 1) {
+            int n = Integer.highestOneBit(stripes - 1) << 1;
+            this.stripes = new Stripe[n];
+            for (int i = 0; i < n; i++) {
+                this.stripes[i] = new Stripe();
+            }
+        } else {
+            this.stripes = null;
+        }
+        this.retryPolicy = retryPolicy;
+        if (retryPolicy != null) {
+            this.retryScheduler = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(1, EsExecutors.daemonThreadFactory(client.settings(), (name != null ? "[" + name + "]" : "") + "bulk_processor_retry"));
+        } else {
+            this.retryScheduler = null;
+        }
+        if (concurrencyLimiter != null) {
+            this.bulkRequestHandler = new AsyncBulkRequestHandler(client, listener, concurrencyLimiter);
+        } else if (concurrentRequests == 0) {
+            this.bulkRequestHandler = new SyncBulkRequestHandler(client, listener);
+        } else {
+            this.bulkRequestHandler = new AsyncBulkRequestHandler(client, listener,
+                    new FixedConcurrencyLimiter(concurrentRequests));
+        }
 
         if (flushInterval != null) {
             this.scheduler = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(1, EsExecutors.daemonThreadFactory(client.settings(), (name != null ? "[" + name + "]" : "") + "bulk_processor"));
@@ -226,10 +322,17 @@ public class BulkProcessor implements Closeable {
             FutureUtils.cancel(this.scheduledFuture);
             this.scheduler.shutdown();
         }
-        if (bulkRequest.numberOfActions() > 0) {
+        if (stripes != null) {
+            drain(true);
+        } else if (bulkRequest.numberOfActions() > 0) {
             execute();
         }
-        return this.bulkRequestHandler.awaitClose(timeout, unit);
+        boolean b = this.bulkRequestHandler.awaitClose(timeout, unit);
+        if (retryScheduler != null) {
+            // scheduled retries are still executed
+            retryScheduler.shutdown();
+        }
+        return b;
     }
 
     /**
@@ -267,7 +370,11 @@ public class BulkProcessor implements Closeable {
      * @return his bulk processor
      */
     public BulkProcessor add(ActionRequest request, @Nullable Object payload) {
-        internalAdd(request, payload);
+        if (stripes != null) {
+            stripedAdd(request, payload);
+        } else {
+            internalAdd(request, payload);
+        }
         return this;
     }
 
@@ -287,10 +394,114 @@ public class BulkProcessor implements Closeable {
         return add(data, defaultIndex, defaultType, null);
     }
 
-    public synchronized BulkProcessor add(BytesReference data, @Nullable String defaultIndex, @Nullable String defaultType, @Nullable Object payload) throws Exception {
+    public BulkProcessor add(BytesReference data, @Nullable String defaultIndex, @Nullable String defaultType, @Nullable Object payload) throws Exception {
+        if (stripes != null) {
+            stripedAdd(data, defaultIndex, defaultType, payload);
+        } else {
+            internalAdd(data, defaultIndex, defaultType, payload);
+        }
+        return this;
+    }
+
+    private synchronized void internalAdd(BytesReference data, @Nullable String defaultIndex, @Nullable String defaultType, @Nullable Object payload) throws Exception {
         bulkRequest.add(data, defaultIndex, defaultType, null, null, payload, true);
         executeIfNeeded();
-        return this;
+    }
+
+    private void stripedAdd(ActionRequest request, @Nullable Object payload) {
+        Stripe stripe = stripe();
+        int actions;
+        long bytes;
+        synchronized (stripe) {
+            // checked under the stripe lock, so the final drain at close sees every added action
+            ensureOpen();
+            BulkRequest stripeRequest = stripe.bulkRequest;
+            actions = stripeRequest.numberOfActions();
+            bytes = stripeRequest.estimatedSizeInBytes();
+            stripeRequest.add(request, payload);
+            actions = stripeRequest.numberOfActions() - actions;
+            bytes = stripeRequest.estimatedSizeInBytes() - bytes;
+        }
+        drainIfNeeded(stripedActions.addAndGet(actions), stripedBytes.addAndGet(bytes));
+    }
+
+    private void stripedAdd(BytesReference data, @Nullable String defaultIndex, @Nullable String defaultType, @Nullable Object payload) throws Exception {
+        Stripe stripe = stripe();
+        int actions;
+        long bytes;
+        synchronized (stripe) {
+            ensureOpen();
+            BulkRequest stripeRequest = stripe.bulkRequest;
+            actions = stripeRequest.numberOfActions();
+            bytes = stripeRequest.estimatedSizeInBytes();
+            try {
+                stripeRequest.add(data, defaultIndex, defaultType, null, null, payload, true);
+            } finally {
+                // a parse failure may leave some actions of the data in the stripe, count them anyway
+                actions = stripeRequest.numberOfActions() - actions;
+                bytes = stripeRequest.estimatedSizeInBytes() - bytes;
+                stripedActions.addAndGet(actions);
+                stripedBytes.addAndGet(bytes);
+            }
+        }
+        drainIfNeeded(stripedActions.get(), stripedBytes.get());
+    }
+
+    private Stripe stripe() {
+        return stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+    }
+
+    private void drainIfNeeded(int actions, long bytes) {
+        if (!isOverTheLimit(actions, bytes)) {
+            return;
+        }
+        // producers crossing the limit wait here, this gives the same back pressure as the synchronized add
+        drainLock.lock();
+        try {
+            if (isOverTheLimit(stripedActions.get(), stripedBytes.get())) {
+                drain(false);
+            }
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Merge the buffers of all stripes into a single bulk request and execute it.
+     * The stripe locks are only held for swapping the buffers, the bulk request is
+     * executed outside of any stripe lock.
+     * @param force true if stripes should be drained even if the processor is closed
+     */
+    private void drain(boolean force) {
+        drainLock.lock();
+        try {
+            if (closed && !force) {
+                return;
+            }
+            BulkRequest merged = new BulkRequest();
+            for (Stripe stripe : stripes) {
+                BulkRequest stripeRequest;
+                synchronized (stripe) {
+                    stripeRequest = stripe.bulkRequest;
+                    if (stripeRequest.numberOfActions() == 0) {
+                        continue;
+                    }
+                    stripe.bulkRequest = new BulkRequest();
+                }
+                stripedActions.addAndGet(-stripeRequest.numberOfActions());
+                stripedBytes.addAndGet(-stripeRequest.estimatedSizeInBytes());
+                List<ActionRequest> requests = stripeRequest.requests();
+                List<Object> payloads = stripeRequest.payloads();
+                for (int i = 0; i < requests.size(); i++) {
+                    merged.add(requests.get(i), payloads != null ? payloads.get(i) : null);
+                }
+            }
+            if (merged.numberOfActions() > 0) {
+                bulkRequestHandler.execute(merged, executionIdGen.incrementAndGet());
+            }
+        } finally {
+            drainLock.unlock();
+        }
     }
 
     private void executeIfNeeded() {
@@ -310,16 +521,30 @@ public class BulkProcessor implements Closeable {
     }
 
     private boolean isOverTheLimit() {
-        return bulkActions != -1 && bulkRequest.numberOfActions() >= bulkActions || bulkSize != -1 && bulkRequest.estimatedSizeInBytes() >= bulkSize;
+        return isOverTheLimit(bulkRequest.numberOfActions(), bulkRequest.estimatedSizeInBytes());
+    }
+
+    private boolean isOverTheLimit(int actions, long bytes) {
+        if (adaptiveBatchSize != null) {
+            return bulkActions != -1 && actions >= adaptiveBatchSize.getActions() ||
+                    bulkSize != -1 && bytes >= adaptiveBatchSize.getVolume();
+        }
+        return bulkActions != -1 && actions >= bulkActions || bulkSize != -1 && bytes >= bulkSize;
     }
 
     /**
      * Flush pending delete or index requests.
      */
-    public synchronized void flush() {
+    public void flush() {
         ensureOpen();
-        if (bulkRequest.numberOfActions() > 0) {
-            execute();
+        if (stripes != null) {
+            drain(false);
+            return;
+        }
+        synchronized (this) {
+            if (bulkRequest.numberOfActions() > 0) {
+                execute();
+            }
         }
     }
 
@@ -327,6 +552,12 @@ public class BulkProcessor implements Closeable {
 
         @Override
         public void run() {
+            if (stripes != null) {
+                if (stripedActions.get() > 0) {
+                    drain(false);
+                }
+                return;
+            }
             synchronized (BulkProcessor.this) {
                 if (closed) {
                     return;
@@ -339,6 +570,213 @@ public class BulkProcessor implements Closeable {
         }
     }
 
+    /**
+     * Feeds the outcome of bulk requests into the adaptive batch size controller.
+     */
+    static class AdaptiveListener implements Listener {
+
+        private final Listener listener;
+
+        private final AdaptiveBatchSize adaptiveBatchSize;
+
+        AdaptiveListener(Listener listener, AdaptiveBatchSize adaptiveBatchSize) {
+            this.listener = listener;
+            this.adaptiveBatchSize = adaptiveBatchSize;
+        }
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            listener.beforeBulk(executionId, request);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            int failures = 0;
+            for (BulkItemResponse itemResponse : response.getItems()) {
+                if (itemResponse.isFailed()) {
+                    failures++;
+                }
+            }
+            adaptiveBatchSize.onResponse(request.numberOfActions(), response.getTookInMillis(), failures);
+            listener.afterBulk(executionId, request, response);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            adaptiveBatchSize.onFailure();
+            listener.afterBulk(executionId, request, failure);
+        }
+    }
+
+    /**
+     * A stripe holds the actions added by the threads mapped to it.
+     */
+    static class Stripe {
+        BulkRequest bulkRequest = new BulkRequest();
+    }
+
+    /**
+     * Executes a bulk request. With a retry policy, the retryable failed items are sent again after a backoff,
+     * and the responses are merged into a single response, so the listener sees the final outcome of each item.
+     * The permit for the request is kept while retrying, so retries go ahead of new bulk requests.
+     */
+    class BulkExecution implements ActionListener<BulkResponse> {
+
+        private final Client client;
+
+        private final BulkRequest bulkRequest;
+
+        private ActionListener<BulkResponse> listener;
+
+        private BulkItemResponse[] items;
+
+        private BulkRequest current;
+
+        private int[] positions;
+
+        private int retry;
+
+        private long tookInMillis;
+
+        private long startNanos;
+
+        private volatile long rttNanos = -1L;
+
+        private volatile boolean rejected;
+
+        BulkExecution(Client client, BulkRequest bulkRequest) {
+            this.client = client;
+            this.bulkRequest = bulkRequest;
+        }
+
+        void execute(ActionListener<BulkResponse> listener) {
+            this.listener = listener;
+            if (retryPolicy != null) {
+                retryPolicy.onSubmit(bulkRequest.numberOfActions());
+            }
+            send(bulkRequest, null);
+        }
+
+        /**
+         * @return the round trip time of the first attempt
+         */
+        long getRttNanos() {
+            return rttNanos;
+        }
+
+        /**
+         * @return true if the cluster rejected the execution of any item
+         */
+        boolean isRejected() {
+            return rejected;
+        }
+
+        private void send(BulkRequest request, int[] positions) {
+            this.current = request;
+            this.positions = positions;
+            this.startNanos = System.nanoTime();
+            client.execute(BulkAction.INSTANCE, request, this);
+        }
+
+        @Override
+        public void onResponse(BulkResponse response) {
+            if (rttNanos < 0L) {
+                rttNanos = System.nanoTime() - startNanos;
+            }
+            tookInMillis += response.getTookInMillis();
+            BulkItemResponse[] responseItems = response.getItems();
+            if (items == null) {
+                items = responseItems;
+            } else {
+                for (int i = 0; i < responseItems.length; i++) {
+                    items[positions[i]] = withItemId(positions[i], responseItems[i]);
+                }
+            }
+            if (!response.hasFailures()) {
+                finish();
+                return;
+            }
+            List<ActionRequest> requests = bulkRequest.requests();
+            List<Object> payloads = bulkRequest.payloads();
+            BulkRequest retryRequest = null;
+            int[] retryPositions = null;
+            int n = 0;
+            for (int i = 0; i < responseItems.length; i++) {
+                BulkItemResponse itemResponse = responseItems[i];
+                if (BulkFailures.isRejected(itemResponse)) {
+                    rejected = true;
+                }
+                if (retryPolicy != null && BulkFailures.isRetryable(itemResponse) && retryPolicy.tryRetry(retry + 1, 1)) {
+                    if (retryRequest == null) {
+                        retryRequest = new BulkRequest();
+                        retryPositions = new int[responseItems.length];
+                    }
+                    int pos = positions != null ? positions[i] : i;
+                    retryRequest.add(requests.get(pos), payloads != null ? payloads.get(pos) : null);
+                    retryPositions[n++] = pos;
+                }
+            }
+            if (retryRequest == null) {
+                finish();
+            } else {
+                schedule(retryRequest, Arrays.copyOf(retryPositions, n));
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            if (rttNanos < 0L) {
+                rttNanos = System.nanoTime() - startNanos;
+            }
+            if (BulkFailures.isRejected(e)) {
+                rejected = true;
+                if (retryPolicy != null && retryPolicy.tryRetry(retry + 1, current.numberOfActions())) {
+                    schedule(current, positions);
+                    return;
+                }
+            }
+            if (items == null) {
+                listener.onFailure(e);
+            } else {
+                // the items of the failed retry keep the failures of the former attempt
+                finish();
+            }
+        }
+
+        private void schedule(final BulkRequest request, final int[] positions) {
+            retry++;
+            try {
+                retryScheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            send(request, positions);
+                        } catch (Throwable t) {
+                            onFailure(t);
+                        }
+                    }
+                }, retryPolicy.delayMillis(retry), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // processor is closed
+                if (items == null) {
+                    listener.onFailure(e);
+                } else {
+                    finish();
+                }
+            }
+        }
+
+        private void finish() {
+            listener.onResponse(new BulkResponse(items, tookInMillis));
+        }
+
+        private BulkItemResponse withItemId(int itemId, BulkItemResponse itemResponse) {
+            return itemResponse.isFailed() ?
+                    new BulkItemResponse(itemId, itemResponse.getOpType(), itemResponse.getFailure()) :
+                    new BulkItemResponse(itemId, itemResponse.getOpType(), itemResponse.<ActionWriteResponse>getResponse());
+        }
+    }
+
     /**
      * Abstracts the low-level details of bulk request handling
      */
@@ -363,7 +801,9 @@ public class BulkProcessor implements Closeable {
             boolean afterCalled = false;
             try {
                 listener.beforeBulk(executionId, bulkRequest);
-                BulkResponse bulkResponse = client.execute(BulkAction.INSTANCE, bulkRequest).actionGet();
+                PlainActionFuture<BulkResponse> future = PlainActionFuture.newFuture();
+                new BulkExecution(client, bulkRequest).execute(future);
+                BulkResponse bulkResponse = future.actionGet();
                 afterCalled = true;
                 listener.afterBulk(executionId, bulkRequest, bulkResponse);
             } catch (Throwable t) {
@@ -381,14 +821,12 @@ public class BulkProcessor implements Closeable {
     class AsyncBulkRequestHandler extends BulkRequestHandler {
         private final Client client;
         private final BulkProcessor.Listener listener;
-        private final Semaphore semaphore;
-        private final int concurrentRequests;
+        private final ConcurrencyLimiter concurrencyLimiter;
 
-        private AsyncBulkRequestHandler(Client client, BulkProcessor.Listener listener, int concurrentRequests) {
+        private AsyncBulkRequestHandler(Client client, BulkProcessor.Listener listener, ConcurrencyLimiter concurrencyLimiter) {
             this.client = client;
             this.listener = listener;
-            this.concurrentRequests = concurrentRequests;
-            this.semaphore = new Semaphore(concurrentRequests);
+            this.concurrencyLimiter = concurrencyLimiter;
         }
 
         @Override
@@ -397,15 +835,16 @@ public class BulkProcessor implements Closeable {
             boolean acquired = false;
             try {
                 listener.beforeBulk(executionId, bulkRequest);
-                semaphore.acquire();
+                concurrencyLimiter.acquire();
                 acquired = true;
-                client.execute(BulkAction.INSTANCE, bulkRequest, new ActionListener<BulkResponse>() {
+                final BulkExecution execution = new BulkExecution(client, bulkRequest);
+                execution.execute(new ActionListener<BulkResponse>() {
                     @Override
                     public void onResponse(BulkResponse response) {
                         try {
                             listener.afterBulk(executionId, bulkRequest, response);
                         } finally {
-                            semaphore.release();
+                            concurrencyLimiter.release(execution.getRttNanos(), execution.isRejected());
                         }
                     }
 
@@ -414,7 +853,7 @@ public class BulkProcessor implements Closeable {
                         try {
                             listener.afterBulk(executionId, bulkRequest, e);
                         } finally {
-                            semaphore.release();
+                            concurrencyLimiter.release(execution.getRttNanos(), execution.isRejected());
                         }
                     }
                 });
@@ -425,19 +864,15 @@ public class BulkProcessor implements Closeable {
             } catch (Throwable t) {
                 listener.afterBulk(executionId, bulkRequest, t);
             } finally {
-                if (!bulkRequestSetupSuccessful && acquired) {  // if we fail on client.bulk() release the semaphore
-                    semaphore.release();
+                if (!bulkRequestSetupSuccessful && acquired) {  // if we fail on client.bulk() release the permit
+                    concurrencyLimiter.release();
                 }
             }
         }
 
         @Override
         public boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
-            if (semaphore.tryAcquire(this.concurrentRequests, timeout, unit)) {
-                semaphore.release(this.concurrentRequests);
-                return true;
-            }
-            return false;
+            return concurrencyLimiter.awaitIdle(timeout, unit);
         }
     }
 }
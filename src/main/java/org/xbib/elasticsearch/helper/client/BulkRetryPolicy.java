@@ -0,0 +1,129 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A policy for retrying failed bulk items.
+ *
+ * Retries are delayed by an exponential backoff with jitter. A retry budget limits the number of retried items
+ * relative to the number of submitted items, so a permanently overloaded cluster is not flooded with retries.
+ * Retried and abandoned items are counted in an {@link IngestMetric}, if set.
+ */
+public class BulkRetryPolicy {
+
+    private final static long TOKEN = 1000L;
+
+    private final int maxRetries;
+
+    private final long initialDelay;
+
+    private long maxDelay = TimeValue.timeValueSeconds(5).millis();
+
+    private long budgetRatio = TOKEN / 5;
+
+    private long maxTokens = 10000L * TOKEN;
+
+    private final AtomicLong tokens = new AtomicLong(maxTokens);
+
+    private IngestMetric metric;
+
+    /**
+     * @param maxRetries the maximum number of retries for an item
+     * @param initialDelay the delay before the first retry
+     */
+    public BulkRetryPolicy(int maxRetries, TimeValue initialDelay) {
+        this.maxRetries = maxRetries;
+        this.initialDelay = Math.max(initialDelay.millis(), 1L);
+    }
+
+    public BulkRetryPolicy maxDelay(TimeValue maxDelay) {
+        this.maxDelay = maxDelay.millis();
+        return this;
+    }
+
+    /**
+     * Set the retry budget.
+     *
+     * @param ratio the ratio of retried items to submitted items, e.g. 0.2 for a fifth
+     * @param maxItems the maximum number of items the budget may save up for retries
+     * @return this policy
+     */
+    public BulkRetryPolicy budget(double ratio, long maxItems) {
+        this.budgetRatio = (long) (ratio * TOKEN);
+        this.maxTokens = maxItems * TOKEN;
+        this.tokens.set(maxTokens);
+        return this;
+    }
+
+    public BulkRetryPolicy metric(IngestMetric metric) {
+        this.metric = metric;
+        return this;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Fill the retry budget for newly submitted items.
+     *
+     * @param numberOfActions the number of submitted items
+     */
+    public void onSubmit(int numberOfActions) {
+        long add = numberOfActions * budgetRatio;
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= maxTokens) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(maxTokens, current + add)));
+    }
+
+    /**
+     * Check if items may be retried, and take the retry from the budget.
+     *
+     * @param retry the number of the retry, starting with 1
+     * @param numberOfItems the number of items to retry
+     * @return true if the items may be retried, false if they must be given up
+     */
+    public boolean tryRetry(int retry, int numberOfItems) {
+        if (retry <= maxRetries) {
+            long cost = numberOfItems * TOKEN;
+            long current;
+            do {
+                current = tokens.get();
+                if (current < cost) {
+                    break;
+                }
+                if (tokens.compareAndSet(current, current - cost)) {
+                    if (metric != null) {
+                        metric.getRetried().inc(numberOfItems);
+                    }
+                    return true;
+                }
+            } while (true);
+        }
+        if (metric != null) {
+            metric.getRetriesExhausted().inc(numberOfItems);
+        }
+        return false;
+    }
+
+    /**
+     * The delay before a retry, with jitter between half and the full exponential backoff.
+     *
+     * @param retry the number of the retry, starting with 1
+     * @return the delay in milliseconds
+     */
+    public long delayMillis(int retry) {
+        long delay = retry >= 62 ? maxDelay : Math.min(maxDelay, initialDelay << Math.max(retry - 1, 0));
+        if (delay < 0 || delay > maxDelay) {
+            delay = maxDelay;
+        }
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+}
@@ -53,6 +53,12 @@ public class BulkTransportClient extends BaseMetricTransportClient implements In
 
     private TimeValue flushInterval = DEFAULT_FLUSH_INTERVAL;
 
+    private int accumulationStripes = ClientBuilder.DEFAULT_ACCUMULATION_STRIPES;
+
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    private BulkRetryPolicy retryPolicy;
+
     private BulkProcessor bulkProcessor;
 
     private Throwable throwable;
@@ -86,6 +92,36 @@ public class BulkTransportClient extends BaseMetricTransportClient implements In
         return this;
     }
 
+    /**
+     * Set the number of stripes the bulk processor uses for accumulating actions from concurrent threads.
+     * @param accumulationStripes the number of stripes, 0 or 1 for a single synchronized buffer
+     * @return this client
+     */
+    public BulkTransportClient accumulationStripes(int accumulationStripes) {
+        this.accumulationStripes = accumulationStripes;
+        return this;
+    }
+
+    /**
+     * Set the limiter for concurrent requests.
+     * @param concurrencyLimiter the concurrency limiter, or null for the maximum number of concurrent requests
+     * @return this client
+     */
+    public BulkTransportClient concurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        return this;
+    }
+
+    /**
+     * Set the policy for retrying rejected bulk items.
+     * @param retryPolicy the retry policy, or null for no retries
+     * @return this client
+     */
+    public BulkTransportClient retryPolicy(BulkRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
     @Override
     public BulkTransportClient init(ElasticsearchClient client, IngestMetric metric) throws IOException {
         return this.init(findSettings(), metric);
@@ -116,6 +152,7 @@ public class BulkTransportClient extends BaseMetricTransportClient implements In
                 metric.getCurrentIngest().dec();
                 long l = metric.getCurrentIngest().getCount();
                 metric.getSucceeded().inc(response.getItems().length);
+                metric.getTagged().record(request, response);
                 int n = 0;
                 for (BulkItemResponse itemResponse : response.getItems()) {
                     metric.getCurrentIngest().dec(itemResponse.getIndex(), itemResponse.getType(), itemResponse.getId());
@@ -152,10 +189,25 @@ public class BulkTransportClient extends BaseMetricTransportClient implements In
         BulkProcessor.Builder builder = BulkProcessor.builder(client, listener)
                 .setBulkActions(maxActionsPerRequest)
                 .setConcurrentRequests(maxConcurrentRequests)
-                .setFlushInterval(flushInterval);
+                .setFlushInterval(flushInterval)
+                .setStripes(accumulationStripes);
+        if (concurrencyLimiter != null) {
+            builder.setConcurrencyLimiter(concurrencyLimiter);
+            metric.setConcurrencyLimit(concurrencyLimiter);
+        }
+        if (retryPolicy != null) {
+            builder.setRetryPolicy(retryPolicy.metric(metric));
+        }
         if (maxVolumePerRequest != null) {
             builder.setBulkSize(maxVolumePerRequest);
         }
+        if (settings.getAsBoolean(ClientBuilder.ADAPTIVE_BATCH_SIZE, false)) {
+            builder.setAdaptiveBatchSize(new AdaptiveBatchSize(maxActionsPerRequest,
+                    maxVolumePerRequest != null ? maxVolumePerRequest.bytes() : DEFAULT_MAX_VOLUME_PER_REQUEST.bytes())
+                    .targetLatency(settings.getAsTime(ClientBuilder.ADAPTIVE_LATENCY_LOW, ClientBuilder.DEFAULT_ADAPTIVE_LATENCY_LOW),
+                            settings.getAsTime(ClientBuilder.ADAPTIVE_LATENCY_HIGH, ClientBuilder.DEFAULT_ADAPTIVE_LATENCY_HIGH))
+                    .metric(metric));
+        }
         this.bulkProcessor = builder.build();
         try {
             Collection<InetSocketTransportAddress> addrs = findAddresses(settings);
@@ -31,6 +31,32 @@ public class ClientBuilder {
 
     public final static String FLUSH_INTERVAL = "flush_interval";
 
+    public final static String ACCUMULATION_STRIPES = "accumulation_stripes";
+
+    public final static String CONCURRENCY_LIMITER = "concurrency_limiter";
+
+    public final static String MAX_RETRIES = "max_retries";
+
+    public final static String RETRY_INITIAL_DELAY = "retry_initial_delay";
+
+    public final static String RETRY_BUDGET = "retry_budget";
+
+    public final static String ADAPTIVE_BATCH_SIZE = "adaptive_batch_size";
+
+    public final static String ADAPTIVE_LATENCY_LOW = "adaptive_latency_low";
+
+    public final static String ADAPTIVE_LATENCY_HIGH = "adaptive_latency_high";
+
+    public final static String SPILL_PATH = "spill_path";
+
+    public final static String SPILL_DEADLINE = "spill_deadline";
+
+    public final static String SPILL_SEGMENT_SIZE = "spill_segment_size";
+
+    public final static String SHARD_ROUTING = "shard_routing";
+
+    public final static String SHARD_ROUTING_REFRESH_INTERVAL = "shard_routing_refresh_interval";
+
     public final static int DEFAULT_MAX_ACTIONS_PER_REQUEST = 1000;
 
     public final static int DEFAULT_MAX_CONCURRENT_REQUESTS = Runtime.getRuntime().availableProcessors() * 4;
@@ -39,6 +65,26 @@ public class ClientBuilder {
 
     public final static TimeValue DEFAULT_FLUSH_INTERVAL = TimeValue.timeValueSeconds(30);
 
+    public final static int DEFAULT_ACCUMULATION_STRIPES = 0;
+
+    public final static String DEFAULT_CONCURRENCY_LIMITER = "fixed";
+
+    public final static int DEFAULT_MAX_RETRIES = 0;
+
+    public final static TimeValue DEFAULT_RETRY_INITIAL_DELAY = TimeValue.timeValueMillis(50);
+
+    public final static double DEFAULT_RETRY_BUDGET = 0.2d;
+
+    public final static TimeValue DEFAULT_ADAPTIVE_LATENCY_LOW = TimeValue.timeValueMillis(250);
+
+    public final static TimeValue DEFAULT_ADAPTIVE_LATENCY_HIGH = TimeValue.timeValueSeconds(1);
+
+    public final static TimeValue DEFAULT_SPILL_DEADLINE = TimeValue.timeValueSeconds(1);
+
+    public final static ByteSizeValue DEFAULT_SPILL_SEGMENT_SIZE = new ByteSizeValue(64, ByteSizeUnit.MB);
+
+    public final static TimeValue DEFAULT_SHARD_ROUTING_REFRESH_INTERVAL = TimeValue.timeValueSeconds(10);
+
     private Settings.Builder settingsBuilder;
 
     private IngestMetric metric;
@@ -92,6 +138,46 @@ public class ClientBuilder {
         return this;
     }
 
+    /**
+     * Create a concurrency limiter. The maximum number of concurrent requests is the upper bound of the limit.
+     * Known limiters are "fixed", "aimd" and "gradient".
+     *
+     * @param settings the settings
+     * @return the concurrency limiter, or null if requests should be executed synchronously
+     */
+    private static ConcurrencyLimiter createConcurrencyLimiter(Settings settings) {
+        int max = settings.getAsInt(MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_CONCURRENT_REQUESTS);
+        if (max < 1) {
+            return null;
+        }
+        String type = settings.get(CONCURRENCY_LIMITER, DEFAULT_CONCURRENCY_LIMITER);
+        switch (type) {
+            case "fixed":
+                return new FixedConcurrencyLimiter(max);
+            case "aimd":
+                return new AimdConcurrencyLimiter(max, 1, max);
+            case "gradient":
+                return new GradientConcurrencyLimiter(max, 1, max);
+            default:
+                throw new IllegalArgumentException("unknown concurrency limiter: " + type);
+        }
+    }
+
+    /**
+     * Create a policy for retrying rejected bulk items.
+     *
+     * @param settings the settings
+     * @return the retry policy, or null if items should not be retried
+     */
+    private static BulkRetryPolicy createRetryPolicy(Settings settings) {
+        int maxRetries = settings.getAsInt(MAX_RETRIES, DEFAULT_MAX_RETRIES);
+        if (maxRetries < 1) {
+            return null;
+        }
+        return new BulkRetryPolicy(maxRetries, settings.getAsTime(RETRY_INITIAL_DELAY, DEFAULT_RETRY_INITIAL_DELAY))
+                .budget(settings.getAsDouble(RETRY_BUDGET, DEFAULT_RETRY_BUDGET), 10000L);
+    }
+
     public BulkNodeClient toBulkNodeClient(Client client) {
         Settings settings = settingsBuilder.build();
         return new BulkNodeClient()
@@ -99,6 +185,7 @@ public class ClientBuilder {
                 .maxConcurrentRequests(settings.getAsInt(MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_CONCURRENT_REQUESTS))
                 .maxVolumePerRequest(settings.getAsBytesSize(MAX_VOLUME_PER_REQUEST, DEFAULT_MAX_VOLUME_PER_REQUEST))
                 .flushIngestInterval(settings.getAsTime(FLUSH_INTERVAL, DEFAULT_FLUSH_INTERVAL))
+                .retryPolicy(createRetryPolicy(settings))
                 .init(client, metric);
     }
 
@@ -109,6 +196,9 @@ public class ClientBuilder {
                 .maxConcurrentRequests(settings.getAsInt(MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_CONCURRENT_REQUESTS))
                 .maxVolumePerRequest(settings.getAsBytesSize(MAX_VOLUME_PER_REQUEST, DEFAULT_MAX_VOLUME_PER_REQUEST))
                 .flushIngestInterval(settings.getAsTime(FLUSH_INTERVAL, DEFAULT_FLUSH_INTERVAL))
+                .accumulationStripes(settings.getAsInt(ACCUMULATION_STRIPES, DEFAULT_ACCUMULATION_STRIPES))
+                .concurrencyLimiter(createConcurrencyLimiter(settings))
+                .retryPolicy(createRetryPolicy(settings))
                 .init(settings, metric);
     }
 
@@ -119,6 +209,8 @@ public class ClientBuilder {
                 .maxConcurrentRequests(settings.getAsInt(MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_CONCURRENT_REQUESTS))
                 .maxVolumePerRequest(settings.getAsBytesSize(MAX_VOLUME_PER_REQUEST, DEFAULT_MAX_VOLUME_PER_REQUEST))
                 .flushIngestInterval(settings.getAsTime(FLUSH_INTERVAL, DEFAULT_FLUSH_INTERVAL))
+                .concurrencyLimiter(createConcurrencyLimiter(settings))
+                .retryPolicy(createRetryPolicy(settings))
                 .init(settings, metric);
     }
 
@@ -129,6 +221,7 @@ public class ClientBuilder {
                 .maxConcurrentRequests(settings.getAsInt(MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_CONCURRENT_REQUESTS))
                 .maxVolumePerRequest(settings.getAsBytesSize(MAX_VOLUME_PER_REQUEST, DEFAULT_MAX_VOLUME_PER_REQUEST))
                 .flushIngestInterval(settings.getAsTime(FLUSH_INTERVAL, DEFAULT_FLUSH_INTERVAL))
+                .concurrencyLimiter(createConcurrencyLimiter(settings))
                 .init(settings, metric);
     }
 
@@ -0,0 +1,70 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.xbib.metrics.Gauge;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A limiter for the number of requests in flight. Unlike a semaphore, the limit may change at runtime,
+ * driven by the latency of responses and by signals of an overloaded cluster, such as rejected executions.
+ * The value of the gauge is the current limit.
+ */
+public interface ConcurrencyLimiter extends Gauge<Integer> {
+
+    /**
+     * Acquire a permit for sending a request, waiting until the number of requests in flight drops below the limit.
+     *
+     * @throws InterruptedException if the wait was interrupted
+     */
+    void acquire() throws InterruptedException;
+
+    /**
+     * Acquire a permit for sending a request, waiting at most the given time.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the time unit
+     * @return true if a permit was acquired, false if the waiting time elapsed
+     * @throws InterruptedException if the wait was interrupted
+     */
+    boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Acquire a permit for sending a request if one is available, without waiting.
+     *
+     * @return true if a permit was acquired
+     */
+    boolean tryAcquire();
+
+    /**
+     * Release a permit after a response was received and adjust the limit.
+     *
+     * @param rttNanos the round trip time of the request in nanoseconds
+     * @param dropped true if the cluster signaled overload, e.g. by rejecting executions
+     */
+    void release(long rttNanos, boolean dropped);
+
+    /**
+     * Release a permit without adjusting the limit, e.g. if the request could not be sent.
+     */
+    void release();
+
+    /**
+     * @return the current limit of requests in flight
+     */
+    int getLimit();
+
+    /**
+     * @return the number of requests in flight
+     */
+    int getInFlight();
+
+    /**
+     * Wait until no request is in flight.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the time unit
+     * @return true if no request is in flight, false if the waiting time elapsed
+     * @throws InterruptedException if the wait was interrupted
+     */
+    boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException;
+}
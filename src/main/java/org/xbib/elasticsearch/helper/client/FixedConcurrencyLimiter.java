@@ -0,0 +1,16 @@
+package org.xbib.elasticsearch.helper.client;
+
+/**
+ * A concurrency limiter with a fixed limit. It behaves like a semaphore.
+ */
+public class FixedConcurrencyLimiter extends AbstractConcurrencyLimiter {
+
+    public FixedConcurrencyLimiter(int limit) {
+        super(limit, limit, limit);
+    }
+
+    @Override
+    protected int update(int limit, int inFlight, long rttNanos, boolean dropped) {
+        return limit;
+    }
+}
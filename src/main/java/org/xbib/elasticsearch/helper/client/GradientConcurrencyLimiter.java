@@ -0,0 +1,77 @@
+package org.xbib.elasticsearch.helper.client;
+
+/**
+ * A concurrency limiter in the style of TCP Vegas, driven by the gradient of the latency.
+ *
+ * The limiter tracks the minimum round trip time as an estimate of the latency without queueing. The ratio of
+ * the minimum and the current round trip time shrinks the limit if requests queue up in the cluster, and a
+ * small allowance for queueing lets the limit grow while latency stays low. Rejected executions halve the limit.
+ * The minimum round trip time is reset periodically, so the limiter follows changes of the cluster.
+ */
+public class GradientConcurrencyLimiter extends AbstractConcurrencyLimiter {
+
+    private double tolerance = 2.0d;
+
+    private double smoothing = 0.2d;
+
+    private int probeInterval = 1000;
+
+    private double estimatedLimit;
+
+    private long minRttNanos = Long.MAX_VALUE;
+
+    private int samples;
+
+    public GradientConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        super(initialLimit, minLimit, maxLimit);
+        this.estimatedLimit = getLimit();
+    }
+
+    /**
+     * Set the tolerated ratio of the current and the minimum round trip time before the limit shrinks.
+     *
+     * @param tolerance the tolerance, at least 1.0
+     * @return this limiter
+     */
+    public GradientConcurrencyLimiter tolerance(double tolerance) {
+        this.tolerance = Math.max(tolerance, 1.0d);
+        return this;
+    }
+
+    public GradientConcurrencyLimiter smoothing(double smoothing) {
+        this.smoothing = smoothing;
+        return this;
+    }
+
+    public GradientConcurrencyLimiter probeInterval(int probeInterval) {
+        this.probeInterval = probeInterval;
+        return this;
+    }
+
+    @Override
+    protected int update(int limit, int inFlight, long rttNanos, boolean dropped) {
+        if (dropped) {
+            estimatedLimit = Math.max(getMinLimit(), estimatedLimit / 2);
+            return (int) estimatedLimit;
+        }
+        if (rttNanos <= 0L) {
+            return limit;
+        }
+        if (++samples >= probeInterval) {
+            samples = 0;
+            minRttNanos = rttNanos;
+        } else if (rttNanos < minRttNanos) {
+            minRttNanos = rttNanos;
+        }
+        // do not adjust if the limit is not used at the arrival of the response
+        if (inFlight * 2 < limit) {
+            return limit;
+        }
+        double gradient = Math.max(0.5d, Math.min(1.0d, tolerance * minRttNanos / rttNanos));
+        double queueSize = Math.sqrt(estimatedLimit);
+        double newLimit = estimatedLimit * gradient + queueSize;
+        estimatedLimit = Math.max(getMinLimit(), Math.min(getMaxLimit(),
+                (1.0d - smoothing) * estimatedLimit + smoothing * newLimit));
+        return (int) estimatedLimit;
+    }
+}
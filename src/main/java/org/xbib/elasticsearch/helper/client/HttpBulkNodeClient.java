@@ -61,6 +61,8 @@ public class HttpBulkNodeClient extends BaseClient implements Ingest {
 
     private HttpBulkProcessor bulkProcessor;
 
+    private ConcurrencyLimiter concurrencyLimiter;
+
     private IngestMetric metric;
 
     private Throwable throwable;
@@ -94,6 +96,16 @@ public class HttpBulkNodeClient extends BaseClient implements Ingest {
         return this;
     }
 
+    /**
+     * Set the limiter for concurrent requests.
+     * @param concurrencyLimiter the concurrency limiter, or null for the maximum number of concurrent requests
+     * @return this client
+     */
+    public HttpBulkNodeClient concurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        return this;
+    }
+
     @Override
     public HttpBulkNodeClient init(ElasticsearchClient client, final IngestMetric metric) {
         this.client = client;
@@ -127,6 +139,7 @@ public class HttpBulkNodeClient extends BaseClient implements Ingest {
                     metric.getCurrentIngest().dec();
                     l = metric.getCurrentIngest().getCount();
                     metric.getSucceeded().inc(response.getItems().length);
+                    metric.getTagged().record(request, response);
                 }
                 int n = 0;
                 for (BulkItemResponse itemResponse : response.getItems()) {
@@ -174,6 +187,12 @@ public class HttpBulkNodeClient extends BaseClient implements Ingest {
         if (maxVolume != null) {
             builder.setBulkSize(maxVolume);
         }
+        if (concurrencyLimiter != null) {
+            builder.setConcurrencyLimiter(concurrencyLimiter);
+            if (metric != null) {
+                metric.setConcurrencyLimit(concurrencyLimiter);
+            }
+        }
         this.bulkProcessor = builder.build();
         this.closed = false;
         return this;
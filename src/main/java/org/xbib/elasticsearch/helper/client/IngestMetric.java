@@ -16,6 +16,7 @@
 package org.xbib.elasticsearch.helper.client;
 
 import org.xbib.metrics.Count;
+import org.xbib.metrics.Gauge;
 import org.xbib.metrics.Metered;
 
 import java.util.Map;
@@ -37,6 +38,45 @@ public interface IngestMetric {
 
     Count getFailed();
 
+    /**
+     * @return the count of failed items which were submitted again
+     */
+    Count getRetried();
+
+    /**
+     * @return the count of failed items which could have been retried, but were given up
+     * because of the retry limit or the retry budget
+     */
+    Count getRetriesExhausted();
+
+    /**
+     * @return the metrics per index and per shard
+     */
+    TaggedIngestMetric getTagged();
+
+    /**
+     * Set the current number of actions and volume per request, as decided by an {@link AdaptiveBatchSize}.
+     *
+     * @param maxActionsPerRequest maximum number of actions per request
+     * @param maxVolumePerRequest maximum volume per request in bytes
+     * @return this metric
+     */
+    IngestMetric setBatchSize(int maxActionsPerRequest, long maxVolumePerRequest);
+
+    int getMaxActionsPerRequest();
+
+    long getMaxVolumePerRequest();
+
+    /**
+     * Set the gauge of the current limit of concurrent requests, usually the {@link ConcurrencyLimiter}.
+     *
+     * @param concurrencyLimit the gauge
+     * @return this metric
+     */
+    IngestMetric setConcurrencyLimit(Gauge<Integer> concurrencyLimit);
+
+    Gauge<Integer> getConcurrencyLimit();
+
     IngestMetric start();
 
     IngestMetric stop();
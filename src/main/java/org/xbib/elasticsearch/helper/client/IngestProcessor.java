@@ -1,28 +1,43 @@
 package org.xbib.elasticsearch.helper.client;
 
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.IndicesRequest;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.xbib.elasticsearch.action.ingest.IngestAction;
+import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
 import org.xbib.elasticsearch.action.ingest.IngestRequest;
 import org.xbib.elasticsearch.action.ingest.IngestResponse;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class IngestProcessor {
 
+    private final static ESLogger logger = ESLoggerFactory.getLogger(IngestProcessor.class.getName());
+
     private final Client client;
 
     private int actions = Ingest.DEFAULT_MAX_ACTIONS_PER_REQUEST;
@@ -31,7 +46,21 @@ public class IngestProcessor {
 
     private ByteSizeValue maxVolume = Ingest.DEFAULT_MAX_VOLUME_PER_REQUEST;
 
-    private Semaphore semaphore = new Semaphore(maxConcurrency);
+    private AdaptiveBatchSize adaptiveBatchSize;
+
+    private IngestSpillJournal spillJournal;
+
+    private TimeValue spillDeadline;
+
+    private Thread spillDrainer;
+
+    private IngestShardRouter shardRouter;
+
+    private BulkRetryPolicy retryPolicy;
+
+    private ScheduledThreadPoolExecutor retryScheduler;
+
+    private ConcurrencyLimiter concurrencyLimiter = new FixedConcurrencyLimiter(maxConcurrency);
 
     private AtomicLong ingestId = new AtomicLong(0L);
 
@@ -51,12 +80,77 @@ public class IngestProcessor {
 
     public IngestProcessor maxConcurrentRequests(int concurrency) {
         this.maxConcurrency = Math.min(Math.abs(concurrency < 1 ? 1 : concurrency), 256);
-        this.semaphore = new Semaphore(this.maxConcurrency);
+        this.concurrencyLimiter = new FixedConcurrencyLimiter(this.maxConcurrency);
+        return this;
+    }
+
+    /**
+     * Set a limiter for the concurrent requests, instead of the fixed limit of {@link #maxConcurrentRequests(int)}.
+     *
+     * @param concurrencyLimiter the concurrency limiter
+     * @return this processor
+     */
+    public IngestProcessor concurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        return this;
+    }
+
+    /**
+     * Set a journal for spilling requests if no request can be sent within a deadline, e.g. when the cluster is
+     * unavailable. Spilled requests are replayed in the background once requests can be sent again, and
+     * requests left in the journal are replayed when a processor opens the journal again.
+     * While the journal is not empty, new requests are appended to the journal, so the order of the requests
+     * is kept.
+     *
+     * @param spillJournal the spill journal
+     * @param spillDeadline the maximum time to wait for sending a request before it is spilled
+     * @return this processor
+     */
+    public IngestProcessor spillJournal(IngestSpillJournal spillJournal, TimeValue spillDeadline) {
+        this.spillJournal = spillJournal;
+        this.spillDeadline = spillDeadline;
+        if (spillDrainer == null) {
+            spillDrainer = EsExecutors.daemonThreadFactory(client.settings(), "ingest_processor_spill")
+                    .newThread(new SpillDrainer());
+            spillDrainer.start();
+        }
         return this;
     }
 
+    /**
+     * Set a router for sending the parts of each request directly to the nodes holding the primary shards,
+     * instead of sending the whole request to one node.
+     *
+     * @param shardRouter the shard router
+     * @return this processor
+     */
+    public IngestProcessor shardRouter(IngestShardRouter shardRouter) {
+        this.shardRouter = shardRouter;
+        return this;
+    }
+
+    /**
+     * Set a policy for retrying failed actions. Only the actions which failed for a retryable reason,
+     * e.g. a rejected execution or an unavailable shard, are sent again.
+     *
+     * @param retryPolicy the retry policy
+     * @return this processor
+     */
+    public IngestProcessor retryPolicy(BulkRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        if (retryPolicy != null && retryScheduler == null) {
+            retryScheduler = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(1,
+                    EsExecutors.daemonThreadFactory(client.settings(), "ingest_processor_retry"));
+        }
+        return this;
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
     public int getConcurrency() {
-        return maxConcurrency - semaphore.availablePermits();
+        return concurrencyLimiter.getInFlight();
     }
 
     public IngestProcessor maxActions(int actions) {
@@ -69,6 +163,18 @@ public class IngestProcessor {
         return this;
     }
 
+    /**
+     * Set a controller for adapting the number of actions and the volume per request at runtime,
+     * instead of using the fixed values of {@link #maxActions(int)} and {@link #maxVolumePerRequest(ByteSizeValue)}.
+     *
+     * @param adaptiveBatchSize the controller
+     * @return this processor
+     */
+    public IngestProcessor adaptiveBatchSize(AdaptiveBatchSize adaptiveBatchSize) {
+        this.adaptiveBatchSize = adaptiveBatchSize;
+        return this;
+    }
+
 
     public IngestProcessor flushInterval(TimeValue flushInterval) {
         if (flushInterval != null && flushInterval.getMillis() > 0L) {
@@ -126,6 +232,66 @@ public class IngestProcessor {
         return this;
     }
 
+    /**
+     * Submit the actions of a request without buffering them together with other actions, so the ingest ids
+     * of the actions are known when this method returns. The actions are split by the maximum number
+     * of actions and the maximum volume per request.
+     *
+     * This method never waits for a permit of the concurrency limiter, so it can be called from network threads.
+     * If there are not enough permits for all parts, the parts without a permit are spilled if a spill journal
+     * is configured, otherwise no part is sent and the request is rejected.
+     *
+     * @param request        the request with the actions
+     * @param ingestListener the listener
+     * @return the ingest ids of the submitted requests
+     * @throws EsRejectedExecutionException if there are not enough permits for sending the request
+     */
+    public long[] submit(IngestRequest request, IngestListener ingestListener) {
+        if (closed) {
+            throw new IllegalStateException("processor already closed");
+        }
+        int n = actions > 0 ? adaptiveBatchSize != null ? adaptiveBatchSize.getActions() : actions :
+                request.numberOfActions();
+        long volume = adaptiveBatchSize != null ? adaptiveBatchSize.getVolume() : maxVolume.bytes();
+        List<IngestRequest> parts = new ArrayList<>();
+        while (n > 0 && request.numberOfActions() > 0) {
+            parts.add(request.take(n, volume > 0 ? volume : Long.MAX_VALUE));
+        }
+        if (ingestListener == null) {
+            return new long[0];
+        }
+        int permits = 0;
+        if (spillJournal == null || spillJournal.isEmpty()) {
+            while (permits < parts.size() && concurrencyLimiter.tryAcquire()) {
+                permits++;
+            }
+        }
+        if (permits < parts.size() && spillJournal == null) {
+            for (int i = 0; i < permits; i++) {
+                concurrencyLimiter.release();
+            }
+            throw new EsRejectedExecutionException("rejected ingest request of " + parts.size()
+                    + " parts, " + concurrencyLimiter.getInFlight() + " requests in flight");
+        }
+        long[] ids = new long[parts.size()];
+        for (int i = 0; i < ids.length; i++) {
+            IngestRequest part = parts.get(i);
+            part.ingestId(ingestId.incrementAndGet());
+            ids[i] = part.ingestId();
+            if (i < permits) {
+                execute(part, ingestListener);
+            } else {
+                try {
+                    spillJournal.append(part);
+                } catch (IOException e) {
+                    logger.error("unable to spill request", e);
+                    ingestListener.onFailure(concurrencyLimiter.getInFlight(), part.ingestId(), e);
+                }
+            }
+        }
+        return ids;
+    }
+
     /**
      * Closes the processor. If flushing by time is enabled, then it is shut down.
      * Any remaining ingest actions are flushed.
@@ -141,9 +307,25 @@ public class IngestProcessor {
             scheduledFuture.cancel(false);
         }
         // do not automatically flush
-        scheduler.shutdown();
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
         // flush manually but do not wait for responses
         flush();
+        if (retryScheduler != null) {
+            // scheduled retries are still executed
+            retryScheduler.shutdown();
+        }
+        if (spillDrainer != null) {
+            // spilled requests are kept in the journal for the next processor
+            spillDrainer.interrupt();
+            spillDrainer.join(1000L);
+            try {
+                spillJournal.close();
+            } catch (IOException e) {
+                logger.error("unable to close spill journal", e);
+            }
+        }
     }
 
     /**
@@ -163,12 +345,11 @@ public class IngestProcessor {
      * @throws InterruptedException if wait is interrupted
      */
     public boolean waitForResponses(TimeValue maxWait) throws InterruptedException {
-        if (maxConcurrency - semaphore.availablePermits() > 0) {
-            semaphore.tryAcquire(maxConcurrency, maxWait.getMillis(), TimeUnit.MILLISECONDS);
-            return semaphore.availablePermits() == maxConcurrency;
-        } else {
-            return true;
+        long deadline = System.currentTimeMillis() + maxWait.getMillis();
+        if (spillJournal != null && !spillJournal.awaitEmpty(maxWait.getMillis())) {
+            return false;
         }
+        return concurrencyLimiter.awaitIdle(Math.max(deadline - System.currentTimeMillis(), 0L), TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -182,13 +363,18 @@ public class IngestProcessor {
             throw new IllegalStateException("processor already closed");
         }
         if (actions > 0) {
-            while (ingestRequest.numberOfActions() >= actions) {
-                process(ingestRequest.take(actions), ingestListener);
+            int n = adaptiveBatchSize != null ? adaptiveBatchSize.getActions() : actions;
+            while (ingestRequest.numberOfActions() >= n) {
+                process(ingestRequest.take(n), ingestListener);
+                if (adaptiveBatchSize != null) {
+                    n = adaptiveBatchSize.getActions();
+                }
             }
         } else {
+            long volume = adaptiveBatchSize != null ? adaptiveBatchSize.getVolume() : maxVolume.bytesAsInt();
             while (ingestRequest.numberOfActions() > 0
-                    && maxVolume.bytesAsInt() > 0
-                    && ingestRequest.estimatedSizeInBytes() > maxVolume.bytesAsInt()) {
+                    && volume > 0
+                    && ingestRequest.estimatedSizeInBytes() > volume) {
                 process(ingestRequest.takeAll(), ingestListener);
             }
         }
@@ -205,36 +391,47 @@ public class IngestProcessor {
             return;
         }
         request.ingestId(ingestId.incrementAndGet());
-        boolean done = false;
         try {
-            semaphore.acquire();
-            ingestListener.onRequest(maxConcurrency - semaphore.availablePermits(), request);
-            client.execute(IngestAction.INSTANCE, request, new ActionListener<IngestResponse>() {
-                @Override
-                public void onResponse(IngestResponse response) {
-                    try {
-                        ingestListener.onResponse(maxConcurrency - semaphore.availablePermits(), response);
-                    } finally {
-                        semaphore.release();
-                    }
-                }
-
-                @Override
-                public void onFailure(Throwable e) {
+            if (spillJournal != null) {
+                if (!spillJournal.isEmpty()
+                        || !concurrencyLimiter.tryAcquire(spillDeadline.millis(), TimeUnit.MILLISECONDS)) {
                     try {
-                        ingestListener.onFailure(maxConcurrency - semaphore.availablePermits(), request.ingestId(), e);
-                    } finally {
-                        semaphore.release();
+                        spillJournal.append(request);
+                        return;
+                    } catch (IOException e) {
+                        logger.error("unable to spill request, waiting for sending it", e);
+                        concurrencyLimiter.acquire();
                     }
                 }
-            });
-            done = true;
+            } else {
+                concurrencyLimiter.acquire();
+            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            ingestListener.onFailure(maxConcurrency - semaphore.availablePermits(), request.ingestId(), e);
+            ingestListener.onFailure(concurrencyLimiter.getInFlight(), request.ingestId(), e);
+            return;
+        }
+        execute(request, ingestListener);
+    }
+
+    /**
+     * Execute an ingest request. A permit of the concurrency limiter must have been acquired.
+     *
+     * @param request        the ingest request
+     * @param ingestListener the listener
+     */
+    private void execute(final IngestRequest request, final IngestListener ingestListener) {
+        boolean done = false;
+        try {
+            ingestListener.onRequest(concurrencyLimiter.getInFlight(), request);
+            if (retryPolicy != null) {
+                retryPolicy.onSubmit(request.numberOfActions());
+            }
+            new IngestExecution(request, ingestListener).send(request, null);
+            done = true;
         } finally {
             if (!done) {
-                semaphore.release();
+                concurrencyLimiter.release();
             }
         }
     }
@@ -270,6 +467,253 @@ public class IngestProcessor {
         void onFailure(int concurrency, long ingestId, Throwable failure);
     }
 
+    /**
+     * Replays spilled requests whenever a permit for sending a request is available. A spilled request is
+     * acknowledged in the journal after it was answered, so requests in flight when the processor is closed
+     * or the client stops are replayed again from the journal (at-least-once).
+     */
+    class SpillDrainer implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    if (!spillJournal.awaitNotEmpty(1000L)) {
+                        continue;
+                    }
+                    if (!concurrencyLimiter.tryAcquire(1000L, TimeUnit.MILLISECONDS)) {
+                        continue;
+                    }
+                    IngestSpillJournal.Entry entry = null;
+                    try {
+                        entry = spillJournal.poll();
+                    } catch (IOException e) {
+                        logger.error("unable to read spilled request, skipping", e);
+                    }
+                    if (entry == null || ingestListener == null) {
+                        concurrencyLimiter.release();
+                        continue;
+                    }
+                    execute(entry.request(), new SpillAckListener(entry, ingestListener));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Acknowledges a spilled request in the journal when it is answered.
+     */
+    class SpillAckListener implements IngestListener {
+
+        private final IngestSpillJournal.Entry entry;
+
+        private final IngestListener ingestListener;
+
+        SpillAckListener(IngestSpillJournal.Entry entry, IngestListener ingestListener) {
+            this.entry = entry;
+            this.ingestListener = ingestListener;
+        }
+
+        @Override
+        public void onRequest(int concurrency, IngestRequest request) {
+            ingestListener.onRequest(concurrency, request);
+        }
+
+        @Override
+        public void onResponse(int concurrency, IngestResponse response) {
+            try {
+                ingestListener.onResponse(concurrency, response);
+            } finally {
+                ack();
+            }
+        }
+
+        @Override
+        public void onFailure(int concurrency, long ingestId, Throwable failure) {
+            try {
+                ingestListener.onFailure(concurrency, ingestId, failure);
+            } finally {
+                ack();
+            }
+        }
+
+        private void ack() {
+            try {
+                spillJournal.ack(entry);
+            } catch (IOException e) {
+                logger.error("unable to acknowledge spilled request", e);
+            }
+        }
+    }
+
+    /**
+     * Executes an ingest request. With a retry policy, the failed actions with a retryable failure are sent again
+     * after a backoff, and the responses are merged into a single response, so the listener sees the final
+     * outcome of each action. The permit for the request is kept while retrying.
+     */
+    class IngestExecution implements ActionListener<IngestResponse> {
+
+        private final IngestRequest ingestRequest;
+
+        private final IngestListener ingestListener;
+
+        private final long startNanos = System.nanoTime();
+
+        private List<? extends IndicesRequest> actions;
+
+        private IngestResponse response;
+
+        private IngestRequest current;
+
+        private int[] positions;
+
+        private int retry;
+
+        private long rttNanos = -1L;
+
+        private boolean rejected;
+
+        IngestExecution(IngestRequest ingestRequest, IngestListener ingestListener) {
+            this.ingestRequest = ingestRequest;
+            this.ingestListener = ingestListener;
+        }
+
+        void send(IngestRequest request, int[] positions) {
+            this.current = request;
+            this.positions = positions;
+            if (shardRouter != null) {
+                shardRouter.execute(request, this);
+            } else {
+                client.execute(IngestAction.INSTANCE, request, this);
+            }
+        }
+
+        @Override
+        public void onResponse(IngestResponse ingestResponse) {
+            if (rttNanos < 0L) {
+                rttNanos = System.nanoTime() - startNanos;
+            }
+            if (BulkFailures.hasRejections(ingestResponse)) {
+                rejected = true;
+            }
+            if (response == null) {
+                response = ingestResponse;
+            } else {
+                response.merge(ingestResponse, positions)
+                        .setTookInMillis(response.tookInMillis() + ingestResponse.tookInMillis());
+            }
+            if (retryPolicy == null || !ingestResponse.hasFailedItems()) {
+                finish();
+                return;
+            }
+            // the failure of each failed action, its own or the one of its shard
+            Map<Integer, IngestActionFailure> itemFailures = new HashMap<>();
+            for (IngestActionFailure failure : ingestResponse.getFailures()) {
+                if (failure.position() >= 0) {
+                    itemFailures.put(failure.position(), failure);
+                }
+            }
+            for (IngestActionFailure failure : ingestResponse.getFailures()) {
+                for (int position : failure.positions()) {
+                    if (!itemFailures.containsKey(position)) {
+                        itemFailures.put(position, failure);
+                    }
+                }
+            }
+            if (actions == null) {
+                actions = ingestRequest.subRequests();
+            }
+            BitSet failedItems = ingestResponse.getFailedItems();
+            IngestRequest retryRequest = new IngestRequest()
+                    .ingestId(ingestRequest.ingestId())
+                    .timeout(ingestRequest.timeout())
+                    .requiredConsistency(ingestRequest.requiredConsistency());
+            int[] retryPositions = new int[failedItems.cardinality()];
+            int n = 0;
+            for (int i = failedItems.nextSetBit(0); i >= 0; i = failedItems.nextSetBit(i + 1)) {
+                IngestActionFailure failure = itemFailures.get(i);
+                if (failure != null && BulkFailures.isRetryable(failure)) {
+                    int position = positions != null ? positions[i] : i;
+                    retryRequest.add((ActionRequest<?>) actions.get(position));
+                    retryPositions[n++] = position;
+                }
+            }
+            if (n > 0 && retryPolicy.tryRetry(retry + 1, n)) {
+                schedule(retryRequest, Arrays.copyOf(retryPositions, n));
+            } else {
+                finish();
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            if (rttNanos < 0L) {
+                rttNanos = System.nanoTime() - startNanos;
+            }
+            if (BulkFailures.isRejected(e)) {
+                rejected = true;
+                if (retryPolicy != null && retryPolicy.tryRetry(retry + 1, current.numberOfActions())) {
+                    schedule(current, positions);
+                    return;
+                }
+            }
+            if (response == null) {
+                fail(e);
+            } else {
+                // the actions of the failed retry keep the failures of the former attempt
+                finish();
+            }
+        }
+
+        private void schedule(final IngestRequest request, final int[] positions) {
+            retry++;
+            try {
+                retryScheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            send(request, positions);
+                        } catch (Throwable t) {
+                            onFailure(t);
+                        }
+                    }
+                }, retryPolicy.delayMillis(retry), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // processor is closed
+                if (response == null) {
+                    fail(e);
+                } else {
+                    finish();
+                }
+            }
+        }
+
+        private void finish() {
+            try {
+                if (adaptiveBatchSize != null) {
+                    adaptiveBatchSize.onResponse(ingestRequest.numberOfActions(), response.tookInMillis(),
+                            ingestRequest.numberOfActions() - response.successSize());
+                }
+                ingestListener.onResponse(concurrencyLimiter.getInFlight(), response);
+            } finally {
+                concurrencyLimiter.release(rttNanos, rejected);
+            }
+        }
+
+        private void fail(Throwable e) {
+            try {
+                if (adaptiveBatchSize != null) {
+                    adaptiveBatchSize.onFailure();
+                }
+                ingestListener.onFailure(concurrencyLimiter.getInFlight(), ingestRequest.ingestId(), e);
+            } finally {
+                concurrencyLimiter.release(rttNanos, rejected);
+            }
+        }
+    }
+
     class FlushHelper implements Runnable {
 
         @Override
@@ -0,0 +1,249 @@
+package org.xbib.elasticsearch.helper.client;
+
+import com.carrotsearch.hppc.IntArrayList;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.DocumentRequest;
+import org.elasticsearch.action.IndicesRequest;
+import org.elasticsearch.action.admin.cluster.state.ClusterStateResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.routing.OperationRouting;
+import org.elasticsearch.cluster.routing.ShardIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.unit.TimeValue;
+import org.xbib.elasticsearch.action.ingest.IngestAction;
+import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
+import org.xbib.elasticsearch.action.ingest.IngestRequest;
+import org.xbib.elasticsearch.action.ingest.IngestResponse;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits ingest requests by the node holding the primary shard of each action and sends each part
+ * directly to that node, so the leader shard operation runs without another network hop.
+ *
+ * The routing table is taken from a cluster state which is refreshed in the background after the refresh
+ * interval, and as soon as a request fails or reports failures. Only the metadata and routing table of the
+ * indices seen in requests are fetched, so large clusters do not send the mappings of all indices.
+ * Actions which can not be routed, for example
+ * on aliases, with auto-generated ids, or on unassigned primaries, are sent as one request to any node.
+ */
+public class IngestShardRouter {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(IngestShardRouter.class.getName());
+
+    private final static String ANY_NODE = "";
+
+    private final TransportClient client;
+
+    private final OperationRouting operationRouting;
+
+    private final long refreshInterval;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final Set<String> indices = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private volatile ClusterState clusterState;
+
+    private volatile long lastRefresh;
+
+    /**
+     * Create a shard router.
+     *
+     * @param client the transport client
+     * @param refreshInterval the maximum age of the routing table
+     */
+    public IngestShardRouter(TransportClient client, TimeValue refreshInterval) {
+        this.client = client;
+        // the awareness decider is only used for search preferences
+        this.operationRouting = new OperationRouting(client.settings(), null);
+        this.refreshInterval = refreshInterval.millis();
+    }
+
+    /**
+     * Fetch the routing table of the indices seen in requests in the background, unless a fetch is
+     * already running.
+     */
+    public void refresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final String[] requestedIndices = indices.toArray(new String[indices.size()]);
+            // no indices would mean all indices
+            boolean hasIndices = requestedIndices.length > 0;
+            client.admin().cluster().prepareState().clear()
+                    .setIndices(requestedIndices)
+                    .setMetaData(hasIndices)
+                    .setRoutingTable(hasIndices)
+                    .setNodes(true)
+                    .execute(new ActionListener<ClusterStateResponse>() {
+                        @Override
+                        public void onResponse(ClusterStateResponse response) {
+                            clusterState = response.getState();
+                            // refresh again before the next request if indices were added meanwhile
+                            lastRefresh = indices.size() > requestedIndices.length ? 0L : System.currentTimeMillis();
+                            refreshing.set(false);
+                            logger.debug("routing table refreshed, cluster state version {}", clusterState.version());
+                        }
+
+                        @Override
+                        public void onFailure(Throwable e) {
+                            lastRefresh = System.currentTimeMillis();
+                            refreshing.set(false);
+                            logger.warn("unable to refresh routing table", e);
+                        }
+                    });
+        } catch (Throwable t) {
+            refreshing.set(false);
+            logger.warn("unable to refresh routing table", t);
+        }
+    }
+
+    /**
+     * Mark the routing table as outdated, so it is refreshed before the next request.
+     */
+    public void invalidate() {
+        lastRefresh = 0L;
+    }
+
+    /**
+     * Execute an ingest request, split by primary shard nodes. The responses of the parts are merged into
+     * one response. The listener fails only if all parts fail.
+     *
+     * @param request the ingest request
+     * @param listener the listener
+     */
+    public void execute(final IngestRequest request, final ActionListener<IngestResponse> listener) {
+        boolean added = false;
+        for (IndicesRequest indicesRequest : request.subRequests()) {
+            String index = ((DocumentRequest<?>) indicesRequest).index();
+            if (index != null && indices.add(index)) {
+                added = true;
+            }
+        }
+        if (added || System.currentTimeMillis() - lastRefresh > refreshInterval) {
+            refresh();
+        }
+        ClusterState state = clusterState;
+        if (state == null || request.numberOfActions() == 0) {
+            client.execute(IngestAction.INSTANCE, request, new ActionListener<IngestResponse>() {
+                @Override
+                public void onResponse(IngestResponse response) {
+                    listener.onResponse(response);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    invalidate();
+                    listener.onFailure(e);
+                }
+            });
+            return;
+        }
+        final Map<String, IngestRequest> requestsByNode = new HashMap<>();
+        Map<String, IntArrayList> positionsByNode = new HashMap<>();
+        int numberOfItems = 0;
+        for (IndicesRequest indicesRequest : request.subRequests()) {
+            ActionRequest<?> actionRequest = (ActionRequest<?>) indicesRequest;
+            String nodeId = primaryNodeId(state, (DocumentRequest<?>) actionRequest);
+            IngestRequest nodeRequest = requestsByNode.get(nodeId);
+            if (nodeRequest == null) {
+                nodeRequest = new IngestRequest()
+                        .ingestId(request.ingestId())
+                        .timeout(request.timeout())
+                        .requiredConsistency(request.requiredConsistency());
+                requestsByNode.put(nodeId, nodeRequest);
+                positionsByNode.put(nodeId, new IntArrayList());
+            }
+            nodeRequest.add(actionRequest);
+            positionsByNode.get(nodeId).add(numberOfItems++);
+        }
+        final long startTime = System.currentTimeMillis();
+        final IngestResponse ingestResponse = new IngestResponse()
+                .setIngestId(request.ingestId())
+                .setNumberOfItems(numberOfItems);
+        final AtomicInteger failedParts = new AtomicInteger();
+        final AtomicInteger responseCounter = new AtomicInteger(requestsByNode.size());
+        for (Map.Entry<String, IngestRequest> entry : requestsByNode.entrySet()) {
+            final int[] positions = positionsByNode.get(entry.getKey()).toArray();
+            ActionListener<IngestResponse> nodeListener = new ActionListener<IngestResponse>() {
+                @Override
+                public void onResponse(IngestResponse response) {
+                    ingestResponse.merge(response, positions);
+                    if (!response.getFailures().isEmpty()) {
+                        invalidate();
+                    }
+                    countDown(null);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    invalidate();
+                    failedParts.incrementAndGet();
+                    ingestResponse.addFailure(new IngestActionFailure(request.ingestId(), null, -1, null, e)
+                            .positions(positions));
+                    for (int position : positions) {
+                        ingestResponse.setItemFailed(position, null);
+                    }
+                    countDown(e);
+                }
+
+                private void countDown(Throwable e) {
+                    if (responseCounter.decrementAndGet() == 0) {
+                        if (e != null && failedParts.get() == requestsByNode.size()) {
+                            listener.onFailure(e);
+                        } else {
+                            listener.onResponse(ingestResponse.setTookInMillis(System.currentTimeMillis() - startTime));
+                        }
+                    }
+                }
+            };
+            DiscoveryNode node = ANY_NODE.equals(entry.getKey()) ? null : state.nodes().get(entry.getKey());
+            if (node != null) {
+                client.execute(node, IngestAction.INSTANCE, entry.getValue(), nodeListener);
+            } else {
+                client.execute(IngestAction.INSTANCE, entry.getValue(), nodeListener);
+            }
+        }
+    }
+
+    private String primaryNodeId(ClusterState state, DocumentRequest<?> request) {
+        if (request.index() == null || !state.metaData().hasIndex(request.index())
+                || state.routingTable().index(request.index()) == null) {
+            return ANY_NODE;
+        }
+        if (request.id() == null) {
+            // the id is generated on the cluster
+            return ANY_NODE;
+        }
+        String routing = request.routing();
+        if (routing == null && request instanceof IndexRequest) {
+            routing = ((IndexRequest) request).parent();
+        }
+        try {
+            ShardIterator shardIt = operationRouting.indexShards(state, request.index(), request.type(),
+                    request.id(), routing);
+            ShardRouting shard;
+            while ((shard = shardIt.nextOrNull()) != null) {
+                if (shard.primary()) {
+                    return shard.active() ? shard.currentNodeId() : ANY_NODE;
+                }
+            }
+        } catch (Throwable t) {
+            logger.debug("unable to route {}", t, request);
+        }
+        return ANY_NODE;
+    }
+}
@@ -0,0 +1,392 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.xbib.elasticsearch.action.ingest.IngestRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of ingest requests in memory-mapped segment files.
+ *
+ * Requests are serialized in the transport stream format of {@link IngestRequest#writeTo}. Each segment starts
+ * with the offset of the oldest record which is not acknowledged, followed by records of length, CRC32 checksum
+ * and data. Records are taken with {@link #poll()} and the offset is only moved by {@link #ack(Entry)}, after the
+ * request was answered, so requests which are not acknowledged are replayed after a restart. A request may
+ * therefore be replayed more than once (at-least-once). After a crash, records up to the first torn or corrupt
+ * record are recovered. Segments are deleted when all their records are acknowledged.
+ */
+public class IngestSpillJournal implements Closeable {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(IngestSpillJournal.class.getName());
+
+    private final static String PREFIX = "spill-";
+
+    private final static String SUFFIX = ".log";
+
+    private final static int HEADER = 8;
+
+    private final static int RECORD_HEADER = 8;
+
+    private final Path path;
+
+    private final int segmentSize;
+
+    private final LinkedList<Segment> segments = new LinkedList<>();
+
+    private final LinkedList<Entry> pending = new LinkedList<>();
+
+    // the number of requests which are not acknowledged
+    private int count;
+
+    // the number of requests which are not taken
+    private int unread;
+
+    private boolean closed;
+
+    /**
+     * Open a journal in a directory, with the records left from a former journal in this directory.
+     *
+     * @param path the directory of the journal
+     * @param segmentSize the size of a segment file in bytes
+     * @throws IOException if the journal can not be opened
+     */
+    public IngestSpillJournal(Path path, int segmentSize) throws IOException {
+        this.path = path;
+        this.segmentSize = Math.max(segmentSize, 4096);
+        Files.createDirectories(path);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        // ids are zero padded, so the name order is the order of creation
+        Collections.sort(files);
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long id = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+            Segment segment = new Segment(id, file, 0);
+            count += segment.recover();
+            segments.add(segment);
+        }
+        while (segments.size() > 1 && segments.getFirst().isCommitted()) {
+            segments.removeFirst().delete();
+        }
+        unread = count;
+        if (count > 0) {
+            logger.info("found {} spilled ingest requests in {}", count, path);
+        }
+    }
+
+    /**
+     * Append a request to the journal.
+     *
+     * @param request the request
+     * @throws IOException if the request can not be written
+     */
+    public synchronized void append(IngestRequest request) throws IOException {
+        ensureOpen();
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+        // the output may span several pages, so it is copied into one array
+        BytesRef bytes = out.bytes().toBytesRef();
+        int length = bytes.length;
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes.bytes, bytes.offset, length);
+        Segment segment = segments.isEmpty() ? null : segments.getLast();
+        if (segment == null || !segment.fits(length)) {
+            long id = segment != null ? segment.id + 1 : 0L;
+            segment = new Segment(id, path.resolve(String.format("%s%019d%s", PREFIX, id, SUFFIX)),
+                    Math.max(segmentSize, HEADER + RECORD_HEADER + length + 4));
+            segments.add(segment);
+        }
+        segment.append(bytes.bytes, bytes.offset, length, (int) crc32.getValue());
+        count++;
+        unread++;
+        notifyAll();
+    }
+
+    /**
+     * Take the oldest request of the journal which is not taken yet. The request stays in the journal until
+     * it is acknowledged with {@link #ack(Entry)}. A request which can not be read is dropped from the journal.
+     *
+     * @return the entry of the oldest request, or null if all requests are taken
+     * @throws IOException if the request can not be read
+     */
+    public synchronized Entry poll() throws IOException {
+        ensureOpen();
+        for (Segment segment : segments) {
+            if (segment.hasNext()) {
+                Entry entry = new Entry(segment, segment.readPos, segment.next());
+                pending.add(entry);
+                unread--;
+                try {
+                    entry.request = segment.read(entry.start);
+                } catch (IOException e) {
+                    ack(entry);
+                    throw e;
+                }
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Acknowledge a request taken by {@link #poll()}. The read offset is moved past all acknowledged requests
+     * which follow each other, so requests which are taken but not acknowledged are replayed after a restart.
+     *
+     * @param entry the entry
+     * @throws IOException if the journal can not be updated
+     */
+    public synchronized void ack(Entry entry) throws IOException {
+        if (closed) {
+            // the request is replayed by the next journal
+            return;
+        }
+        entry.acked = true;
+        while (!pending.isEmpty() && pending.getFirst().acked) {
+            Entry first = pending.removeFirst();
+            first.segment.commit(first.end);
+            count--;
+        }
+        while (segments.size() > 1 && segments.getFirst().isCommitted()) {
+            segments.removeFirst().delete();
+        }
+        notifyAll();
+    }
+
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Wait until a request which is not taken yet is in the journal.
+     *
+     * @param millis maximum time to wait
+     * @return true if a request can be taken
+     * @throws InterruptedException if the wait was interrupted
+     */
+    public synchronized boolean awaitNotEmpty(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        while (unread == 0 && !closed) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0L) {
+                break;
+            }
+            wait(remaining);
+        }
+        return unread > 0;
+    }
+
+    /**
+     * Wait until all requests are acknowledged.
+     *
+     * @param millis maximum time to wait
+     * @return true if the journal is empty
+     * @throws InterruptedException if the wait was interrupted
+     */
+    public synchronized boolean awaitEmpty(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        while (count > 0 && !closed) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0L) {
+                break;
+            }
+            wait(remaining);
+        }
+        return count == 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        pending.clear();
+        notifyAll();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("spill journal " + path + " is closed");
+        }
+    }
+
+    private static class Segment {
+
+        private final long id;
+
+        private final Path path;
+
+        private MappedByteBuffer buffer;
+
+        // the offset of the first record which is not acknowledged, persisted in the header
+        private int commitPos;
+
+        // the offset of the first record which is not taken
+        private int readPos;
+
+        private int writePos;
+
+        Segment(long id, Path path, int size) throws IOException {
+            this.id = id;
+            this.path = path;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                long length = size > 0 ? size : channel.size();
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            }
+            if (size > 0) {
+                buffer.putLong(0, HEADER);
+                this.commitPos = HEADER;
+                this.readPos = HEADER;
+                this.writePos = HEADER;
+            }
+        }
+
+        /**
+         * Find the read and write position of an existing segment.
+         *
+         * @return the number of unread records
+         */
+        int recover() {
+            if (buffer.capacity() < HEADER) {
+                commitPos = readPos = writePos = buffer.capacity();
+                return 0;
+            }
+            long pos = buffer.getLong(0);
+            readPos = pos >= HEADER && pos <= buffer.capacity() ? (int) pos : HEADER;
+            commitPos = readPos;
+            writePos = readPos;
+            int n = 0;
+            while (writePos + RECORD_HEADER <= buffer.capacity()) {
+                int length = buffer.getInt(writePos);
+                if (length <= 0 || writePos + RECORD_HEADER + length > buffer.capacity()) {
+                    break;
+                }
+                byte[] b = new byte[length];
+                buffer.position(writePos + RECORD_HEADER);
+                buffer.get(b);
+                CRC32 crc32 = new CRC32();
+                crc32.update(b, 0, length);
+                if ((int) crc32.getValue() != buffer.getInt(writePos + 4)) {
+                    // torn write
+                    break;
+                }
+                writePos += RECORD_HEADER + length;
+                n++;
+            }
+            return n;
+        }
+
+        boolean fits(int length) {
+            // leave room for the zero length which marks the end of the records
+            return writePos + RECORD_HEADER + length + 4 <= buffer.capacity();
+        }
+
+        void append(byte[] b, int offset, int length, int crc) {
+            buffer.position(writePos + RECORD_HEADER);
+            buffer.put(b, offset, length);
+            buffer.putInt(writePos + 4, crc);
+            buffer.putInt(writePos + RECORD_HEADER + length, 0);
+            // the length is written last, so a record is only visible when it is complete
+            buffer.putInt(writePos, length);
+            writePos += RECORD_HEADER + length;
+        }
+
+        boolean hasNext() {
+            return readPos < writePos;
+        }
+
+        /**
+         * Move the read position past the next record.
+         *
+         * @return the end of the record
+         */
+        int next() {
+            readPos += RECORD_HEADER + buffer.getInt(readPos);
+            return readPos;
+        }
+
+        IngestRequest read(int pos) throws IOException {
+            int length = buffer.getInt(pos);
+            byte[] b = new byte[length];
+            buffer.position(pos + RECORD_HEADER);
+            buffer.get(b);
+            IngestRequest request = new IngestRequest();
+            request.readFrom(StreamInput.wrap(b));
+            return request;
+        }
+
+        void commit(int pos) {
+            commitPos = pos;
+            buffer.putLong(0, commitPos);
+        }
+
+        boolean isCommitted() {
+            return commitPos == writePos;
+        }
+
+        void close() {
+            buffer.force();
+            buffer = null;
+        }
+
+        void delete() throws IOException {
+            buffer = null;
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * A request taken from the journal.
+     */
+    public static class Entry {
+
+        private final Segment segment;
+
+        private final int start;
+
+        private final int end;
+
+        private IngestRequest request;
+
+        private boolean acked;
+
+        Entry(Segment segment, int start, int end) {
+            this.segment = segment;
+            this.start = start;
+            this.end = end;
+        }
+
+        public IngestRequest request() {
+            return request;
+        }
+    }
+}
@@ -33,6 +33,7 @@ import org.xbib.elasticsearch.action.ingest.IngestRequest;
 import org.xbib.elasticsearch.action.ingest.IngestResponse;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Map;
 
@@ -51,6 +52,10 @@ public class IngestTransportClient extends BaseMetricTransportClient implements
 
     private TimeValue flushInterval = DEFAULT_FLUSH_INTERVAL;
 
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    private BulkRetryPolicy retryPolicy;
+
     private IngestProcessor ingestProcessor;
 
     private Throwable throwable;
@@ -84,6 +89,26 @@ public class IngestTransportClient extends BaseMetricTransportClient implements
         return this;
     }
 
+    /**
+     * Set the limiter for concurrent requests.
+     * @param concurrencyLimiter the concurrency limiter, or null for the maximum number of concurrent requests
+     * @return this client
+     */
+    public IngestTransportClient concurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        return this;
+    }
+
+    /**
+     * Set the policy for retrying failed ingest actions.
+     * @param retryPolicy the retry policy, or null for no retries
+     * @return this client
+     */
+    public IngestTransportClient retryPolicy(BulkRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
     @Override
     public IngestTransportClient init(ElasticsearchClient client, IngestMetric metric) {
         return this.init(findSettings(), metric);
@@ -113,6 +138,7 @@ public class IngestTransportClient extends BaseMetricTransportClient implements
                 metric.getCurrentIngest().dec();
                 metric.getSucceeded().inc(response.successSize());
                 metric.getFailed().inc(response.getFailures().size());
+                metric.getTagged().record(response);
                 logger.debug("after ingest [{}] [succeeded={}] [failed={}] [{}ms] [leader={}] [replica={}] [concurrent requests={}]",
                         response.ingestId(),
                         metric.getSucceeded().getCount(),
@@ -146,6 +172,30 @@ public class IngestTransportClient extends BaseMetricTransportClient implements
                 .maxVolumePerRequest(maxVolumePerRequest)
                 .flushInterval(flushInterval)
                 .listener(ingestListener);
+        if (retryPolicy != null) {
+            ingestProcessor.retryPolicy(retryPolicy.metric(metric));
+        }
+        if (concurrencyLimiter != null) {
+            ingestProcessor.concurrencyLimiter(concurrencyLimiter);
+            metric.setConcurrencyLimit(concurrencyLimiter);
+        }
+        if (settings.getAsBoolean(ClientBuilder.ADAPTIVE_BATCH_SIZE, false)) {
+            ingestProcessor.adaptiveBatchSize(new AdaptiveBatchSize(maxActionsPerRequest, maxVolumePerRequest.bytes())
+                    .targetLatency(settings.getAsTime(ClientBuilder.ADAPTIVE_LATENCY_LOW, ClientBuilder.DEFAULT_ADAPTIVE_LATENCY_LOW),
+                            settings.getAsTime(ClientBuilder.ADAPTIVE_LATENCY_HIGH, ClientBuilder.DEFAULT_ADAPTIVE_LATENCY_HIGH))
+                    .metric(metric));
+        }
+        String spillPath = settings.get(ClientBuilder.SPILL_PATH);
+        if (spillPath != null) {
+            try {
+                ingestProcessor.spillJournal(new IngestSpillJournal(Paths.get(spillPath),
+                                (int) settings.getAsBytesSize(ClientBuilder.SPILL_SEGMENT_SIZE,
+                                        ClientBuilder.DEFAULT_SPILL_SEGMENT_SIZE).bytes()),
+                        settings.getAsTime(ClientBuilder.SPILL_DEADLINE, ClientBuilder.DEFAULT_SPILL_DEADLINE));
+            } catch (IOException e) {
+                logger.error("unable to open spill journal " + spillPath, e);
+            }
+        }
         try {
             Collection<InetSocketTransportAddress> addrs = findAddresses(settings);
             if (!connect(addrs, settings.getAsBoolean("autodiscover", false))) {
@@ -155,6 +205,13 @@ public class IngestTransportClient extends BaseMetricTransportClient implements
         } catch (IOException e) {
             logger.error(e.getMessage(), e);
         }
+        if (settings.getAsBoolean(ClientBuilder.SHARD_ROUTING, false)) {
+            IngestShardRouter shardRouter = new IngestShardRouter(client,
+                    settings.getAsTime(ClientBuilder.SHARD_ROUTING_REFRESH_INTERVAL,
+                            ClientBuilder.DEFAULT_SHARD_ROUTING_REFRESH_INTERVAL));
+            shardRouter.refresh();
+            ingestProcessor.shardRouter(shardRouter);
+        }
         this.closed = false;
         return this;
     }
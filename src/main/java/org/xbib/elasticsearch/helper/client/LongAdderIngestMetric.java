@@ -16,8 +16,10 @@
 package org.xbib.elasticsearch.helper.client;
 
 import org.xbib.metrics.Count;
+import org.xbib.metrics.Gauge;
 import org.xbib.metrics.CountMetric;
 import org.xbib.metrics.Meter;
+import org.xbib.metrics.MeterTicker;
 import org.xbib.metrics.Metered;
 
 import java.util.HashMap;
@@ -47,6 +49,18 @@ public class LongAdderIngestMetric implements IngestMetric {
 
     private final Count failed = new CountMetric();
 
+    private final Count retried = new CountMetric();
+
+    private final Count retriesExhausted = new CountMetric();
+
+    private final TaggedIngestMetric tagged = new TaggedIngestMetric();
+
+    private volatile int maxActionsPerRequest;
+
+    private volatile long maxVolumePerRequest;
+
+    private volatile Gauge<Integer> concurrencyLimit;
+
     private Long started;
 
     private Long stopped;
@@ -86,10 +100,53 @@ public class LongAdderIngestMetric implements IngestMetric {
         return failed;
     }
 
+    @Override
+    public Count getRetried() {
+        return retried;
+    }
+
+    @Override
+    public Count getRetriesExhausted() {
+        return retriesExhausted;
+    }
+
+    @Override
+    public TaggedIngestMetric getTagged() {
+        return tagged;
+    }
+
+    @Override
+    public LongAdderIngestMetric setBatchSize(int maxActionsPerRequest, long maxVolumePerRequest) {
+        this.maxActionsPerRequest = maxActionsPerRequest;
+        this.maxVolumePerRequest = maxVolumePerRequest;
+        return this;
+    }
+
+    @Override
+    public int getMaxActionsPerRequest() {
+        return maxActionsPerRequest;
+    }
+
+    @Override
+    public long getMaxVolumePerRequest() {
+        return maxVolumePerRequest;
+    }
+
+    @Override
+    public LongAdderIngestMetric setConcurrencyLimit(Gauge<Integer> concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+        return this;
+    }
+
+    @Override
+    public Gauge<Integer> getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
     @Override
     public LongAdderIngestMetric start() {
         this.started = System.nanoTime();
-        this.totalIngest.spawn(5L);
+        this.totalIngest.spawn(MeterTicker.getDefault());
         return this;
     }
 
@@ -0,0 +1,107 @@
+package org.xbib.elasticsearch.helper.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.xbib.metrics.MetricRegistry;
+import org.xbib.metrics.OpenMetricsWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A lightweight HTTP endpoint in the client which serves the metrics of a registry in the OpenMetrics
+ * text format at <code>/metrics</code>, for scraping by Prometheus. The response is streamed with
+ * chunked transfer encoding.
+ *
+ * <pre>
+ * MetricsHttpServer server = new MetricsHttpServer(metric.getTagged().getRegistry(),
+ *     new InetSocketAddress(9400)).start();
+ * </pre>
+ */
+public class MetricsHttpServer implements Closeable {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(MetricsHttpServer.class.getName());
+
+    private final MetricRegistry registry;
+
+    private final InetSocketAddress address;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    public MetricsHttpServer(MetricRegistry registry, InetSocketAddress address) {
+        this.registry = registry;
+        this.address = address;
+    }
+
+    public synchronized MetricsHttpServer start() throws IOException {
+        if (server != null) {
+            return this;
+        }
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "metrics-http-server");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        HttpServer httpServer = HttpServer.create(address, 0);
+        httpServer.createContext("/metrics", new MetricsHandler());
+        httpServer.setExecutor(executor);
+        httpServer.start();
+        this.server = httpServer;
+        logger.info("serving metrics at http://{}:{}/metrics",
+                httpServer.getAddress().getHostString(), httpServer.getAddress().getPort());
+        return this;
+    }
+
+    /**
+     * @return the address the server is bound to, or null if not started
+     */
+    public synchronized InetSocketAddress getAddress() {
+        return server != null ? server.getAddress() : null;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+            server = null;
+        }
+    }
+
+    private class MetricsHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Type", OpenMetricsWriter.CONTENT_TYPE);
+                // length 0 means chunked
+                exchange.sendResponseHeaders(200, 0);
+                Writer writer = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+                new OpenMetricsWriter(writer).write(registry);
+            } catch (IOException e) {
+                logger.warn("unable to serve metrics", e);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
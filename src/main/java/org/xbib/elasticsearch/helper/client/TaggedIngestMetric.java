@@ -0,0 +1,268 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.xbib.elasticsearch.action.ingest.IngestResponse;
+import org.xbib.elasticsearch.action.ingest.IngestShardResult;
+import org.xbib.metrics.CountMetric;
+import org.xbib.metrics.Histogram;
+import org.xbib.metrics.LogBucketReservoir;
+import org.xbib.metrics.MetricName;
+import org.xbib.metrics.MetricRegistry;
+import org.xbib.metrics.MonotonicCountMetric;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ingest metrics per index and per shard, registered in a {@link MetricRegistry} under names
+ * tagged with <code>index</code> and <code>shard</code>.
+ *
+ * The metrics of an index or a shard are created and registered once, and looked up by index name and
+ * shard number afterwards, so recording does not create metric names. The number of series is bounded,
+ * indices beyond the bound are recorded in a series tagged with index <code>_other</code>, and shards beyond
+ * the bound in a series tagged with index <code>_other</code> and shard <code>_other</code>, so index and
+ * shard totals are never mixed.
+ */
+public class TaggedIngestMetric {
+
+    public static final String OTHER = "_other";
+
+    public static final int DEFAULT_MAX_SERIES = 1000;
+
+    private static final MetricName SUCCEEDED = MetricName.build("ingest", "succeeded");
+
+    private static final MetricName FAILED = MetricName.build("ingest", "failed");
+
+    private static final MetricName BYTES = MetricName.build("ingest", "bytes");
+
+    private static final MetricName LATENCY = MetricName.build("ingest", "latency");
+
+    private final MetricRegistry registry;
+
+    private final int maxSeries;
+
+    private final AtomicInteger numberOfSeries = new AtomicInteger();
+
+    private final ConcurrentMap<String, IndexSeries> indices = new ConcurrentHashMap<>();
+
+    private final Series other;
+
+    private final Series otherShard;
+
+    public TaggedIngestMetric() {
+        this(new MetricRegistry(), DEFAULT_MAX_SERIES);
+    }
+
+    /**
+     * Create tagged ingest metrics.
+     *
+     * @param registry  the registry for the metrics
+     * @param maxSeries the maximum number of index and shard series
+     */
+    public TaggedIngestMetric(MetricRegistry registry, int maxSeries) {
+        this.registry = registry;
+        this.maxSeries = maxSeries;
+        this.other = new Series().register(registry, OTHER, null);
+        this.otherShard = new Series().register(registry, OTHER, OTHER);
+    }
+
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @param index the index name
+     * @return the metrics of the index
+     */
+    public Series index(String index) {
+        IndexSeries indexSeries = indexSeries(index);
+        return indexSeries != null ? indexSeries.series : other;
+    }
+
+    /**
+     * @param index the index name
+     * @param shard the shard number
+     * @return the metrics of the shard
+     */
+    public Series shard(String index, int shard) {
+        IndexSeries indexSeries = indexSeries(index);
+        return indexSeries != null ? indexSeries.shard(shard) : otherShard;
+    }
+
+    /**
+     * Record the shard results of an ingest response, per shard and per index.
+     *
+     * @param response the ingest response
+     */
+    public void record(IngestResponse response) {
+        synchronized (response.getShardResults()) {
+            for (IngestShardResult result : response.getShardResults()) {
+                String index = result.shardId().getIndex();
+                int succeeded = result.successCount();
+                int failed = result.failureCount();
+                shard(index, result.shardId().id()).record(succeeded, failed, result.sizeInBytes(), result.tookInMillis());
+                index(index).record(succeeded, failed, result.sizeInBytes(), result.tookInMillis());
+            }
+        }
+    }
+
+    /**
+     * Record the items of a bulk response per index. The bulk response does not tell the shards.
+     *
+     * @param request  the bulk request
+     * @param response the bulk response
+     */
+    public void record(BulkRequest request, BulkResponse response) {
+        List<ActionRequest> requests = request.requests();
+        BulkItemResponse[] items = response.getItems();
+        // succeeded, failed, bytes per index
+        Map<String, long[]> counts = new HashMap<>();
+        for (int i = 0; i < items.length; i++) {
+            long[] c = counts.get(items[i].getIndex());
+            if (c == null) {
+                c = new long[3];
+                counts.put(items[i].getIndex(), c);
+            }
+            c[items[i].isFailed() ? 1 : 0]++;
+            if (i < requests.size() && requests.get(i) instanceof IndexRequest) {
+                IndexRequest indexRequest = (IndexRequest) requests.get(i);
+                c[2] += indexRequest.source() != null ? indexRequest.source().length() : 0;
+            }
+        }
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            long[] c = entry.getValue();
+            index(entry.getKey()).record((int) c[0], (int) c[1], c[2], response.getTookInMillis());
+        }
+    }
+
+    private IndexSeries indexSeries(String index) {
+        if (index == null) {
+            return null;
+        }
+        IndexSeries indexSeries = indices.get(index);
+        if (indexSeries == null) {
+            if (!reserve()) {
+                return null;
+            }
+            IndexSeries newIndexSeries = new IndexSeries(index);
+            indexSeries = indices.putIfAbsent(index, newIndexSeries);
+            if (indexSeries == null) {
+                indexSeries = newIndexSeries;
+                indexSeries.series.register(registry, index, null);
+            } else {
+                numberOfSeries.decrementAndGet();
+            }
+        }
+        return indexSeries;
+    }
+
+    private boolean reserve() {
+        if (numberOfSeries.incrementAndGet() > maxSeries) {
+            numberOfSeries.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The series of an index, and of its shards, indexed by shard number.
+     */
+    private class IndexSeries {
+
+        private final String index;
+
+        private final Series series = new Series();
+
+        private volatile Series[] shards = new Series[0];
+
+        IndexSeries(String index) {
+            this.index = index;
+        }
+
+        Series shard(int shard) {
+            Series[] s = shards;
+            if (shard < s.length && s[shard] != null) {
+                return s[shard];
+            }
+            synchronized (this) {
+                s = shards;
+                if (shard >= s.length) {
+                    Series[] newShards = new Series[shard + 1];
+                    System.arraycopy(s, 0, newShards, 0, s.length);
+                    s = newShards;
+                }
+                if (s[shard] == null) {
+                    if (!reserve()) {
+                        return otherShard;
+                    }
+                    s[shard] = new Series().register(registry, index, Integer.toString(shard));
+                }
+                shards = s;
+                return s[shard];
+            }
+        }
+    }
+
+    /**
+     * The metrics of an index or a shard.
+     */
+    public static class Series {
+
+        private final CountMetric succeeded = new MonotonicCountMetric();
+
+        private final CountMetric failed = new MonotonicCountMetric();
+
+        private final CountMetric bytes = new MonotonicCountMetric();
+
+        // small buckets, as there may be many series
+        private final Histogram latency = new Histogram(new LogBucketReservoir(3, 2));
+
+        Series register(MetricRegistry registry, String index, String shard) {
+            String[] tags = shard != null ? new String[]{"index", index, "shard", shard} : new String[]{"index", index};
+            registry.register(SUCCEEDED.tagged(tags), succeeded);
+            registry.register(FAILED.tagged(tags), failed);
+            registry.register(BYTES.tagged(tags), bytes);
+            registry.register(LATENCY.tagged(tags), latency);
+            return this;
+        }
+
+        /**
+         * Record the outcome of a request.
+         *
+         * @param succeeded    the number of succeeded actions
+         * @param failed       the number of failed actions
+         * @param sizeInBytes  the size of the actions
+         * @param tookInMillis the time the request took
+         */
+        public void record(int succeeded, int failed, long sizeInBytes, long tookInMillis) {
+            this.succeeded.inc(succeeded);
+            this.failed.inc(failed);
+            this.bytes.inc(sizeInBytes);
+            this.latency.inc(tookInMillis);
+        }
+
+        public CountMetric getSucceeded() {
+            return succeeded;
+        }
+
+        public CountMetric getFailed() {
+            return failed;
+        }
+
+        public CountMetric getBytes() {
+            return bytes;
+        }
+
+        public Histogram getLatency() {
+            return latency;
+        }
+    }
+}
@@ -430,6 +430,54 @@ public class TransportClient extends AbstractClient {
         }
     }
 
+    /**
+     * Execute an action on a preferred node, for example the node holding the primary shard of the request.
+     * If the preferred node is not connected, the action is executed like any other action. If the connection
+     * fails, the other connected nodes are tried.
+     *
+     * @param preferredNode the preferred node
+     * @param action the action
+     * @param request the request
+     * @param listener the listener
+     * @param <Request> the request type
+     * @param <Response> the response type
+     * @param <RequestBuilder> the request builder type
+     */
+    @SuppressWarnings("unchecked")
+    public <Request extends ActionRequest, Response extends ActionResponse,
+            RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+    void execute(DiscoveryNode preferredNode, Action<Request, Response, RequestBuilder> action, final Request request,
+                 ActionListener<Response> listener) {
+        List<DiscoveryNode> nodes = this.nodes;
+        int index = -1;
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i).id().equals(preferredNode.id())) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            execute(action, request, listener);
+            return;
+        }
+        final TransportActionNodeProxy<Request, Response> proxyAction = proxyActionMap.getProxies().get(action);
+        if (proxyAction == null) {
+            throw new IllegalStateException("undefined action " + action);
+        }
+        NodeListenerCallback<Response> callback = new NodeListenerCallback<Response>() {
+            @Override
+            public void doWithNode(DiscoveryNode node, ActionListener<Response> listener) {
+                proxyAction.execute(node, request, listener);
+            }
+        };
+        RetryListener<Response> retryListener = new RetryListener<>(callback, listener, nodes, index);
+        try {
+            callback.doWithNode(nodes.get(index), retryListener);
+        } catch (Throwable t) {
+            listener.onFailure(t);
+        }
+    }
+
     interface NodeListenerCallback<Response> {
 
         void doWithNode(DiscoveryNode node, ActionListener<Response> listener);
@@ -75,13 +75,13 @@ public abstract class HttpAction<Request extends ActionRequest, Response extends
     }
 
     protected HttpRequest newRequest(HttpMethod method, URL url, String path, BytesReference content) {
-        return newRequest(method, url, path, content != null ? ChannelBuffers.copiedBuffer(content.toBytes()) : null);
+        return newRequest(method, url, path, content != null ? content.toChannelBuffer() : null);
     }
 
     protected HttpRequest newRequest(HttpMethod method, URL url, String path, ChannelBuffer buffer) {
         HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, path);
         request.headers().add(HttpHeaders.Names.HOST, url.getHost());
-        request.headers().add(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+        request.headers().add(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
         request.headers().add(HttpHeaders.Names.ACCEPT_ENCODING, HttpHeaders.Values.GZIP);
         if (buffer != null) {
             request.setContent(buffer);
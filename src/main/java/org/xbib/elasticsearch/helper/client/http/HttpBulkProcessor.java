@@ -15,12 +15,14 @@ import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.common.util.concurrent.FutureUtils;
+import org.xbib.elasticsearch.helper.client.BulkFailures;
+import org.xbib.elasticsearch.helper.client.ConcurrencyLimiter;
+import org.xbib.elasticsearch.helper.client.FixedConcurrencyLimiter;
 
 import java.io.Closeable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -71,6 +73,7 @@ public class HttpBulkProcessor implements Closeable {
         private int bulkActions = 1000;
         private ByteSizeValue bulkSize = new ByteSizeValue(5, ByteSizeUnit.MB);
         private TimeValue flushInterval = null;
+        private ConcurrencyLimiter concurrencyLimiter = null;
 
         /**
          * Creates a builder of bulk processor with the client to use and the listener that will be used
@@ -139,12 +142,24 @@ public class HttpBulkProcessor implements Closeable {
             return this;
         }
 
+        /**
+         * Sets a limiter for the concurrent requests, overriding {@link #setConcurrentRequests(int)}.
+         * Defaults to a fixed limit of the number of concurrent requests.
+         * @param concurrencyLimiter the concurrency limiter
+         * @return this builder
+         */
+        public Builder setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+            this.concurrencyLimiter = concurrencyLimiter;
+            return this;
+        }
+
         /**
          * Builds a new bulk processor.
          * @return a HTTP bulk processor
          */
         public HttpBulkProcessor build() {
-            return new HttpBulkProcessor(client, listener, name, concurrentRequests, bulkActions, bulkSize, flushInterval);
+            return new HttpBulkProcessor(client, listener, name, concurrentRequests, bulkActions, bulkSize, flushInterval,
+                    concurrencyLimiter);
         }
     }
 
@@ -163,7 +178,7 @@ public class HttpBulkProcessor implements Closeable {
     private final int bulkActions;
     private final long bulkSize;
 
-    private final Semaphore semaphore;
+    private final ConcurrencyLimiter concurrencyLimiter;
     private final ScheduledThreadPoolExecutor scheduler;
     private final ScheduledFuture scheduledFuture;
 
@@ -173,14 +188,17 @@ public class HttpBulkProcessor implements Closeable {
 
     private volatile boolean closed = false;
 
-    HttpBulkProcessor(Client client, Listener listener, @Nullable String name, int concurrentRequests, int bulkActions, ByteSizeValue bulkSize, @Nullable TimeValue flushInterval) {
+    HttpBulkProcessor(Client client, Listener listener, @Nullable String name, int concurrentRequests, int bulkActions,
+                      ByteSizeValue bulkSize, @Nullable TimeValue flushInterval,
+                      @Nullable ConcurrencyLimiter concurrencyLimiter) {
         this.client = client;
         this.listener = listener;
-        this.concurrentRequests = concurrentRequests;
+        this.concurrentRequests = concurrencyLimiter != null ? Math.max(concurrentRequests, 1) : concurrentRequests;
         this.bulkActions = bulkActions;
         this.bulkSize = bulkSize.bytes();
 
-        this.semaphore = new Semaphore(concurrentRequests);
+        this.concurrencyLimiter = concurrencyLimiter != null ? concurrencyLimiter :
+                new FixedConcurrencyLimiter(Math.max(concurrentRequests, 1));
         this.bulkRequest = new BulkRequest();
 
         if (flushInterval != null) {
@@ -233,11 +251,7 @@ public class HttpBulkProcessor implements Closeable {
         if (this.concurrentRequests < 1) {
             return true;
         }
-        if (semaphore.tryAcquire(this.concurrentRequests, timeout, unit)) {
-            semaphore.release(this.concurrentRequests);
-            return true;
-        }
-        return false;
+        return concurrencyLimiter.awaitIdle(timeout, unit);
     }
 
     /**
@@ -325,16 +339,20 @@ public class HttpBulkProcessor implements Closeable {
             }
         } else {
             boolean success = false;
+            boolean acquired = false;
             try {
                 listener.beforeBulk(executionId, bulkRequest);
-                semaphore.acquire();
+                concurrencyLimiter.acquire();
+                acquired = true;
+                final long startNanos = System.nanoTime();
                 client.execute(BulkAction.INSTANCE, bulkRequest, new ActionListener<BulkResponse>() {
                     @Override
                     public void onResponse(BulkResponse response) {
                         try {
                             listener.afterBulk(executionId, bulkRequest, response);
                         } finally {
-                            semaphore.release();
+                            concurrencyLimiter.release(System.nanoTime() - startNanos,
+                                    BulkFailures.hasRejections(response));
                         }
                     }
 
@@ -343,7 +361,7 @@ public class HttpBulkProcessor implements Closeable {
                         try {
                             listener.afterBulk(executionId, bulkRequest, e);
                         } finally {
-                            semaphore.release();
+                            concurrencyLimiter.release(System.nanoTime() - startNanos, BulkFailures.isRejected(e));
                         }
                     }
                 });
@@ -354,8 +372,8 @@ public class HttpBulkProcessor implements Closeable {
             } catch (Throwable t) {
                 listener.afterBulk(executionId, bulkRequest, t);
             } finally {
-                 if (!success) {
-                     semaphore.release();
+                 if (!success && acquired) {
+                     concurrencyLimiter.release();
                  }
             }
         }
@@ -0,0 +1,243 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A bounded pool of persistent HTTP/1.1 channels to a host.
+ *
+ * Channels are acquired without blocking: the listener is notified with an idle channel, a new channel when the
+ * pool is not exhausted, or the next released channel otherwise. Idle channels are reused in LIFO order, so
+ * the pool shrinks back to the warm channels, and are closed after the idle timeout.
+ */
+public class HttpChannelPool {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(HttpChannelPool.class.getName());
+
+    private final ClientBootstrap bootstrap;
+
+    private final InetSocketAddress address;
+
+    private final int maxConnections;
+
+    private final long idleTimeoutMillis;
+
+    private final Deque<IdleChannel> idle = new ArrayDeque<>();
+
+    private final Deque<Listener> waiters = new ArrayDeque<>();
+
+    private final ChannelFutureListener closeListener = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+            closed(future.getChannel());
+        }
+    };
+
+    private int connections;
+
+    private boolean closed;
+
+    public interface Listener {
+
+        void onChannel(Channel channel);
+
+        void onFailure(Throwable t);
+    }
+
+    public HttpChannelPool(ClientBootstrap bootstrap, InetSocketAddress address, int maxConnections, long idleTimeoutMillis) {
+        this.bootstrap = bootstrap;
+        this.address = address;
+        this.maxConnections = Math.max(maxConnections, 1);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Acquire a channel. The listener may be notified from the calling thread or from a network thread.
+     *
+     * @param listener the listener for the channel
+     */
+    public void acquire(Listener listener) {
+        Channel channel = null;
+        boolean connect = false;
+        boolean rejected = false;
+        synchronized (this) {
+            if (closed) {
+                rejected = true;
+            } else {
+                while (channel == null && !idle.isEmpty()) {
+                    IdleChannel idleChannel = idle.pollFirst();
+                    // health check, the server may have closed the connection in the meantime
+                    if (idleChannel.channel.isConnected()) {
+                        channel = idleChannel.channel;
+                    }
+                }
+                if (channel == null) {
+                    if (connections < maxConnections) {
+                        connections++;
+                        connect = true;
+                    } else {
+                        waiters.addLast(listener);
+                    }
+                }
+            }
+        }
+        if (rejected) {
+            listener.onFailure(new IOException("channel pool for " + address + " is closed"));
+        } else if (channel != null) {
+            listener.onChannel(channel);
+        } else if (connect) {
+            connect(listener);
+        }
+    }
+
+    /**
+     * Release a channel to the pool.
+     *
+     * @param channel the channel
+     * @param reusable true if the channel can be used for another request, false if it must be closed
+     */
+    public void release(Channel channel, boolean reusable) {
+        Listener waiter = null;
+        synchronized (this) {
+            if (reusable && !closed && channel.isConnected()) {
+                waiter = waiters.pollFirst();
+                if (waiter == null) {
+                    idle.addFirst(new IdleChannel(channel, System.currentTimeMillis()));
+                    return;
+                }
+            }
+        }
+        if (waiter != null) {
+            waiter.onChannel(channel);
+        } else {
+            channel.close();
+        }
+    }
+
+    /**
+     * Close channels which have been idle longer than the idle timeout.
+     */
+    public void evict() {
+        List<Channel> expired = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Iterator<IdleChannel> it = idle.descendingIterator();
+            while (it.hasNext()) {
+                IdleChannel idleChannel = it.next();
+                if (now - idleChannel.since < idleTimeoutMillis) {
+                    break;
+                }
+                it.remove();
+                expired.add(idleChannel.channel);
+            }
+        }
+        for (Channel channel : expired) {
+            logger.debug("closing idle channel {}", channel);
+            channel.close();
+        }
+    }
+
+    public synchronized int getConnections() {
+        return connections;
+    }
+
+    public synchronized int getIdleConnections() {
+        return idle.size();
+    }
+
+    public void close() {
+        List<Channel> channels = new ArrayList<>();
+        List<Listener> listeners;
+        synchronized (this) {
+            closed = true;
+            for (IdleChannel idleChannel : idle) {
+                channels.add(idleChannel.channel);
+            }
+            idle.clear();
+            listeners = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        for (Channel channel : channels) {
+            channel.close().awaitUninterruptibly();
+        }
+        for (Listener listener : listeners) {
+            listener.onFailure(new IOException("channel pool for " + address + " is closed"));
+        }
+    }
+
+    private void connect(final Listener listener) {
+        bootstrap.connect(address).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (future.isSuccess()) {
+                    future.getChannel().getCloseFuture().addListener(closeListener);
+                    listener.onChannel(future.getChannel());
+                } else {
+                    logger.error("can't connect to {}", address);
+                    // the host is not reachable, do not let waiters wait for a released channel
+                    List<Listener> listeners;
+                    synchronized (HttpChannelPool.this) {
+                        connections--;
+                        listeners = new ArrayList<>(waiters);
+                        waiters.clear();
+                    }
+                    listener.onFailure(future.getCause());
+                    for (Listener waiter : listeners) {
+                        waiter.onFailure(future.getCause());
+                    }
+                }
+            }
+        });
+    }
+
+    private void closed(Channel channel) {
+        Listener waiter = null;
+        synchronized (this) {
+            connections--;
+            Iterator<IdleChannel> it = idle.iterator();
+            while (it.hasNext()) {
+                if (it.next().channel == channel) {
+                    it.remove();
+                    break;
+                }
+            }
+            if (!closed && connections < maxConnections) {
+                waiter = waiters.pollFirst();
+                if (waiter != null) {
+                    connections++;
+                }
+            }
+        }
+        if (waiter != null) {
+            connect(waiter);
+        }
+    }
+
+    private static class IdleChannel {
+
+        final Channel channel;
+
+        final long since;
+
+        IdleChannel(Channel channel, long since) {
+            this.channel = channel;
+            this.since = since;
+        }
+    }
+}
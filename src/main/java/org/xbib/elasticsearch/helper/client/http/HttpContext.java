@@ -24,6 +24,8 @@ public class HttpContext<Request extends ActionRequest, Response extends ActionR
 
     HttpAction httpAction;
 
+    HttpEndpoint endpoint;
+
     HttpRequest httpRequest;
 
     HttpResponse httpResponse;
@@ -34,6 +36,10 @@ public class HttpContext<Request extends ActionRequest, Response extends ActionR
         return channel;
     }
 
+    public Request getRequest() {
+        return request;
+    }
+
     public HttpRequest getHttpRequest() {
         return httpRequest;
     }
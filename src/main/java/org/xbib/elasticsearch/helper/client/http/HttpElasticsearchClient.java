@@ -20,13 +20,16 @@ import org.elasticsearch.action.search.SearchAction;
 import org.elasticsearch.client.support.AbstractClient;
 import org.elasticsearch.client.support.Headers;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
@@ -35,6 +38,7 @@ import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
 import org.jboss.netty.handler.codec.http.HttpClientCodec;
 import org.jboss.netty.handler.codec.http.HttpContentDecompressor;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.elasticsearch.action.admin.indices.create.HttpCreateIndexAction;
 import org.elasticsearch.action.bulk.HttpBulkAction;
@@ -44,9 +48,13 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
 
 public class HttpElasticsearchClient extends AbstractClient {
 
@@ -54,6 +62,10 @@ public class HttpElasticsearchClient extends AbstractClient {
 
     final Map<Channel, HttpContext> contextMap;
 
+    private final List<HttpEndpoint> endpoints;
+
+    private final ScheduledFuture<?> evictionFuture;
+
     static class ActionEntry<Request extends ActionRequest, Response extends ActionResponse> {
         public final GenericAction<Request, Response> action;
         public final HttpAction<Request, Response> httpAction;
@@ -66,40 +78,57 @@ public class HttpElasticsearchClient extends AbstractClient {
 
     ClientBootstrap bootstrap;
 
-    URL url;
-
     public static class Builder {
 
         HttpElasticsearchClient client;
 
         Settings settings;
 
-        URL url;
+        List<URL> urls = new ArrayList<>();
 
-        String host;
+        String[] hosts;
 
         Integer port;
 
         Builder(Settings settings) {
             this.settings = settings;
-            try {
-                this.url = settings.get("url") != null ? new URL(settings.get("url")) : null;
-            } catch (MalformedURLException e) {
-                // ignore
+            for (String s : settings.getAsArray("url")) {
+                try {
+                    urls.add(new URL(s));
+                } catch (MalformedURLException e) {
+                    // ignore
+                }
             }
-            if (url == null) {
-                this.host = settings.get("host", "127.0.0.1");
+            if (urls.isEmpty()) {
+                this.hosts = settings.getAsArray("host", new String[]{"127.0.0.1"});
                 this.port = settings.getAsInt("port", 9200);
             }
         }
 
         public Builder url(URL base) {
-            this.url = base;
+            this.urls = new ArrayList<>();
+            urls.add(base);
+            return this;
+        }
+
+        /**
+         * Set the base URLs of the HTTP nodes. Requests are balanced over the nodes.
+         *
+         * @param urls the base URLs
+         * @return this builder
+         */
+        public Builder urls(List<URL> urls) {
+            this.urls = new ArrayList<>(urls);
             return this;
         }
 
         public Builder host(String host) {
-            this.host = host;
+            this.hosts = new String[]{host};
+            return this;
+        }
+
+        public Builder hosts(String... hosts) {
+            this.hosts = hosts;
             return this;
         }
 
@@ -109,18 +138,20 @@ public class HttpElasticsearchClient extends AbstractClient {
         }
 
         public HttpElasticsearchClient build() {
-            if (url == null && host != null && port != null) {
-                try {
-                    url = new URL("http://" + host + ":" + port);
-                } catch (MalformedURLException e) {
-                    throw new IllegalArgumentException("malformed url: " + host + ":" + port);
+            if (urls.isEmpty() && hosts != null && port != null) {
+                for (String host : hosts) {
+                    try {
+                        urls.add(new URL("http://" + host + ":" + port));
+                    } catch (MalformedURLException e) {
+                        throw new IllegalArgumentException("malformed url: " + host + ":" + port);
+                    }
                 }
             }
-            if (url == null) {
+            if (urls.isEmpty()) {
                 throw new IllegalArgumentException("no base URL given");
             }
             ThreadPool threadpool = new ThreadPool("http_client_pool");
-            client = new HttpElasticsearchClient(settings, threadpool, Headers.EMPTY, url);
+            client = new HttpElasticsearchClient(settings, threadpool, Headers.EMPTY, urls);
 
             client.registerAction(BulkAction.INSTANCE, HttpBulkAction.class);
             client.registerAction(CreateIndexAction.INSTANCE, HttpCreateIndexAction.class);
@@ -137,22 +168,85 @@ public class HttpElasticsearchClient extends AbstractClient {
         return new Builder(settings);
     }
 
-    private HttpElasticsearchClient(Settings settings, ThreadPool threadPool, Headers headers, URL url) {
+    private HttpElasticsearchClient(Settings settings, ThreadPool threadPool, Headers headers, List<URL> urls) {
         super(settings, threadPool, headers);
-        this.contextMap = Maps.newHashMap();
+        this.contextMap = Maps.newConcurrentMap();
         this.bootstrap = new ClientBootstrap(new NioClientSocketChannelFactory(
                 Executors.newCachedThreadPool(),
                 Executors.newCachedThreadPool()));
         bootstrap.setPipelineFactory(new HttpClientPipelineFactory());
         bootstrap.setOption("tcpNoDelay", true);
-        this.url = url;
+        bootstrap.setOption("keepAlive", true);
+        bootstrap.setOption("connectTimeoutMillis", settings.getAsInt("http.client.timeout", 5000));
+        TimeValue idleTimeout = settings.getAsTime("http.client.idletimeout", TimeValue.timeValueSeconds(60));
+        int maxConnections = settings.getAsInt("http.client.maxconnections", 8);
+        int maxFailures = settings.getAsInt("http.client.maxfailures", 3);
+        TimeValue ejectTime = settings.getAsTime("http.client.ejecttime", TimeValue.timeValueSeconds(10));
+        List<HttpEndpoint> list = new ArrayList<>();
+        for (URL url : urls) {
+            HttpChannelPool channelPool = new HttpChannelPool(bootstrap,
+                    new InetSocketAddress(url.getHost(), url.getPort()), maxConnections, idleTimeout.millis());
+            list.add(new HttpEndpoint(url, channelPool, maxFailures, ejectTime.millis()));
+        }
+        this.endpoints = Collections.unmodifiableList(list);
+        this.evictionFuture = threadPool.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (HttpEndpoint endpoint : endpoints) {
+                    endpoint.getChannelPool().evict();
+                }
+            }
+        }, idleTimeout);
+    }
+
+    public List<HttpEndpoint> getEndpoints() {
+        return endpoints;
     }
 
     @Override
     public void close() {
+        evictionFuture.cancel(false);
+        for (HttpEndpoint endpoint : endpoints) {
+            endpoint.getChannelPool().close();
+        }
         bootstrap.releaseExternalResources();
     }
 
+    /**
+     * Select the available endpoint with the lowest latency weighted by outstanding requests.
+     * If all endpoints are ejected, the endpoint whose ejection expires first is probed.
+     *
+     * @param exclude an endpoint to avoid, or null
+     * @return the endpoint
+     */
+    HttpEndpoint selectEndpoint(HttpEndpoint exclude) {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        long now = System.currentTimeMillis();
+        HttpEndpoint best = null;
+        double bestCost = Double.MAX_VALUE;
+        HttpEndpoint ejected = null;
+        for (HttpEndpoint endpoint : endpoints) {
+            if (endpoint == exclude) {
+                continue;
+            }
+            if (endpoint.isAvailable(now)) {
+                double cost = endpoint.cost();
+                if (cost < bestCost) {
+                    best = endpoint;
+                    bestCost = cost;
+                }
+            } else if (ejected == null || endpoint.getEjectedUntil() < ejected.getEjectedUntil()) {
+                ejected = endpoint;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        return ejected != null ? ejected : exclude;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>> void doExecute(Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
@@ -160,32 +254,50 @@ public class HttpElasticsearchClient extends AbstractClient {
         if (entry == null) {
             throw new IllegalStateException("no action entry for " + action.name());
         }
-        HttpAction<Request, Response> httpAction = entry.httpAction;
+        final HttpAction<Request, Response> httpAction = entry.httpAction;
         if (httpAction == null) {
             throw new IllegalStateException("failed to find action [" + action + "] to execute");
         }
-        HttpContext<Request, Response> httpContext = new HttpContext();
+        final HttpContext<Request, Response> httpContext = new HttpContext();
         httpContext.httpAction = httpAction;
         httpContext.listener = listener;
         httpContext.chunks = new LinkedList<>();
         httpContext.request = request;
+        execute(httpContext, selectEndpoint(null), endpoints.size() - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <Request extends ActionRequest, Response extends ActionResponse> void execute(final HttpContext<Request, Response> httpContext,
+                                                                                          final HttpEndpoint endpoint,
+                                                                                          final int failovers) {
         try {
-            httpContext.httpRequest = httpAction.createHttpRequest(this.url, request);
+            httpContext.httpRequest = httpContext.httpAction.createHttpRequest(endpoint.getURL(), httpContext.request);
         } catch (IOException e) {
             logger.error(e.getMessage(), e);
         }
-        ChannelFuture future = bootstrap.connect(new InetSocketAddress(url.getHost(), url.getPort()));
-        future.awaitUninterruptibly();
-        if (!future.isSuccess()) {
-            bootstrap.releaseExternalResources();
-            logger.error("can't connect to {}", url);
-        } else {
-            Channel channel = future.getChannel();
-            httpContext.channel = channel;
-            contextMap.put(channel, httpContext);
-            channel.getConfig().setConnectTimeoutMillis(settings.getAsInt("http.client.timeout", 5000));
-            httpAction.execute(httpContext, listener);
-        }
+        httpContext.endpoint = endpoint;
+        endpoint.onRequest();
+        endpoint.getChannelPool().acquire(new HttpChannelPool.Listener() {
+            @Override
+            public void onChannel(Channel channel) {
+                httpContext.channel = channel;
+                contextMap.put(channel, httpContext);
+                httpContext.httpAction.execute(httpContext, httpContext.listener);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                logger.error("can't connect to {}", endpoint.getURL());
+                endpoint.onFailure();
+                // nothing has been sent yet, so it is safe to try another node
+                HttpEndpoint next = failovers > 0 ? selectEndpoint(endpoint) : endpoint;
+                if (next != endpoint) {
+                    execute(httpContext, next, failovers - 1);
+                } else {
+                    httpContext.listener.onFailure(t);
+                }
+            }
+        });
     }
 
     @SuppressWarnings("unchecked")
@@ -204,6 +316,15 @@ public class HttpElasticsearchClient extends AbstractClient {
         public ChannelPipeline getPipeline() throws Exception {
             ChannelPipeline pipeline = Channels.pipeline();
             pipeline.addLast("codec", new HttpClientCodec());
+            String compression = settings.get("http.client.compression", "none");
+            if (!"none".equals(compression)) {
+                // deflate is meant to be the fast choice
+                int level = settings.getAsInt("http.client.compression.level",
+                        HttpRequestCompressor.DEFLATE.equals(compression) ? 1 : 6);
+                int threshold = (int) settings.getAsBytesSize("http.client.compression.threshold",
+                        new ByteSizeValue(8, ByteSizeUnit.KB)).bytes();
+                pipeline.addLast("deflater", new HttpRequestCompressor(compression, level, threshold));
+            }
             pipeline.addLast("aggregator", new HttpChunkAggregator(settings.getAsInt("http.client.maxchunksize", 10 * 1024 * 1024)));
             pipeline.addLast("inflater", new HttpContentDecompressor());
             pipeline.addLast("handler", new HttpResponseHandler());
@@ -216,13 +337,16 @@ public class HttpElasticsearchClient extends AbstractClient {
         @SuppressWarnings("unchecked")
         @Override
         public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-            HttpContext<Request, Response> httpContext = contextMap.get(ctx.getChannel());
+            HttpContext<Request, Response> httpContext = contextMap.remove(ctx.getChannel());
             if (httpContext == null) {
                 throw new IllegalStateException("no context for channel?");
             }
+            boolean keepAlive = false;
             try {
                 if (e.getMessage() instanceof HttpResponse) {
                     HttpResponse httpResponse = (HttpResponse) e.getMessage();
+                    keepAlive = HttpHeaders.isKeepAlive(httpResponse);
+                    httpContext.endpoint.onSuccess(System.currentTimeMillis() - httpContext.millis);
                     HttpAction<Request, Response> action = httpContext.httpAction;
                     ActionListener<Response> listener = httpContext.listener;
                     httpContext.httpResponse = httpResponse;
@@ -231,15 +355,31 @@ public class HttpElasticsearchClient extends AbstractClient {
                     }
                 }
             } finally {
-                ctx.getChannel().close();
-                contextMap.remove(ctx.getChannel());
+                // the response is complete, so the channel can serve the next request
+                httpContext.endpoint.getChannelPool().release(ctx.getChannel(), keepAlive);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+            HttpContext<Request, Response> httpContext = contextMap.remove(ctx.getChannel());
+            if (httpContext != null) {
+                httpContext.endpoint.onFailure();
+                if (httpContext.listener != null) {
+                    httpContext.listener.onFailure(new IOException("connection closed before response: " + ctx.getChannel()));
+                }
             }
+            super.channelClosed(ctx, e);
         }
 
         @SuppressWarnings("unchecked")
         public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
-            HttpContext<Request, Response> httpContext = contextMap.get(ctx.getChannel());
+            HttpContext<Request, Response> httpContext = contextMap.remove(ctx.getChannel());
             try {
+                if (httpContext != null) {
+                    httpContext.endpoint.onFailure();
+                }
                 if (httpContext != null && httpContext.listener != null) {
                     httpContext.listener.onFailure(e.getCause());
                 } else {
@@ -247,7 +387,6 @@ public class HttpElasticsearchClient extends AbstractClient {
                 }
             } finally {
                 ctx.getChannel().close();
-                contextMap.remove(ctx.getChannel());
             }
         }
     }
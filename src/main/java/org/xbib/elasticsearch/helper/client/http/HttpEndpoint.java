@@ -0,0 +1,113 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+
+import java.net.URL;
+
+/**
+ * An HTTP node of a cluster, with its channel pool and passive health and latency tracking.
+ *
+ * The endpoint keeps the number of outstanding requests and an exponentially weighted moving average of the
+ * response times. After a number of consecutive failures, the endpoint is ejected for a while. When the ejection
+ * has expired, the next request probes the endpoint. A failed probe ejects the endpoint again, for twice the time.
+ */
+public class HttpEndpoint {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(HttpEndpoint.class.getName());
+
+    private final static double ALPHA = 0.2d;
+
+    private final static long MAX_EJECT_MILLIS = 300000L;
+
+    private final URL url;
+
+    private final HttpChannelPool channelPool;
+
+    private final int maxFailures;
+
+    private final long ejectMillis;
+
+    private int outstanding;
+
+    private double latencyMillis;
+
+    private int failures;
+
+    private int ejections;
+
+    private long ejectedUntil;
+
+    public HttpEndpoint(URL url, HttpChannelPool channelPool, int maxFailures, long ejectMillis) {
+        this.url = url;
+        this.channelPool = channelPool;
+        this.maxFailures = Math.max(maxFailures, 1);
+        this.ejectMillis = ejectMillis;
+    }
+
+    public URL getURL() {
+        return url;
+    }
+
+    public HttpChannelPool getChannelPool() {
+        return channelPool;
+    }
+
+    public synchronized int getOutstanding() {
+        return outstanding;
+    }
+
+    public synchronized double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public synchronized boolean isAvailable(long now) {
+        return ejectedUntil <= now;
+    }
+
+    synchronized long getEjectedUntil() {
+        return ejectedUntil;
+    }
+
+    /**
+     * The cost of sending the next request to this endpoint: the expected latency, weighted by the number of
+     * outstanding requests. Endpoints without a latency sample yet are ranked by outstanding requests only.
+     *
+     * @return the cost
+     */
+    synchronized double cost() {
+        return (outstanding + 1) * Math.max(latencyMillis, 1.0d);
+    }
+
+    synchronized void onRequest() {
+        outstanding++;
+    }
+
+    synchronized void onSuccess(long millis) {
+        outstanding--;
+        latencyMillis = latencyMillis == 0.0d ? millis : latencyMillis + ALPHA * (millis - latencyMillis);
+        if (ejections > 0) {
+            logger.info("endpoint {} is available again", url);
+        }
+        failures = 0;
+        ejections = 0;
+    }
+
+    synchronized void onFailure() {
+        outstanding--;
+        failures++;
+        // a probe after an ejection ejects again at once
+        if (failures >= maxFailures || ejections > 0) {
+            long millis = Math.min(ejectMillis << Math.min(ejections, 16), MAX_EJECT_MILLIS);
+            ejectedUntil = System.currentTimeMillis() + millis;
+            ejections++;
+            failures = 0;
+            logger.warn("endpoint {} ejected for {} ms", url, millis);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return url.toString();
+    }
+}
@@ -0,0 +1,92 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the content of HTTP requests with gzip or deflate, if the content is not smaller than a threshold.
+ *
+ * The content is streamed from the (composite) request buffer into the compressed buffer, without an
+ * intermediate copy. The server must accept compressed requests, for Elasticsearch 2.x this is
+ * {@code http.compression: true}.
+ */
+public class HttpRequestCompressor extends OneToOneEncoder {
+
+    public final static String GZIP = "gzip";
+
+    public final static String DEFLATE = "deflate";
+
+    private final String encoding;
+
+    private final int level;
+
+    private final int threshold;
+
+    /**
+     * Create a request compressor.
+     *
+     * @param encoding {@link #GZIP} or {@link #DEFLATE}
+     * @param level the compression level, from 1 (fastest) to 9 (smallest)
+     * @param threshold the minimum content length in bytes for compression
+     */
+    public HttpRequestCompressor(String encoding, int level, int threshold) {
+        if (!GZIP.equals(encoding) && !DEFLATE.equals(encoding)) {
+            throw new IllegalArgumentException("unknown compression: " + encoding);
+        }
+        this.encoding = encoding;
+        this.level = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, level));
+        this.threshold = threshold;
+    }
+
+    @Override
+    protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+        if (!(msg instanceof HttpRequest)) {
+            return msg;
+        }
+        HttpRequest request = (HttpRequest) msg;
+        ChannelBuffer content = request.getContent();
+        int length = content.readableBytes();
+        if (length < threshold || request.headers().contains(HttpHeaders.Names.CONTENT_ENCODING)) {
+            return msg;
+        }
+        ChannelBuffer compressed = compress(content, length);
+        request.setContent(compressed);
+        request.headers().set(HttpHeaders.Names.CONTENT_ENCODING, encoding);
+        request.headers().set(HttpHeaders.Names.CONTENT_LENGTH, compressed.readableBytes());
+        return request;
+    }
+
+    private ChannelBuffer compress(ChannelBuffer content, int length) throws IOException {
+        // JSON usually compresses to less than a quarter
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(Math.max(length / 4, 256));
+        if (GZIP.equals(encoding)) {
+            try (OutputStream out = new GZIPOutputStream(new ChannelBufferOutputStream(buffer), 8192) {
+                {
+                    def.setLevel(level);
+                }
+            }) {
+                content.getBytes(content.readerIndex(), out, length);
+            }
+        } else {
+            Deflater deflater = new Deflater(level);
+            try (OutputStream out = new DeflaterOutputStream(new ChannelBufferOutputStream(buffer), deflater, 8192)) {
+                content.getBytes(content.readerIndex(), out, length);
+            } finally {
+                deflater.end();
+            }
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,16 @@
+package org.xbib.elasticsearch.plugin.helper;
+
+import org.elasticsearch.common.inject.AbstractModule;
+import org.xbib.elasticsearch.helper.client.TaggedIngestMetric;
+
+/**
+ * Binds the ingest metrics of the node, which are recorded by the REST ingest action
+ * and exposed by the REST metrics action.
+ */
+public class HelperModule extends AbstractModule {
+
+    @Override
+    protected void configure() {
+        bind(TaggedIngestMetric.class).toInstance(new TaggedIngestMetric());
+    }
+}
@@ -16,14 +16,28 @@
 package org.xbib.elasticsearch.plugin.helper;
 
 import org.elasticsearch.action.ActionModule;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.Module;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.plugins.Plugin;
 import org.elasticsearch.rest.RestModule;
 import org.xbib.elasticsearch.action.ingest.IngestAction;
 import org.xbib.elasticsearch.action.ingest.TransportIngestAction;
 import org.xbib.elasticsearch.rest.action.ingest.RestIngestAction;
+import org.xbib.elasticsearch.rest.action.metrics.RestMetricsAction;
+
+import java.util.Collection;
+import java.util.Collections;
 
 public class HelperPlugin extends Plugin {
 
+    private final Settings settings;
+
+    public HelperPlugin(Settings settings) {
+        this.settings = settings;
+    }
+
     @Override
     public String name() {
         return "helper";
@@ -34,6 +48,28 @@ public class HelperPlugin extends Plugin {
         return "Helper plugin";
     }
 
+    /**
+     * Declare the fixed thread pool of the leader and replica ingest actions, so ingest capacity can be sized
+     * with threadpool.ingest.size and threadpool.ingest.queue_size, apart from the bulk thread pool.
+     * Rejected executions are counted in the thread pool stats. Node settings override these defaults.
+     */
+    @Override
+    public Settings additionalSettings() {
+        if (!"node".equals(settings.get(Client.CLIENT_TYPE_SETTING, "node"))) {
+            return Settings.EMPTY;
+        }
+        String prefix = "threadpool." + IngestAction.EXECUTOR + ".";
+        return Settings.settingsBuilder()
+                .put(prefix + "type", "fixed")
+                .put(prefix + "size", EsExecutors.boundedNumberOfProcessors(settings))
+                .put(prefix + "queue_size", 200)
+                .build();
+    }
+
+    @Override
+    public Collection<Module> nodeModules() {
+        return Collections.<Module>singletonList(new HelperModule());
+    }
 
     public void onModule(ActionModule module) {
         module.registerAction(IngestAction.INSTANCE, TransportIngestAction.class);
@@ -41,5 +77,6 @@ public class HelperPlugin extends Plugin {
 
     public void onModule(RestModule module) {
         module.addRestAction(RestIngestAction.class);
+        module.addRestAction(RestMetricsAction.class);
     }
 }
@@ -0,0 +1,173 @@
+package org.xbib.elasticsearch.rest.action.ingest;
+
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the results of ingest requests in memory, so they can be looked up by ingest id after the request
+ * has been answered. The number of results is bounded, and results are evicted after the expiry time,
+ * oldest first. Results are created on submission only; responses and failures of ingest requests whose
+ * result has expired or has been evicted are not recorded.
+ */
+public class IngestResultTable {
+
+    private final int maxSize;
+
+    private final long expireMillis;
+
+    private final ConcurrentMap<Long, IngestResult> results = new ConcurrentHashMap<>();
+
+    private final Queue<IngestResult> order = new ConcurrentLinkedQueue<>();
+
+    public IngestResultTable(int maxSize, TimeValue expire) {
+        this.maxSize = maxSize;
+        this.expireMillis = expire.millis();
+    }
+
+    /**
+     * Record the submission of an ingest request.
+     *
+     * @param ingestId the ingest id
+     * @param numberOfActions the number of actions in the request
+     */
+    public void onSubmit(long ingestId, int numberOfActions) {
+        result(ingestId).numberOfActions = numberOfActions;
+    }
+
+    /**
+     * Record the response to an ingest request.
+     *
+     * @param ingestId the ingest id
+     * @param succeeded the number of succeeded actions
+     * @param failed the number of failed actions
+     * @param tookInMillis the time the request took
+     */
+    public void onResponse(long ingestId, int succeeded, int failed, long tookInMillis) {
+        IngestResult result = get(ingestId);
+        if (result == null) {
+            return;
+        }
+        result.succeeded = succeeded;
+        result.failed = failed;
+        result.tookInMillis = tookInMillis;
+        result.status = "completed";
+    }
+
+    /**
+     * Record the failure of an ingest request as a whole.
+     *
+     * @param ingestId the ingest id
+     * @param message the failure message
+     */
+    public void onFailure(long ingestId, String message) {
+        IngestResult result = get(ingestId);
+        if (result == null) {
+            return;
+        }
+        result.error = message;
+        result.status = "failed";
+    }
+
+    /**
+     * @param ingestId the ingest id
+     * @return the result, or null if the ingest id is unknown or the result has expired or has been evicted
+     */
+    public IngestResult get(long ingestId) {
+        IngestResult result = results.get(ingestId);
+        if (result != null && isExpired(result, System.currentTimeMillis())) {
+            // the entry in the eviction order is removed by the next eviction
+            results.remove(ingestId, result);
+            return null;
+        }
+        return result;
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    private IngestResult result(long ingestId) {
+        IngestResult result = results.get(ingestId);
+        if (result == null) {
+            IngestResult newResult = new IngestResult(ingestId, System.currentTimeMillis());
+            result = results.putIfAbsent(ingestId, newResult);
+            if (result == null) {
+                result = newResult;
+                order.add(newResult);
+                evict(newResult.created);
+            }
+        }
+        return result;
+    }
+
+    private void evict(long now) {
+        IngestResult oldest;
+        while ((oldest = order.peek()) != null
+                && (results.size() > maxSize || isExpired(oldest, now))) {
+            if (order.remove(oldest)) {
+                results.remove(oldest.ingestId, oldest);
+            }
+        }
+    }
+
+    private boolean isExpired(IngestResult result, long now) {
+        return now - result.created > expireMillis;
+    }
+
+    /**
+     * The result of an ingest request. The status is "pending" until the response is received.
+     */
+    public static class IngestResult implements ToXContent {
+
+        private final long ingestId;
+
+        private final long created;
+
+        private volatile int numberOfActions;
+
+        private volatile int succeeded;
+
+        private volatile int failed;
+
+        private volatile long tookInMillis;
+
+        private volatile String status = "pending";
+
+        private volatile String error;
+
+        IngestResult(long ingestId, long created) {
+            this.ingestId = ingestId;
+            this.created = created;
+        }
+
+        public long ingestId() {
+            return ingestId;
+        }
+
+        public String status() {
+            return status;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field("id", ingestId)
+                    .field("status", status)
+                    .field("actions", numberOfActions)
+                    .field("succeeded", succeeded)
+                    .field("failed", failed)
+                    .field("took", tookInMillis)
+                    .field("age", System.currentTimeMillis() - created);
+            if (error != null) {
+                builder.field("error", error);
+            }
+            return builder;
+        }
+    }
+}
@@ -21,27 +21,32 @@ import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.rest.BaseRestHandler;
 import org.elasticsearch.rest.BytesRestResponse;
 import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
 import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
 import org.xbib.elasticsearch.helper.client.IngestProcessor;
+import org.xbib.elasticsearch.helper.client.TaggedIngestMetric;
 import org.xbib.elasticsearch.action.ingest.IngestRequest;
 import org.xbib.elasticsearch.action.ingest.IngestResponse;
 
 import java.io.IOException;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.rest.RestRequest.Method.GET;
 import static org.elasticsearch.rest.RestRequest.Method.POST;
 import static org.elasticsearch.rest.RestRequest.Method.PUT;
 import static org.elasticsearch.rest.RestStatus.BAD_REQUEST;
+import static org.elasticsearch.rest.RestStatus.NOT_FOUND;
 import static org.elasticsearch.rest.RestStatus.OK;
+import static org.elasticsearch.rest.RestStatus.TOO_MANY_REQUESTS;
 
 /**
  * <pre>
@@ -51,6 +56,9 @@ import static org.elasticsearch.rest.RestStatus.OK;
  * { "create" : { "_index" : "test", "_type" : "type1", "_id" : "1" }
  * { "type1" : { "field1" : "value1" } }
  * </pre>
+ *
+ * The response returns the ids of the ingest requests without waiting for them. The results can be looked up
+ * with <code>GET /_ingest/{id}</code> until they expire.
  */
 
 public class RestIngestAction extends BaseRestHandler {
@@ -65,9 +73,16 @@ public class RestIngestAction extends BaseRestHandler {
      */
     private final IngestProcessor ingestProcessor;
 
+    private final IngestResultTable resultTable;
+
+    private final IngestProcessor.IngestListener ingestListener;
+
+    private final TaggedIngestMetric metric;
+
     @Inject
-    public RestIngestAction(Settings settings, RestController controller, Client client) {
+    public RestIngestAction(Settings settings, RestController controller, Client client, TaggedIngestMetric metric) {
         super(settings, controller, client);
+        this.metric = metric;
 
         controller.registerHandler(POST, "/_ingest", this);
         controller.registerHandler(PUT, "/_ingest", this);
@@ -75,6 +90,7 @@ public class RestIngestAction extends BaseRestHandler {
         controller.registerHandler(PUT, "/{index}/_ingest", this);
         controller.registerHandler(POST, "/{index}/{type}/_ingest", this);
         controller.registerHandler(PUT, "/{index}/{type}/_ingest", this);
+        controller.registerHandler(GET, "/_ingest/{id}", this);
 
         int actions = settings.getAsInt("action.ingest.maxactions", 1000);
         int concurrency = settings.getAsInt("action.ingest.maxconcurrency",
@@ -86,81 +102,111 @@ public class RestIngestAction extends BaseRestHandler {
                 .maxActions(actions)
                 .maxConcurrentRequests(concurrency)
                 .maxVolumePerRequest(volume);
+        this.resultTable = new IngestResultTable(settings.getAsInt("action.ingest.results.size", 10000),
+                settings.getAsTime("action.ingest.results.expire", TimeValue.timeValueHours(1)));
+        this.ingestListener = new ResultListener();
     }
 
     @Override
     public void handleRequest(final RestRequest request, final RestChannel channel, final Client client) {
-        final IngestIdHolder idHolder = new IngestIdHolder();
-        final CountDownLatch latch = new CountDownLatch(1);
-        IngestProcessor.IngestListener ingestListener = new IngestProcessor.IngestListener() {
-            @Override
-            public void onRequest(int concurrency, IngestRequest ingestRequest) {
-                long v = volumeCounter.addAndGet(ingestRequest.estimatedSizeInBytes());
-                if (logger.isDebugEnabled()) {
-                    logger.debug("ingest request [{}] of {} items, {} bytes, {} concurrent requests",
-                            ingestRequest.ingestId(), ingestRequest.numberOfActions(), v, concurrency);
-                }
-                idHolder.ingestId(ingestRequest.ingestId());
-                latch.countDown();
-            }
-
-            @Override
-            public void onResponse(int concurrency, IngestResponse response) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("ingest response [{}] [{} succeeded] [{} failed] [{}ms]",
-                            response.ingestId(),
-                            response.successSize(),
-                            response.getFailures().size(),
-                            response.tookInMillis());
-                }
-                if (!response.getFailures().isEmpty()) {
-                    for (IngestActionFailure f : response.getFailures()) {
-                        logger.error("ingest [{}] failure, reason: {}", response.ingestId(), f.message());
-                    }
-                }
-            }
-
-            @Override
-            public void onFailure(int concurrency, long ingestId, Throwable failure) {
-                logger.error("ingest [{}] error", ingestId, failure);
-            }
-        };
+        if (request.method() == GET) {
+            handleStatusRequest(request, channel);
+            return;
+        }
         try {
             long t0 = System.currentTimeMillis();
-            ingestProcessor.add(request.content(), request.param("index"), request.param("type"), ingestListener);
-            // estimation, should be enough time to wait for an ID
-            boolean b = latch.await(100, TimeUnit.MILLISECONDS);
+            IngestRequest ingestRequest = new IngestRequest()
+                    .add(request.content(), request.param("index"), request.param("type"));
+            long[] ids = ingestProcessor.submit(ingestRequest, ingestListener);
             long t1 = System.currentTimeMillis();
             XContentBuilder builder = jsonBuilder();
             builder.startObject();
             builder.field("took", t1 - t0);
-            // got ID?
-            if (b) {
-                builder.field("id", idHolder.ingestId());
+            if (ids.length > 0) {
+                builder.field("id", ids[0]);
             }
+            builder.field("ids", ids);
             builder.endObject();
             channel.sendResponse(new BytesRestResponse(OK, builder));
+        } catch (EsRejectedExecutionException e) {
+            sendError(channel, TOO_MANY_REQUESTS, e.getMessage());
         } catch (Exception e) {
-            try {
-                XContentBuilder builder = jsonBuilder();
-                builder.startObject().field("error", e.getMessage()).endObject();
-                channel.sendResponse(new BytesRestResponse(BAD_REQUEST, builder));
-            } catch (IOException e1) {
-                logger.error("Failed to send failure response", e1);
-            }
+            sendError(channel, BAD_REQUEST, e.getMessage());
         }
     }
 
-    static final class IngestIdHolder {
-        private long ingestId;
-
-        public void ingestId(long ingestId) {
-            this.ingestId = ingestId;
+    private void handleStatusRequest(RestRequest request, RestChannel channel) {
+        IngestResultTable.IngestResult result;
+        try {
+            result = resultTable.get(Long.parseLong(request.param("id")));
+        } catch (NumberFormatException e) {
+            sendError(channel, BAD_REQUEST, "invalid ingest id: " + request.param("id"));
+            return;
+        }
+        if (result == null) {
+            sendError(channel, NOT_FOUND, "ingest id not found: " + request.param("id"));
+            return;
+        }
+        try {
+            XContentBuilder builder = jsonBuilder();
+            builder.startObject();
+            result.toXContent(builder, request);
+            builder.endObject();
+            channel.sendResponse(new BytesRestResponse(OK, builder));
+        } catch (IOException e) {
+            sendError(channel, BAD_REQUEST, e.getMessage());
         }
+    }
 
-        public long ingestId() {
-            return ingestId;
+    private static void sendError(RestChannel channel, RestStatus status, String message) {
+        try {
+            XContentBuilder builder = jsonBuilder();
+            builder.startObject().field("error", message).endObject();
+            channel.sendResponse(new BytesRestResponse(status, builder));
+        } catch (IOException e1) {
+            logger.error("Failed to send failure response", e1);
         }
     }
 
+    /**
+     * Records requests, responses and failures in the result table.
+     */
+    private class ResultListener implements IngestProcessor.IngestListener {
+
+        @Override
+        public void onRequest(int concurrency, IngestRequest ingestRequest) {
+            long v = volumeCounter.addAndGet(ingestRequest.estimatedSizeInBytes());
+            if (logger.isDebugEnabled()) {
+                logger.debug("ingest request [{}] of {} items, {} bytes, {} concurrent requests",
+                        ingestRequest.ingestId(), ingestRequest.numberOfActions(), v, concurrency);
+            }
+            resultTable.onSubmit(ingestRequest.ingestId(), ingestRequest.numberOfActions());
+        }
+
+        @Override
+        public void onResponse(int concurrency, IngestResponse response) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("ingest response [{}] [{} succeeded] [{} failed] [{}ms]",
+                        response.ingestId(),
+                        response.successSize(),
+                        response.getFailures().size(),
+                        response.tookInMillis());
+            }
+            if (!response.getFailures().isEmpty()) {
+                for (IngestActionFailure f : response.getFailures()) {
+                    logger.error("ingest [{}] failure, reason: {}", response.ingestId(), f.message());
+                }
+            }
+            int failed = response.numberOfItems() > 0 ?
+                    response.getFailedItems().cardinality() : response.getFailures().size();
+            resultTable.onResponse(response.ingestId(), response.successSize(), failed, response.tookInMillis());
+            metric.record(response);
+        }
+
+        @Override
+        public void onFailure(int concurrency, long ingestId, Throwable failure) {
+            logger.error("ingest [{}] error", ingestId, failure);
+            resultTable.onFailure(ingestId, failure.getMessage());
+        }
+    }
 }
@@ -0,0 +1,58 @@
+package org.xbib.elasticsearch.rest.action.metrics;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.xbib.elasticsearch.helper.client.TaggedIngestMetric;
+import org.xbib.metrics.OpenMetricsWriter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+import static org.elasticsearch.rest.RestStatus.INTERNAL_SERVER_ERROR;
+import static org.elasticsearch.rest.RestStatus.OK;
+
+/**
+ * Exposes the ingest metrics of this node in the OpenMetrics text format for Prometheus.
+ *
+ * <pre>
+ * GET /_ingest/_metrics
+ * </pre>
+ */
+public class RestMetricsAction extends BaseRestHandler {
+
+    private final static ESLogger logger = Loggers.getLogger(RestMetricsAction.class);
+
+    private final TaggedIngestMetric metric;
+
+    @Inject
+    public RestMetricsAction(Settings settings, RestController controller, Client client, TaggedIngestMetric metric) {
+        super(settings, controller, client);
+        this.metric = metric;
+        controller.registerHandler(GET, "/_ingest/_metrics", this);
+    }
+
+    @Override
+    public void handleRequest(final RestRequest request, final RestChannel channel, final Client client) {
+        try {
+            BytesStreamOutput out = new BytesStreamOutput();
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            new OpenMetricsWriter(writer).write(metric.getRegistry());
+            channel.sendResponse(new BytesRestResponse(OK, OpenMetricsWriter.CONTENT_TYPE, out.bytes()));
+        } catch (IOException e) {
+            logger.error("unable to write metrics", e);
+            channel.sendResponse(new BytesRestResponse(INTERNAL_SERVER_ERROR, e.getMessage()));
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.util.concurrent.atomic.LongAdder;
 public class Histogram implements Metric, Sampling, Count {
     private final Reservoir reservoir;
     private final LongAdder count;
+    private final LongAdder sum;
 
     /**
      * Creates a new {@link Histogram} with the given reservoir.
@@ -20,6 +21,7 @@ public class Histogram implements Metric, Sampling, Count {
     public Histogram(Reservoir reservoir) {
         this.reservoir = reservoir;
         this.count = new LongAdder();
+        this.sum = new LongAdder();
     }
 
     @Override
@@ -35,6 +37,7 @@ public class Histogram implements Metric, Sampling, Count {
     @Override
     public void inc(long value) {
         count.increment();
+        sum.add(value);
         reservoir.update(value);
     }
 
@@ -68,6 +71,15 @@ public class Histogram implements Metric, Sampling, Count {
         return count.sum();
     }
 
+    /**
+     * Returns the sum of all values recorded.
+     *
+     * @return the sum of all values recorded
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
     @Override
     public String getIncChecksum(String index, String type) {
         return null;
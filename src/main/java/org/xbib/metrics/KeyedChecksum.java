@@ -0,0 +1,84 @@
+package org.xbib.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checksums of document ids per index and type, safe for concurrent updates.
+ *
+ * The checksum is the sum of 64-bit hashes of the ids, so it does not depend on the order of the updates,
+ * and the striped partial sums of concurrent threads can simply be added. The same set of ids gives the same
+ * checksum, whatever the order in which the documents were submitted or acknowledged.
+ * Updates do not concatenate keys or encode ids to bytes.
+ */
+public class KeyedChecksum {
+
+    private static final String NULL_KEY = "";
+
+    private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> checksums = new ConcurrentHashMap<>();
+
+    /**
+     * Add the hash of a document id to the checksum of an index and type.
+     *
+     * @param index the index
+     * @param type  the type
+     * @param id    the id, ignored if null
+     */
+    public void update(String index, String type, String id) {
+        if (id == null) {
+            return;
+        }
+        String indexKey = index != null ? index : NULL_KEY;
+        String typeKey = type != null ? type : NULL_KEY;
+        ConcurrentMap<String, LongAdder> types = checksums.get(indexKey);
+        if (types == null) {
+            ConcurrentMap<String, LongAdder> newTypes = new ConcurrentHashMap<>();
+            types = checksums.putIfAbsent(indexKey, newTypes);
+            if (types == null) {
+                types = newTypes;
+            }
+        }
+        LongAdder checksum = types.get(typeKey);
+        if (checksum == null) {
+            LongAdder newChecksum = new LongAdder();
+            checksum = types.putIfAbsent(typeKey, newChecksum);
+            if (checksum == null) {
+                checksum = newChecksum;
+            }
+        }
+        checksum.add(hash(id));
+    }
+
+    /**
+     * @param index the index
+     * @param type  the type
+     * @return the checksum of an index and type, 0 if no id has been added
+     */
+    public long getValue(String index, String type) {
+        ConcurrentMap<String, LongAdder> types = checksums.get(index != null ? index : NULL_KEY);
+        if (types == null) {
+            return 0L;
+        }
+        LongAdder checksum = types.get(type != null ? type : NULL_KEY);
+        return checksum != null ? checksum.sum() : 0L;
+    }
+
+    /**
+     * A 64-bit FNV-1a hash over the characters of the string, with a final avalanche step, so
+     * similar ids do not cancel out in the sum.
+     */
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,315 @@
+package org.xbib.metrics;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A reservoir which counts values in logarithmic buckets of fixed memory, in the style of an HdrHistogram.
+ *
+ * Each power of two is divided into {@code 2^precision} linear sub-buckets, so the relative error of a
+ * value in the snapshot is at most {@code 2^-precision}. Recording a value does not lock and does not allocate.
+ * Threads are spread over stripes of counters by thread id, so concurrent recording threads rarely contend
+ * on the same counters. Negative values are recorded as zero.
+ *
+ * {@link #getSnapshot()} returns the distribution of all values recorded so far, while
+ * {@link #getIntervalSnapshot()} returns the distribution of the values recorded since the last interval snapshot.
+ */
+public class LogBucketReservoir implements Reservoir {
+
+    private static final int DEFAULT_PRECISION = 5;
+
+    private final int precision;
+
+    private final int subBuckets;
+
+    private final int numberOfBuckets;
+
+    private final Stripe[] stripes;
+
+    private final int stripeMask;
+
+    private long[] lastCounts;
+
+    /**
+     * Creates a new {@link LogBucketReservoir} with a relative error of about 3% and one stripe per processor.
+     */
+    public LogBucketReservoir() {
+        this(DEFAULT_PRECISION, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new {@link LogBucketReservoir}.
+     *
+     * @param precision the number of bits of a value which are kept, between 1 and 10
+     * @param stripes   the number of counter stripes, rounded up to a power of two
+     */
+    public LogBucketReservoir(int precision, int stripes) {
+        if (precision < 1 || precision > 10) {
+            throw new IllegalArgumentException("precision must be between 1 and 10: " + precision);
+        }
+        this.precision = precision;
+        this.subBuckets = 1 << precision;
+        // one linear range below 2^precision, and one range per possible shift
+        this.numberOfBuckets = (64 - precision + 1) << precision;
+        int n = Integer.highestOneBit(Math.max(1, Math.min(stripes, 64)) * 2 - 1);
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new Stripe(numberOfBuckets);
+        }
+        this.stripeMask = n - 1;
+        this.lastCounts = new long[numberOfBuckets];
+    }
+
+    @Override
+    public int size() {
+        long count = 0L;
+        for (Stripe stripe : stripes) {
+            count += stripe.count.get();
+        }
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void update(long value) {
+        long v = Math.max(value, 0L);
+        Stripe stripe = stripes[(int) Thread.currentThread().getId() & stripeMask];
+        stripe.counts.incrementAndGet(bucketIndex(v));
+        stripe.count.incrementAndGet();
+        stripe.sum.addAndGet(v);
+        long min = stripe.min.get();
+        while (v < min && !stripe.min.compareAndSet(min, v)) {
+            min = stripe.min.get();
+        }
+        long max = stripe.max.get();
+        while (v > max && !stripe.max.compareAndSet(max, v)) {
+            max = stripe.max.get();
+        }
+    }
+
+    /**
+     * Returns a snapshot of all values recorded so far.
+     *
+     * @return the snapshot
+     */
+    @Override
+    public Snapshot getSnapshot() {
+        long[] counts = collect();
+        long sum = 0L;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (Stripe stripe : stripes) {
+            sum += stripe.sum.get();
+            min = Math.min(min, stripe.min.get());
+            max = Math.max(max, stripe.max.get());
+        }
+        return new BucketSnapshot(counts, sum, min, max);
+    }
+
+    /**
+     * Returns a snapshot of the values recorded since the last call of this method, or since creation.
+     * Recording threads are not stopped, a value recorded concurrently is counted in this or the next interval.
+     *
+     * @return the snapshot of the interval
+     */
+    public Snapshot getIntervalSnapshot() {
+        long[] counts = collect();
+        long[] interval = new long[numberOfBuckets];
+        long sum = 0L;
+        synchronized (this) {
+            for (int i = 0; i < numberOfBuckets; i++) {
+                interval[i] = counts[i] - lastCounts[i];
+                if (interval[i] > 0L) {
+                    sum += interval[i] * bucketValue(i);
+                }
+            }
+            lastCounts = counts;
+        }
+        return new BucketSnapshot(interval, sum, Long.MAX_VALUE, Long.MIN_VALUE);
+    }
+
+    private long[] collect() {
+        long[] counts = new long[numberOfBuckets];
+        for (Stripe stripe : stripes) {
+            for (int i = 0; i < numberOfBuckets; i++) {
+                counts[i] += stripe.counts.get(i);
+            }
+        }
+        return counts;
+    }
+
+    private int bucketIndex(long value) {
+        if (value < subBuckets) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - precision;
+        return ((shift + 1) << precision) + (int) ((value >>> shift) - subBuckets);
+    }
+
+    private long bucketLowerBound(int index) {
+        if (index < subBuckets) {
+            return index;
+        }
+        int shift = (index >>> precision) - 1;
+        return (long) (subBuckets + (index & (subBuckets - 1))) << shift;
+    }
+
+    private long bucketValue(int index) {
+        if (index < subBuckets) {
+            return index;
+        }
+        int shift = (index >>> precision) - 1;
+        // the middle of the bucket
+        return bucketLowerBound(index) + ((1L << shift) >>> 1);
+    }
+
+    /**
+     * The counters of a group of recording threads.
+     */
+    private static class Stripe {
+
+        private final AtomicLongArray counts;
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong sum = new AtomicLong();
+
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        Stripe(int numberOfBuckets) {
+            this.counts = new AtomicLongArray(numberOfBuckets);
+        }
+    }
+
+    /**
+     * A snapshot of bucket counts. Values are reported as the middle of their bucket,
+     * bounded by the exact minimum and maximum if they are known.
+     */
+    private class BucketSnapshot extends Snapshot {
+
+        private final long[] counts;
+
+        private final long count;
+
+        private final long sum;
+
+        private final long min;
+
+        private final long max;
+
+        BucketSnapshot(long[] counts, long sum, long min, long max) {
+            this.counts = counts;
+            long n = 0L;
+            int first = -1;
+            int last = -1;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0L) {
+                    n += counts[i];
+                    if (first < 0) {
+                        first = i;
+                    }
+                    last = i;
+                }
+            }
+            this.count = n;
+            this.sum = sum;
+            // take the bucket bounds if the exact bounds are not known
+            this.min = n == 0L ? 0L : min != Long.MAX_VALUE ? min : bucketValue(first);
+            this.max = n == 0L ? 0L : max != Long.MIN_VALUE ? max : bucketValue(last);
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+                throw new IllegalArgumentException(quantile + " is not in [0..1]");
+            }
+            if (count == 0L) {
+                return 0.0;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bound(bucketValue(i));
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Returns the values as the middle of their buckets. The array has one element per recorded value,
+         * so this is expensive for large counts.
+         *
+         * @return the values
+         */
+        @Override
+        public long[] getValues() {
+            long[] values = new long[size()];
+            int pos = 0;
+            for (int i = 0; i < counts.length && pos < values.length; i++) {
+                long value = bound(bucketValue(i));
+                for (long j = 0L; j < counts[i] && pos < values.length; j++) {
+                    values[pos++] = value;
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(count, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public double getMean() {
+            return count == 0L ? 0.0 : (double) sum / count;
+        }
+
+        @Override
+        public long getMin() {
+            return min;
+        }
+
+        @Override
+        public double getStdDev() {
+            if (count <= 1L) {
+                return 0.0;
+            }
+            double mean = getMean();
+            double variance = 0.0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0L) {
+                    double diff = bound(bucketValue(i)) - mean;
+                    variance += counts[i] * diff * diff;
+                }
+            }
+            return Math.sqrt(variance / (count - 1));
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] > 0L) {
+                        out.printf("%d %d%n", bound(bucketValue(i)), counts[i]);
+                    }
+                }
+            }
+        }
+
+        private long bound(long value) {
+            return Math.max(min, Math.min(max, value));
+        }
+    }
+}
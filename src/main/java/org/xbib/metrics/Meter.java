@@ -1,7 +1,5 @@
 package org.xbib.metrics;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
@@ -10,10 +8,13 @@ import java.util.concurrent.atomic.LongAdder;
  * A meter metric which measures mean throughput and one-, five-, and fifteen-minute
  * exponentially-weighted moving average throughputs.
  *
+ * Marking an event only adds to a striped counter. The moving averages are updated from the counter
+ * when the meter is ticked, by a {@link MeterTicker} or when a rate is read.
+ *
  * @see ExpWeightedMovingAverage
  */
 public class Meter implements Metered {
-    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+    static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
 
     private final ExpWeightedMovingAverage m1Rate = ExpWeightedMovingAverage.oneMinuteEWMA();
     private final ExpWeightedMovingAverage m5Rate = ExpWeightedMovingAverage.fiveMinuteEWMA();
@@ -23,8 +24,9 @@ public class Meter implements Metered {
     private final AtomicLong lastTick;
     private final Clock clock;
     private long startedAt;
+    private final AtomicLong lastCount = new AtomicLong();
 
-    private ScheduledFuture<?> future;
+    private MeterTicker ticker;
 
     /**
      * Creates a new {@link Meter}.
@@ -44,18 +46,39 @@ public class Meter implements Metered {
         this.lastTick = new AtomicLong(startedAt);
     }
 
+    /**
+     * Let the shared {@link MeterTicker} tick this meter. The meter is ticked every five seconds,
+     * the interval the moving averages expect.
+     *
+     * @param intervalSeconds ignored
+     * @deprecated the interval is ignored, use {@link #spawn(MeterTicker)}
+     */
+    @Deprecated
     public void spawn(long intervalSeconds) {
-        this.future = Executors.newScheduledThreadPool(1)
-                .scheduleAtFixedRate(new Runnable() {
-                    @Override
-                    public void run() {
-                        tickIfNecessary();
-                    }
-                }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        spawn(MeterTicker.getDefault());
+    }
+
+    /**
+     * Let a ticker tick this meter.
+     *
+     * @param ticker the ticker
+     */
+    public synchronized void spawn(MeterTicker ticker) {
+        if (this.ticker != null) {
+            this.ticker.unregister(this);
+        }
+        this.ticker = ticker;
+        ticker.register(this);
     }
 
-    public void stop() {
-        future.cancel(false);
+    /**
+     * Stop ticking this meter by the ticker.
+     */
+    public synchronized void stop() {
+        if (ticker != null) {
+            ticker.unregister(this);
+            ticker = null;
+        }
     }
 
     /**
@@ -71,20 +94,22 @@ public class Meter implements Metered {
      * @param n the number of events
      */
     public void mark(long n) {
-        tickIfNecessary();
         count.add(n);
-        m1Rate.update(n);
-        m5Rate.update(n);
-        m15Rate.update(n);
     }
 
-    private void tickIfNecessary() {
+    void tickIfNecessary() {
         final long oldTick = lastTick.get();
         final long newTick = clock.getTick();
         final long age = newTick - oldTick;
         if (age > TICK_INTERVAL) {
             final long newIntervalStartTick = newTick - age % TICK_INTERVAL;
             if (lastTick.compareAndSet(oldTick, newIntervalStartTick)) {
+                // only the thread which won the tick takes the events since the last tick
+                final long newCount = count.sum();
+                final long n = newCount - lastCount.getAndSet(newCount);
+                m1Rate.update(n);
+                m5Rate.update(n);
+                m15Rate.update(n);
                 final long requiredTicks = age / TICK_INTERVAL;
                 for (long i = 0; i < requiredTicks; i++) {
                     m1Rate.tick();
@@ -0,0 +1,101 @@
+package org.xbib.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ticks the moving averages of all registered meters in one pass, on a single shared daemon thread.
+ * The thread is started with the first registered meter.
+ * Meters are held weakly, so meters which are not stopped, e.g. of a closed client, can be collected.
+ */
+public class MeterTicker {
+
+    private static final MeterTicker DEFAULT = new MeterTicker();
+
+    private final Set<Meter> meters = Collections.newSetFromMap(new WeakHashMap<Meter, Boolean>());
+
+    private ScheduledExecutorService service;
+
+    /**
+     * Returns the ticker shared by all meters in this JVM.
+     *
+     * @return the shared ticker
+     */
+    public static MeterTicker getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Adds a meter to the ticked meters.
+     *
+     * @param meter the meter
+     */
+    public void register(Meter meter) {
+        synchronized (meters) {
+            meters.add(meter);
+        }
+        start();
+    }
+
+    /**
+     * Removes a meter from the ticked meters.
+     *
+     * @param meter the meter
+     */
+    public void unregister(Meter meter) {
+        synchronized (meters) {
+            meters.remove(meter);
+        }
+    }
+
+    /**
+     * @return the number of registered meters which are not collected yet
+     */
+    public int size() {
+        synchronized (meters) {
+            return meters.size();
+        }
+    }
+
+    /**
+     * Ticks all registered meters.
+     */
+    public void tick() {
+        List<Meter> list;
+        synchronized (meters) {
+            list = new ArrayList<>(meters);
+        }
+        for (Meter meter : list) {
+            meter.tickIfNecessary();
+        }
+    }
+
+    private synchronized void start() {
+        if (service != null) {
+            return;
+        }
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "meter-ticker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long interval = Meter.TICK_INTERVAL;
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, interval, interval, TimeUnit.NANOSECONDS);
+        this.service = executor;
+    }
+}
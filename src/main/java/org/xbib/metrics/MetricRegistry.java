@@ -18,6 +18,7 @@ public class MetricRegistry implements MetricSet {
 
     private final ConcurrentMap<MetricName, Metric> metrics;
     private final List<MetricRegistryListener> listeners;
+    private final MeterTicker ticker;
 
     /**
      * @see #name(String, String...)
@@ -67,8 +68,19 @@ public class MetricRegistry implements MetricSet {
      * @param metricsMap metrics map
      */
     protected MetricRegistry(ConcurrentMap<MetricName, Metric> metricsMap) {
+        this(metricsMap, MeterTicker.getDefault());
+    }
+
+    /**
+     * Creates a {@link MetricRegistry} with a custom {@link ConcurrentMap} implementation and a
+     * {@link MeterTicker} which ticks the meters of the registry.
+     * @param metricsMap metrics map
+     * @param ticker the meter ticker
+     */
+    protected MetricRegistry(ConcurrentMap<MetricName, Metric> metricsMap, MeterTicker ticker) {
         this.metrics = metricsMap;
         this.listeners = new CopyOnWriteArrayList<MetricRegistryListener>();
+        this.ticker = ticker;
     }
 
     /**
@@ -226,6 +238,14 @@ public class MetricRegistry implements MetricSet {
         }
     }
 
+    /**
+     * Removes all metrics, so the meters of this registry are no longer ticked.
+     * Call this when the owner of the registry, e.g. a client, is closed.
+     */
+    public void close() {
+        removeMatching(MetricFilter.ALL);
+    }
+
     /**
      * Adds a {@link MetricRegistryListener} to a collection of listeners that will be notified on
      * metric creation.  Listeners will be notified in the order in which they are added.
@@ -387,6 +407,9 @@ public class MetricRegistry implements MetricSet {
     }
 
     private void onMetricAdded(MetricName name, Metric metric) {
+        if (metric instanceof Meter) {
+            ((Meter) metric).spawn(ticker);
+        }
         for (MetricRegistryListener listener : listeners) {
             notifyListenerOfAddedMetric(listener, metric, name);
         }
@@ -409,6 +432,9 @@ public class MetricRegistry implements MetricSet {
     }
 
     private void onMetricRemoved(MetricName name, Metric metric) {
+        if (metric instanceof Meter) {
+            ((Meter) metric).stop();
+        }
         for (MetricRegistryListener listener : listeners) {
             notifyListenerOfRemovedMetric(name, metric, listener);
         }
@@ -0,0 +1,18 @@
+package org.xbib.metrics;
+
+/**
+ * A counter metric which can only be incremented, e.g. the number of processed documents.
+ * It is exported as a counter instead of a gauge.
+ */
+public class MonotonicCountMetric extends CountMetric {
+
+    /**
+     * Not supported, the counter can only be incremented.
+     *
+     * @param n the amount
+     */
+    @Override
+    public void dec(long n) {
+        throw new UnsupportedOperationException();
+    }
+}
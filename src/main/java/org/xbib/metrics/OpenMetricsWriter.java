@@ -0,0 +1,196 @@
+package org.xbib.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the metrics of a {@link MetricRegistry} in the OpenMetrics text format, which Prometheus scrapes.
+ *
+ * The metrics are written one sample at a time to the writer, without building the exposition in memory.
+ * The key of a {@link MetricName} becomes the metric family name, with characters not allowed by Prometheus
+ * replaced by underscores, and the tags become labels. Gauges and counters are exposed as gauges, except
+ * {@link MonotonicCountMetric}s and meters, which are exposed as counters with a <code>_total</code> sample.
+ * The moving average rates of meters are an extra <code>_rate</code> gauge family. Histograms and
+ * timers are summaries. Timer values are converted from nanoseconds to seconds.
+ */
+public class OpenMetricsWriter {
+
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.98, 0.99, 0.999};
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Writer writer;
+
+    public OpenMetricsWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Write all metrics of the registry, followed by the end marker.
+     *
+     * @param registry the metric registry
+     * @throws IOException if the metrics can not be written
+     */
+    public void write(MetricRegistry registry) throws IOException {
+        String family = null;
+        for (Map.Entry<MetricName, Gauge> entry : registry.getGauges().entrySet()) {
+            Object value = entry.getValue().getValue();
+            if (value instanceof Number) {
+                family = type(family, entry.getKey(), "", "gauge");
+                sample(entry.getKey(), "", null, null, ((Number) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                family = type(family, entry.getKey(), "", "gauge");
+                sample(entry.getKey(), "", null, null, (Boolean) value ? 1.0 : 0.0);
+            }
+        }
+        family = null;
+        for (Map.Entry<MetricName, CountMetric> entry : registry.getCounters().entrySet()) {
+            if (entry.getValue() instanceof MonotonicCountMetric) {
+                family = type(family, entry.getKey(), "", "counter");
+                sample(entry.getKey(), "_total", null, null, entry.getValue().getCount());
+            } else {
+                // counters can be decremented, so they are gauges
+                family = type(family, entry.getKey(), "", "gauge");
+                sample(entry.getKey(), "", null, null, entry.getValue().getCount());
+            }
+        }
+        family = null;
+        for (Map.Entry<MetricName, Meter> entry : registry.getMeters().entrySet()) {
+            family = type(family, entry.getKey(), "", "counter");
+            sample(entry.getKey(), "_total", null, null, entry.getValue().getCount());
+        }
+        family = null;
+        for (Map.Entry<MetricName, Meter> entry : registry.getMeters().entrySet()) {
+            Meter meter = entry.getValue();
+            family = type(family, entry.getKey(), "_rate", "gauge");
+            sample(entry.getKey(), "_rate", "window", "1m", meter.getOneMinuteRate());
+            sample(entry.getKey(), "_rate", "window", "5m", meter.getFiveMinuteRate());
+            sample(entry.getKey(), "_rate", "window", "15m", meter.getFifteenMinuteRate());
+        }
+        family = null;
+        for (Map.Entry<MetricName, Histogram> entry : registry.getHistograms().entrySet()) {
+            family = type(family, entry.getKey(), "", "summary");
+            summary(entry.getKey(), entry.getValue().getSnapshot(), entry.getValue().getCount(),
+                    entry.getValue().getSum(), 1.0);
+        }
+        family = null;
+        for (Map.Entry<MetricName, Sampler> entry : registry.getTimers().entrySet()) {
+            family = type(family, entry.getKey(), "", "summary");
+            summary(entry.getKey(), entry.getValue().getSnapshot(), entry.getValue().getCount(),
+                    entry.getValue().getSum(), NANOS_PER_SECOND);
+        }
+        writer.write("# EOF\n");
+        writer.flush();
+    }
+
+    /**
+     * Write the type line when a new family begins. The metrics are sorted by name, so the metrics
+     * of a family with different tags follow each other.
+     */
+    private String type(String family, MetricName name, String suffix, String type) throws IOException {
+        String key = name.getKey() + suffix;
+        if (!key.equals(family)) {
+            writer.write("# TYPE ");
+            writeName(name.getKey());
+            writer.write(suffix);
+            writer.write(' ');
+            writer.write(type);
+            writer.write('\n');
+        }
+        return key;
+    }
+
+    private void summary(MetricName name, Snapshot snapshot, long count, long sum, double divisor)
+            throws IOException {
+        for (double quantile : QUANTILES) {
+            sample(name, "", "quantile", Double.toString(quantile), snapshot.getValue(quantile) / divisor);
+        }
+        sample(name, "_sum", null, null, sum / divisor);
+        sample(name, "_count", null, null, count);
+    }
+
+    private void sample(MetricName name, String suffix, String label, String labelValue, double value)
+            throws IOException {
+        writeName(name.getKey());
+        writer.write(suffix);
+        Map<String, String> tags = name.getTags();
+        if (!tags.isEmpty() || label != null) {
+            writer.write('{');
+            boolean first = true;
+            for (Map.Entry<String, String> tag : tags.entrySet()) {
+                if (!first) {
+                    writer.write(',');
+                }
+                writeLabel(tag.getKey(), tag.getValue());
+                first = false;
+            }
+            if (label != null) {
+                if (!first) {
+                    writer.write(',');
+                }
+                writeLabel(label, labelValue);
+            }
+            writer.write('}');
+        }
+        writer.write(' ');
+        writeValue(value);
+        writer.write('\n');
+    }
+
+    private void writeName(String name) throws IOException {
+        if (name == null || name.isEmpty()) {
+            writer.write('_');
+            return;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':'
+                    || (i > 0 && c >= '0' && c <= '9');
+            writer.write(valid ? c : '_');
+        }
+    }
+
+    private void writeLabel(String key, String value) throws IOException {
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_'
+                    || (i > 0 && c >= '0' && c <= '9');
+            writer.write(valid ? c : '_');
+        }
+        writer.write("=\"");
+        String v = value != null ? value : "";
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            switch (c) {
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                default:
+                    writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    private void writeValue(double value) throws IOException {
+        if (Double.isNaN(value)) {
+            writer.write("NaN");
+        } else if (Double.isInfinite(value)) {
+            writer.write(value > 0 ? "+Inf" : "-Inf");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            writer.write(Long.toString((long) value));
+        } else {
+            writer.write(Double.toString(value));
+        }
+    }
+}
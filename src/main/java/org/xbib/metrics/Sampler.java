@@ -126,6 +126,15 @@ public class Sampler implements Metered, Sampling {
         return histogram.getSnapshot();
     }
 
+    /**
+     * Returns the sum of all durations recorded.
+     *
+     * @return the sum of all durations recorded, in nanoseconds
+     */
+    public long getSum() {
+        return histogram.getSum();
+    }
+
     private void update(long duration) {
         if (duration >= 0) {
             histogram.inc(duration);